@@ -0,0 +1,66 @@
+package dev.kkm.benchmark;
+
+import dev.kkm.config.CourierProperties;
+import dev.kkm.model.CourierDetail;
+import dev.kkm.validation.AddressValidator;
+import dev.kkm.validation.CourierAddresses;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @implNote validation of the addresses of a courier, with cold ({@code cacheMaxSize=1}) and warm address cache
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class AddressValidationBenchmark {
+
+    @Param({"1", "500"})
+    private int recipients;
+
+    @Param({"1", "10000"})
+    private int cacheMaxSize;
+
+    private AddressValidator validator;
+    private CourierDetail courier;
+    private List<String> addresses;
+
+    @Setup
+    public void setUp() {
+        CourierProperties.Validation config = new CourierProperties().getValidation();
+        config.setCacheMaxSize(cacheMaxSize);
+        validator = new AddressValidator(config);
+        courier = BenchmarkFixtures.textCourier(recipients).build();
+        addresses = BenchmarkFixtures.addresses(recipients);
+    }
+
+    @Benchmark
+    public CourierAddresses validateCourier() {
+        return validator.validate(courier);
+    }
+
+    @Benchmark
+    public boolean scanAddresses() {
+        boolean valid = true;
+        for (String address : addresses) {
+            valid &= AddressValidator.isValid(address);
+        }
+        return valid;
+    }
+}
@@ -0,0 +1,94 @@
+package dev.kkm.benchmark;
+
+import dev.kkm.config.CourierProperties;
+import dev.kkm.model.CourierDetail;
+import dev.kkm.service.CourierServiceImpl;
+import dev.kkm.template.CourierTemplateRenderer;
+import dev.kkm.transport.CourierTransport;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @implNote couriers and services shared by the benchmarks, built the same way as the auto-configuration does
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+final class BenchmarkFixtures {
+
+    static final byte[] BROCHURE = new byte[256 * 1024];
+
+    private BenchmarkFixtures() {}
+
+    /**
+     * @param mailSender sender whose session builds the messages
+     * @return an application context holding the mail sender
+     */
+    static StaticApplicationContext applicationContext(JavaMailSenderImpl mailSender) {
+        StaticApplicationContext applicationContext = new StaticApplicationContext();
+        applicationContext.getBeanFactory().registerSingleton("mailSender", mailSender);
+        applicationContext.refresh();
+        return applicationContext;
+    }
+
+    /**
+     * @return a template renderer with the default settings
+     */
+    static CourierTemplateRenderer templateRenderer(StaticApplicationContext applicationContext, CourierProperties properties) {
+        return new CourierTemplateRenderer(applicationContext, new SpringTemplateEngine(), properties.getTemplate());
+    }
+
+    /**
+     * @param transport transport of the service, e.g. a no-op one to measure the message building alone
+     * @return a service wired like the auto-configured one
+     */
+    static CourierServiceImpl service(JavaMailSenderImpl mailSender, CourierProperties properties, CourierTransport transport) {
+        StaticApplicationContext applicationContext = applicationContext(mailSender);
+        CourierServiceImpl service = new CourierServiceImpl(applicationContext,
+                templateRenderer(applicationContext, properties).getTemplateEngine(), properties);
+        service.setTransport(transport);
+        return service;
+    }
+
+    /**
+     * @param recipients number of recipients, the first one in To and the others in Bcc
+     * @return a plain text courier
+     */
+    static CourierDetail.Builder textCourier(int recipients) {
+        CourierDetail.Builder builder = CourierDetail.builder()
+                .withSender("noreply@company.com")
+                .withOrganizationName("Company")
+                .withSubject("Your order confirmation")
+                .withBody("Thank you for your order!")
+                .addRecipient("client@example.com");
+        if (recipients > 1) {
+            builder.addBccs(addresses(recipients - 1));
+        }
+        return builder;
+    }
+
+    /**
+     * @return a courier rendering the benchmark template
+     */
+    static CourierDetail.Builder templateCourier() {
+        return CourierDetail.builder()
+                .withSender("noreply@company.com")
+                .withOrganizationName("Company")
+                .withSubject("Your order confirmation")
+                .withTemplate("benchmark")
+                .addRecipient("client@example.com")
+                .addVariable("customerName", "John Doe")
+                .addVariable("orderNumber", "12345")
+                .addVariable("items", List.of("keyboard", "mouse", "screen", "cable"));
+    }
+
+    static List<String> addresses(int count) {
+        List<String> addresses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            addresses.add("subscriber" + i + "@example" + (i % 10) + ".com");
+        }
+        return addresses;
+    }
+}
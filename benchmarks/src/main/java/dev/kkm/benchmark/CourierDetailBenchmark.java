@@ -0,0 +1,51 @@
+package dev.kkm.benchmark;
+
+import dev.kkm.model.CourierDetail;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @implNote cost of {@link CourierDetail.Builder#build()}, with a growing number of recipients
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CourierDetailBenchmark {
+
+    @Param({"1", "50", "500"})
+    private int recipients;
+
+    private List<String> addresses;
+
+    @Setup
+    public void setUp() {
+        addresses = BenchmarkFixtures.addresses(recipients);
+    }
+
+    @Benchmark
+    public CourierDetail build() {
+        return CourierDetail.builder()
+                .withSender("noreply@company.com")
+                .withOrganizationName("Company")
+                .withSubject("Your order confirmation")
+                .withBody("Thank you for your order!")
+                .addRecipients(addresses)
+                .build();
+    }
+}
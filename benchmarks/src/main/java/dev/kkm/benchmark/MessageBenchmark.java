@@ -0,0 +1,84 @@
+package dev.kkm.benchmark;
+
+import dev.kkm.config.CourierProperties;
+import dev.kkm.model.CourierDetail;
+import dev.kkm.service.CourierServiceImpl;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @implNote validation and MIME assembly of a courier, without network: the transport only serializes the message.
+ * The {@code recipients} parameter puts the address validation under load (one To, the others in Bcc).
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MessageBenchmark {
+
+    @Param({"1", "500"})
+    private int recipients;
+
+    private CourierServiceImpl service;
+    private CourierDetail text;
+    private CourierDetail template;
+    private CourierDetail attachment;
+
+    @Setup
+    public void setUp() {
+        service = BenchmarkFixtures.service(new JavaMailSenderImpl(), new CourierProperties(), MessageBenchmark::serialize);
+        text = BenchmarkFixtures.textCourier(recipients).build();
+        template = BenchmarkFixtures.templateCourier().addBccs(BenchmarkFixtures.addresses(recipients - 1)).build();
+        attachment = BenchmarkFixtures.textCourier(recipients)
+                .addAttachment("brochure.pdf", BenchmarkFixtures.BROCHURE, "application/pdf")
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        service.destroy();
+    }
+
+    @Benchmark
+    public void textMessage() {
+        service.sendCourier(text);
+    }
+
+    @Benchmark
+    public void templateMessage() {
+        service.sendCourier(template);
+    }
+
+    @Benchmark
+    public void attachmentMessage() {
+        service.sendCourier(attachment);
+    }
+
+    private static void serialize(MimeMessage message) {
+        try {
+            message.writeTo(OutputStream.nullOutputStream());
+        } catch (IOException | MessagingException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+}
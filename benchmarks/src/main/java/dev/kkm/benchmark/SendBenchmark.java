@@ -0,0 +1,84 @@
+package dev.kkm.benchmark;
+
+import dev.kkm.config.CourierProperties;
+import dev.kkm.model.CourierDetail;
+import dev.kkm.model.CourierReport;
+import dev.kkm.service.CourierServiceImpl;
+import dev.kkm.transport.SmtpConnectionPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @implNote end-to-end sends through the connection pool to the in-process {@link SmtpSink},
+ * with a {@code latency} in milliseconds added to every SMTP reply
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class SendBenchmark {
+
+    private static final int BATCH = 100;
+
+    @Param({"0", "1"})
+    private int latency;
+
+    private SmtpSink sink;
+    private SmtpConnectionPool connectionPool;
+    private CourierServiceImpl service;
+    private CourierDetail courier;
+    private List<CourierDetail> batch;
+
+    @Setup
+    public void setUp() throws IOException {
+        sink = new SmtpSink(Duration.ofMillis(latency));
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(sink.getPort());
+
+        CourierProperties properties = new CourierProperties();
+        connectionPool = new SmtpConnectionPool(mailSender, properties.getPool());
+        service = BenchmarkFixtures.service(mailSender, properties, connectionPool);
+        courier = BenchmarkFixtures.templateCourier().build();
+        batch = Collections.nCopies(BATCH, courier);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        service.destroy();
+        connectionPool.close();
+        sink.close();
+    }
+
+    @Benchmark
+    public void single() {
+        service.sendCourier(courier);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public CourierReport bulk() {
+        return service.sendCouriers(batch);
+    }
+}
@@ -0,0 +1,113 @@
+package dev.kkm.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @implNote minimal in-process SMTP server accepting and discarding every message.
+ * Each reply is delayed by {@code latency} to stand for the round trip to a real relay.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public class SmtpSink implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final long latencyNanos;
+    private final AtomicLong received = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * Starts the sink on a free port of the loopback interface
+     * @param latency delay before each reply
+     */
+    public SmtpSink(Duration latency) throws IOException {
+        this.serverSocket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+        this.latencyNanos = latency.toNanos();
+        Thread acceptor = new Thread(this::acceptLoop, "smtp-sink-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return number of messages accepted since the start
+     */
+    public long getReceived() {
+        return received.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread session = new Thread(() -> serve(socket), "smtp-sink-session");
+                session.setDaemon(true);
+                session.start();
+            } catch (IOException ioException) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+             OutputStream out = socket.getOutputStream()) {
+            socket.setTcpNoDelay(true);
+            reply(out, "220 localhost SMTP sink");
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.length() >= 4 ? line.substring(0, 4).toUpperCase(Locale.ROOT) : line.toUpperCase(Locale.ROOT);
+                switch (command) {
+                    case "EHLO" -> reply(out, "250-localhost\r\n250-PIPELINING\r\n250-8BITMIME\r\n250 SIZE 52428800");
+                    case "HELO", "MAIL", "RCPT", "RSET", "NOOP" -> reply(out, "250 OK");
+                    case "DATA" -> {
+                        reply(out, "354 end data with <CR><LF>.<CR><LF>");
+                        while ((line = in.readLine()) != null && !line.equals(".")) {
+                            // message discarded
+                        }
+                        received.incrementAndGet();
+                        reply(out, "250 OK queued");
+                    }
+                    case "QUIT" -> {
+                        reply(out, "221 bye");
+                        return;
+                    }
+                    default -> reply(out, "502 command not implemented");
+                }
+            }
+        } catch (IOException ioException) {
+            // client went away
+        }
+    }
+
+    private void reply(OutputStream out, String reply) throws IOException {
+        if (latencyNanos > 0) {
+            try {
+                Thread.sleep(latencyNanos / 1_000_000, (int) (latencyNanos % 1_000_000));
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted", interruptedException);
+            }
+        }
+        out.write((reply + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+}
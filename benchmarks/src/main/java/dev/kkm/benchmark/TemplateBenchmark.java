@@ -0,0 +1,53 @@
+package dev.kkm.benchmark;
+
+import dev.kkm.config.CourierProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @implNote rendering of a template by the courier engine, as done for every template courier
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TemplateBenchmark {
+
+    private TemplateEngine templateEngine;
+    private Map<String, Object> variables;
+
+    @Setup
+    public void setUp() {
+        CourierProperties properties = new CourierProperties();
+        templateEngine = BenchmarkFixtures.templateRenderer(
+                BenchmarkFixtures.applicationContext(new JavaMailSenderImpl()), properties).getTemplateEngine();
+        variables = Map.of("customerName", "John Doe", "orderNumber", "12345",
+                "items", List.of("keyboard", "mouse", "screen", "cable"));
+    }
+
+    @Benchmark
+    public String processTemplate() {
+        Context context = new Context(Locale.getDefault());
+        context.setVariables(variables);
+        return templateEngine.process("benchmark", context);
+    }
+}
@@ -0,0 +1,240 @@
+package dev.kkm.attachment;
+
+import dev.kkm.config.CourierProperties;
+import dev.kkm.metrics.CourierMetrics;
+import dev.kkm.metrics.CourierStageEvent;
+import dev.kkm.service.CourierExecutors;
+import jakarta.activation.DataHandler;
+import jakarta.activation.DataSource;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Part;
+import jakarta.mail.internet.MimeBodyPart;
+import jakarta.mail.internet.MimeUtility;
+import jakarta.mail.internet.PreencodedMimeBodyPart;
+import jakarta.mail.util.ByteArrayDataSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @implNote cache of base64-encoded attachments.
+ * A {@link DataSource} attached to a second courier is encoded once, the next couriers attaching the same instance
+ * within {@code courier.attachment.window} reuse the encoded bytes through a {@link PreencodedMimeBodyPart}.
+ * An attachment sent once is left to JavaMail, encoding it ahead would only cost a copy.
+ * The data sources are weakly referenced: the cache does not keep them alive, and the encoded bytes of a data source
+ * the couriers no longer reference are dropped. Entries not reused within the window are dropped by a periodic sweep.
+ * Encoded attachments larger than {@code spill-threshold}, or not fitting in {@code max-memory}, are kept in a temporary file,
+ * deleted once the encoded data source is unreachable, not when its entry is dropped: a message built from it may still
+ * wait in a priority lane or a retry backoff.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public class AttachmentEncodingCache implements AutoCloseable {
+
+    private static final ScheduledExecutorService SWEEPER =
+            Executors.newSingleThreadScheduledExecutor(CourierExecutors.daemonThreadFactory("courier-attachment-sweeper"));
+
+    private final CourierProperties.Attachment config;
+    private final Map<SourceKey, Encoded> entries = new ConcurrentHashMap<>();
+    private final ReferenceQueue<DataSource> collected = new ReferenceQueue<>();
+    private final AtomicLong memoryInUse = new AtomicLong();
+    private final ScheduledFuture<?> sweeping;
+    private CourierMetrics metrics = CourierMetrics.NONE;
+
+    public AttachmentEncodingCache(CourierProperties.Attachment config) {
+        this.config = config;
+        long period = Math.max(1000, config.getWindow().toMillis() / 4);
+        this.sweeping = SWEEPER.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param metrics metrics of the attachment encoding
+     */
+    public void setMetrics(CourierMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param name file name of the attachment
+     * @param dataSource content of the attachment
+     * @return a new body part reusing the encoded content of the data source once it is shared,
+     * a body part over the data source itself the first time
+     * @throws MessagingException when the data source could not be read
+     */
+    public MimeBodyPart getBodyPart(String name, DataSource dataSource) throws MessagingException {
+        DataSource encoded = getEncoded(dataSource);
+        MimeBodyPart bodyPart = encoded != null ? new PreencodedMimeBodyPart("base64") : new MimeBodyPart();
+        bodyPart.setDataHandler(new DataHandler(encoded != null ? encoded : dataSource));
+        bodyPart.setDisposition(Part.ATTACHMENT);
+        bodyPart.setFileName(name);
+        return bodyPart;
+    }
+
+    /**
+     * @param dataSource content of the attachment
+     * @return the base64 encoding of the content, with the content type and name of the data source;
+     * null the first time the data source is seen, it is encoded when attached again
+     * @throws MessagingException when the data source could not be read
+     */
+    public DataSource getEncoded(DataSource dataSource) throws MessagingException {
+        return getEncoded(dataSource, false);
+    }
+
+    /**
+     * @param dataSource content of the attachment
+     * @param shared true when the caller knows the data source is attached to several couriers, to encode it at once
+     * @return the base64 encoding of the content, with the content type and name of the data source;
+     * null the first time a data source not known to be shared is seen
+     * @throws MessagingException when the data source could not be read
+     */
+    public DataSource getEncoded(DataSource dataSource, boolean shared) throws MessagingException {
+        expunge();
+        Encoded encoded = entries.computeIfAbsent(new SourceKey(dataSource, collected), key -> new Encoded());
+        encoded.lastAccess = System.nanoTime();
+        if (encoded.uses.incrementAndGet() < 2 && !shared) {
+            return null;
+        }
+        return encoded.get(dataSource);
+    }
+
+    /**
+     * @return number of encoded attachments currently cached
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return bytes of encoded attachments currently held in memory
+     */
+    public long getMemoryInUse() {
+        return memoryInUse.get();
+    }
+
+    @Override
+    public void close() {
+        sweeping.cancel(false);
+        entries.values().forEach(this::release);
+        entries.clear();
+    }
+
+    private void sweep() {
+        expunge();
+        long now = System.nanoTime();
+        entries.entrySet().removeIf(entry -> {
+            boolean expired = now - entry.getValue().lastAccess > config.getWindow().toNanos();
+            if (expired) {
+                release(entry.getValue());
+            }
+            return expired;
+        });
+    }
+
+    /**
+     * drops the entries of the data sources collected since the last call
+     */
+    private void expunge() {
+        for (Reference<? extends DataSource> reference = collected.poll(); reference != null; reference = collected.poll()) {
+            Encoded encoded = entries.remove(reference);
+            if (encoded != null) {
+                release(encoded);
+            }
+        }
+    }
+
+    /**
+     * gives back the memory of the encoded bytes; a spilled file is deleted by the cleaner of its data source
+     */
+    private void release(Encoded encoded) {
+        DataSource source = encoded.source;
+        if (source != null && !(source instanceof FileChannelDataSource)) {
+            memoryInUse.addAndGet(-encoded.size);
+        }
+    }
+
+    /**
+     * identity of the data source, weakly referenced: the same instance attached to several couriers is encoded once
+     */
+    private static final class SourceKey extends WeakReference<DataSource> {
+        private final int hash;
+
+        private SourceKey(DataSource dataSource, ReferenceQueue<DataSource> queue) {
+            super(dataSource, queue);
+            this.hash = System.identityHashCode(dataSource);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (other == this) {
+                return true;
+            }
+            DataSource dataSource = get();
+            return other instanceof SourceKey key && dataSource != null && key.get() == dataSource;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final class Encoded {
+        private final AtomicInteger uses = new AtomicInteger();
+        private volatile DataSource source;
+        private volatile long lastAccess = System.nanoTime();
+        private long size;
+
+        private DataSource get(DataSource original) throws MessagingException {
+            DataSource encoded = source;
+            if (encoded == null) {
+                synchronized (this) {
+                    encoded = source;
+                    if (encoded == null) {
+                        source = encoded = encode(original);
+                    }
+                }
+            }
+            return encoded;
+        }
+
+        private DataSource encode(DataSource original) throws MessagingException {
+            long threshold = Math.min(config.getSpillThreshold().toBytes(),
+                    Math.max(0, config.getMaxMemory().toBytes() - memoryInUse.get()));
+            Path directory = config.getSpillDirectory() != null ? Path.of(config.getSpillDirectory()) : null;
+            SpillOutputStream spill = new SpillOutputStream(threshold, directory);
+            long start = System.nanoTime();
+            CourierStageEvent event = CourierStageEvent.start();
+
+            try (InputStream in = original.getInputStream(); OutputStream out = MimeUtility.encode(spill, "base64")) {
+                in.transferTo(out);
+            } catch (IOException ioException) {
+                spill.discard();
+                throw new MessagingException("attachment " + original.getName() + " could not be encoded", ioException);
+            }
+
+            event.finish(CourierMetrics.Stage.ATTACHMENT);
+            metrics.record(CourierMetrics.Stage.ATTACHMENT, System.nanoTime() - start);
+            size = spill.size();
+            String contentType = original.getContentType();
+            if (spill.isInMemory()) {
+                memoryInUse.addAndGet(size);
+                ByteArrayDataSource dataSource = new ByteArrayDataSource(spill.toByteArray(), contentType);
+                dataSource.setName(original.getName());
+                return dataSource;
+            }
+            return FileChannelDataSource.temporary(spill.getPath(), contentType, original.getName());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package dev.kkm.attachment;
+
+import jakarta.activation.DataSource;
+import jakarta.mail.util.ByteArrayDataSource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * @implNote factories of attachment {@link DataSource}s keeping the heap flat whatever the size of the attachments
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public final class AttachmentSources {
+
+    /**
+     * in-memory attachments larger than this are moved to a temporary file by default
+     */
+    public static final long DEFAULT_SPILL_THRESHOLD = 1024 * 1024;
+
+    private AttachmentSources() {}
+
+    /**
+     * @return an attachment streamed from the file
+     */
+    public static DataSource file(Path path, String contentType) {
+        return new FileChannelDataSource(path, contentType);
+    }
+
+    /**
+     * @return an attachment memory-mapped from the file
+     */
+    public static DataSource mapped(Path path, String contentType) {
+        return new MappedFileDataSource(path, contentType);
+    }
+
+    /**
+     * @return an attachment over the content, moved to a temporary file above {@link #DEFAULT_SPILL_THRESHOLD}
+     */
+    public static DataSource bytes(byte[] content, String contentType, String name) {
+        return bytes(content, contentType, name, DEFAULT_SPILL_THRESHOLD);
+    }
+
+    /**
+     * @param spillThreshold size above which the content is moved to a temporary file,
+     *                       so that the array can be collected while the courier waits to be sent
+     * @return an attachment over the content
+     */
+    public static DataSource bytes(byte[] content, String contentType, String name, long spillThreshold) {
+        if (content.length <= spillThreshold) {
+            ByteArrayDataSource dataSource = new ByteArrayDataSource(content, contentType);
+            dataSource.setName(name);
+            return dataSource;
+        }
+        Path path = null;
+        try {
+            path = Files.createTempFile("courier-", ".attachment");
+            Files.write(path, content);
+            return FileChannelDataSource.temporary(path, contentType, name);
+        } catch (IOException ioException) {
+            deleteQuietly(path, ioException);
+            throw new UncheckedIOException("attachment " + name + " could not be spilled to disk", ioException);
+        }
+    }
+
+    private static void deleteQuietly(Path path, IOException cause) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ioException) {
+            cause.addSuppressed(ioException);
+        }
+    }
+}
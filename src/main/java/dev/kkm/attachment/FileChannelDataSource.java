@@ -0,0 +1,80 @@
+package dev.kkm.attachment;
+
+import jakarta.activation.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.Cleaner;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @implNote attachment read from a file through a {@link FileChannel}, the content is streamed to the MIME encoder
+ * chunk by chunk and never held on the heap as a whole
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public class FileChannelDataSource implements DataSource {
+
+    private static final Logger log = LoggerFactory.getLogger(FileChannelDataSource.class);
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final Path path;
+    private final String contentType;
+    private final String name;
+
+    public FileChannelDataSource(Path path, String contentType) {
+        this(path, contentType, path.getFileName().toString());
+    }
+
+    public FileChannelDataSource(Path path, String contentType, String name) {
+        this.path = path;
+        this.contentType = contentType;
+        this.name = name;
+    }
+
+    /**
+     * @return a data source over a temporary file, the file being deleted once the data source is unreachable.
+     * No {@code deleteOnExit} is registered: it would keep one entry per file until the JVM stops
+     */
+    static FileChannelDataSource temporary(Path path, String contentType, String name) {
+        FileChannelDataSource dataSource = new FileChannelDataSource(path, contentType, name);
+        CLEANER.register(dataSource, () -> {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ioException) {
+                log.warn("temporary attachment {} could not be deleted", path, ioException);
+            }
+        });
+        return dataSource;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return Channels.newInputStream(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        throw new UnsupportedOperationException("attachment is read only");
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+}
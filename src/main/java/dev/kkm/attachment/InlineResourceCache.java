@@ -0,0 +1,119 @@
+package dev.kkm.attachment;
+
+import dev.kkm.config.CourierProperties;
+import dev.kkm.metrics.CourierMetrics;
+import dev.kkm.metrics.CourierStageEvent;
+import jakarta.activation.DataHandler;
+import jakarta.activation.FileTypeMap;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Part;
+import jakarta.mail.internet.MimeBodyPart;
+import jakarta.mail.internet.MimeUtility;
+import jakarta.mail.internet.PreencodedMimeBodyPart;
+import jakarta.mail.util.ByteArrayDataSource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @implNote cache of base64-encoded inline images, by location.
+ * An image is loaded and encoded by the first courier embedding it, the next couriers get a new
+ * {@link PreencodedMimeBodyPart} over the same encoded bytes: a body part belongs to a single multipart,
+ * the encoded content is what is shared. The least recently used images are dropped above {@code cache-max-size}.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public class InlineResourceCache {
+
+    private final ResourceLoader resourceLoader;
+    private final Map<String, ByteArrayDataSource> encoded;
+    private CourierMetrics metrics = CourierMetrics.NONE;
+
+    public InlineResourceCache(ResourceLoader resourceLoader, CourierProperties.Inline config) {
+        this.resourceLoader = resourceLoader;
+        int maxSize = Math.max(1, config.getCacheMaxSize());
+        this.encoded = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ByteArrayDataSource> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param metrics metrics of the image encoding
+     */
+    public void setMetrics(CourierMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param contentId content id the HTML body references the image with
+     * @param location location of the image, resolved by the resource loader
+     * @return a new inline body part reusing the encoded image
+     * @throws MessagingException when the image could not be read
+     */
+    public MimeBodyPart getBodyPart(String contentId, String location) throws MessagingException {
+        ByteArrayDataSource dataSource = getEncoded(location);
+
+        PreencodedMimeBodyPart bodyPart = new PreencodedMimeBodyPart("base64");
+        bodyPart.setDataHandler(new DataHandler(dataSource));
+        bodyPart.setDisposition(Part.INLINE);
+        bodyPart.setContentID("<" + contentId + ">");
+        bodyPart.setFileName(dataSource.getName());
+        return bodyPart;
+    }
+
+    /**
+     * @param location location of the image, resolved by the resource loader
+     * @return the base64 encoding of the image, with its content type and file name
+     * @throws MessagingException when the image could not be read
+     */
+    public ByteArrayDataSource getEncoded(String location) throws MessagingException {
+        ByteArrayDataSource dataSource;
+        synchronized (encoded) {
+            dataSource = encoded.get(location);
+        }
+        if (dataSource == null) {
+            // encoded outside of the lock, a concurrent first use only encodes twice
+            dataSource = encode(location);
+            synchronized (encoded) {
+                encoded.put(location, dataSource);
+            }
+        }
+        return dataSource;
+    }
+
+    /**
+     * @return number of encoded images currently cached
+     */
+    public int size() {
+        synchronized (encoded) {
+            return encoded.size();
+        }
+    }
+
+    private ByteArrayDataSource encode(String location) throws MessagingException {
+        Resource resource = resourceLoader.getResource(location);
+        long start = System.nanoTime();
+        CourierStageEvent event = CourierStageEvent.start();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = resource.getInputStream(); OutputStream out = MimeUtility.encode(bytes, "base64")) {
+            in.transferTo(out);
+        } catch (IOException ioException) {
+            throw new MessagingException("inline image " + location + " could not be read", ioException);
+        }
+        event.finish(CourierMetrics.Stage.ATTACHMENT);
+        metrics.record(CourierMetrics.Stage.ATTACHMENT, System.nanoTime() - start);
+
+        String name = resource.getFilename() != null ? resource.getFilename() : location;
+        ByteArrayDataSource dataSource = new ByteArrayDataSource(bytes.toByteArray(), FileTypeMap.getDefaultFileTypeMap().getContentType(name));
+        dataSource.setName(name);
+        return dataSource;
+    }
+}
@@ -0,0 +1,94 @@
+package dev.kkm.attachment;
+
+import jakarta.activation.DataSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @implNote attachment memory-mapped from a file: the content lives in the page cache, outside of the heap,
+ * and is mapped once for all the couriers attaching it
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public class MappedFileDataSource implements DataSource {
+
+    private final Path path;
+    private final String contentType;
+    private final String name;
+    private volatile MappedByteBuffer buffer;
+
+    public MappedFileDataSource(Path path, String contentType) {
+        this.path = path;
+        this.contentType = contentType;
+        this.name = path.getFileName().toString();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return new ByteBufferInputStream(map().duplicate());
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        throw new UnsupportedOperationException("attachment is read only");
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    private MappedByteBuffer map() throws IOException {
+        MappedByteBuffer mapped = buffer;
+        if (mapped == null) {
+            synchronized (this) {
+                mapped = buffer;
+                if (mapped == null) {
+                    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                        buffer = mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    }
+                }
+            }
+        }
+        return mapped;
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
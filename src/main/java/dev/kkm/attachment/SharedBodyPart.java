@@ -0,0 +1,62 @@
+package dev.kkm.attachment;
+
+import jakarta.activation.DataHandler;
+import jakarta.activation.DataSource;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Part;
+import jakarta.mail.internet.ContentDisposition;
+import jakarta.mail.internet.ContentType;
+import jakarta.mail.internet.MimeBodyPart;
+import jakarta.mail.internet.ParameterList;
+import jakarta.mail.internet.PreencodedMimeBodyPart;
+
+/**
+ * @implNote attachment shared by the messages of a mail merge: its headers are formatted once and its content is
+ * base64-encoded once by an {@link AttachmentEncodingCache}. Each message gets a new {@link PreencodedMimeBodyPart}
+ * over them, a body part belonging to a single multipart.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public final class SharedBodyPart {
+
+    private static final String CHARSET = "UTF-8";
+
+    private final DataSource dataSource;
+    private final String contentType;
+    private final String contentDisposition;
+
+    private SharedBodyPart(DataSource dataSource, String contentType, String contentDisposition) {
+        this.dataSource = dataSource;
+        this.contentType = contentType;
+        this.contentDisposition = contentDisposition;
+    }
+
+    /**
+     * @param name file name of the attachment
+     * @param dataSource content of the attachment
+     * @return the attachment, its headers formatted
+     * @throws MessagingException when the content type of the attachment is invalid
+     */
+    public static SharedBodyPart attachment(String name, DataSource dataSource) throws MessagingException {
+        ContentType type = new ContentType(dataSource.getContentType() != null ? dataSource.getContentType() : "application/octet-stream");
+        ParameterList typeParameters = type.getParameterList() != null ? type.getParameterList() : new ParameterList();
+        typeParameters.set("name", name, CHARSET);
+        type.setParameterList(typeParameters);
+        ParameterList dispositionParameters = new ParameterList();
+        dispositionParameters.set("filename", name, CHARSET);
+        return new SharedBodyPart(dataSource, type.toString(), new ContentDisposition(Part.ATTACHMENT, dispositionParameters).toString());
+    }
+
+    /**
+     * @param cache cache holding the encoded content, encoding it on first use
+     * @return a new body part over the encoded content and the formatted headers
+     * @throws MessagingException when the attachment could not be read
+     */
+    public MimeBodyPart newBodyPart(AttachmentEncodingCache cache) throws MessagingException {
+        PreencodedMimeBodyPart bodyPart = new PreencodedMimeBodyPart("base64");
+        // setting the data handler drops the content headers, they are set after it
+        bodyPart.setDataHandler(new DataHandler(cache.getEncoded(dataSource, true)));
+        bodyPart.setHeader("Content-Type", contentType);
+        bodyPart.setHeader("Content-Disposition", contentDisposition);
+        return bodyPart;
+    }
+}
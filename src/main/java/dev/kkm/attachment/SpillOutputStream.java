@@ -0,0 +1,106 @@
+package dev.kkm.attachment;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * @implNote output stream kept in memory until it grows above a threshold, then moved to a temporary file
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+class SpillOutputStream extends OutputStream {
+
+    private final long threshold;
+    private final Path directory;
+    private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+    private OutputStream file;
+    private Path path;
+    private long size;
+
+    /**
+     * @param threshold number of bytes above which the content is written to disk
+     * @param directory directory of the temporary file, null for the default temporary directory
+     */
+    SpillOutputStream(long threshold, Path directory) {
+        this.threshold = threshold;
+        this.directory = directory;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        spillIfNeeded(1);
+        current().write(b);
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        spillIfNeeded(len);
+        current().write(b, off, len);
+        size += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        current().flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            file.close();
+        }
+    }
+
+    /**
+     * closes and deletes the temporary file, if any
+     */
+    void discard() {
+        try {
+            close();
+            if (path != null) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException ignored) {
+            // the directory of the spilled files is the one to clean
+        }
+    }
+
+    boolean isInMemory() {
+        return path == null;
+    }
+
+    /**
+     * @return the content, only when kept in memory
+     */
+    byte[] toByteArray() {
+        return memory.toByteArray();
+    }
+
+    /**
+     * @return the temporary file, only when spilled to disk
+     */
+    Path getPath() {
+        return path;
+    }
+
+    long size() {
+        return size;
+    }
+
+    private OutputStream current() {
+        return file != null ? file : memory;
+    }
+
+    private void spillIfNeeded(int length) throws IOException {
+        if (file == null && size + length > threshold) {
+            path = directory != null ? Files.createTempFile(directory, "courier-", ".spool") : Files.createTempFile("courier-", ".spool");
+            file = new BufferedOutputStream(Files.newOutputStream(path));
+            memory.writeTo(file);
+            memory = null;
+        }
+    }
+}
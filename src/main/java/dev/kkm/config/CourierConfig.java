@@ -2,29 +2,70 @@ package dev.kkm.config;
 
 
 
+import dev.kkm.attachment.AttachmentEncodingCache;
+import dev.kkm.attachment.InlineResourceCache;
+import dev.kkm.dedup.CourierDeduplicator;
+import dev.kkm.dedup.DeduplicationStore;
+import dev.kkm.dedup.InMemoryDeduplicationStore;
+import dev.kkm.digest.DigestCoalescer;
+import dev.kkm.dkim.DkimSigner;
+import dev.kkm.dispatch.PriorityDispatcher;
+import dev.kkm.metrics.CourierMetrics;
+import dev.kkm.metrics.CourierSendEvent;
+import dev.kkm.metrics.CourierStageEvent;
+import dev.kkm.metrics.MicrometerCourierMetrics;
+import dev.kkm.mime.WireMessageWriter;
+import dev.kkm.outbox.CourierOutbox;
+import dev.kkm.outbox.JdbcOutbox;
+import dev.kkm.outbox.MessageOutbox;
+import dev.kkm.reactive.ReactiveCourierService;
 import dev.kkm.service.CourierService;
 import dev.kkm.service.CourierServiceImpl;
+import dev.kkm.template.CourierTemplateRenderer;
+import dev.kkm.transport.CourierTransport;
+import dev.kkm.transport.EnvelopeMessage;
+import dev.kkm.transport.RateLimitedTransport;
+import dev.kkm.transport.RelayRouter;
+import dev.kkm.transport.RetryingTransport;
+import dev.kkm.transport.SmtpConnectionPool;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.mail.MailProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.JavaMailSenderImpl;
+import jakarta.mail.Session;
 import org.thymeleaf.TemplateEngine;
 
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Executor;
 
-@AutoConfiguration
+@AutoConfiguration(afterName = "org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration")
 @Configuration
-@EnableConfigurationProperties({MailProperties.class})
+@EnableConfigurationProperties({MailProperties.class, CourierProperties.class})
 public class CourierConfig {
 
     @Bean
-    @ConditionalOnMissingBean
-    public JavaMailSender mailSender(MailProperties properties) {
+    @ConditionalOnMissingBean(JavaMailSender.class)
+    public JavaMailSenderImpl mailSender(MailProperties properties) {
+        return newMailSender(properties);
+    }
+
+    private static JavaMailSenderImpl newMailSender(MailProperties properties) {
         JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
         mailSender.setHost(properties.getHost());
         mailSender.setPort(properties.getPort() != null?properties.getPort():25);
@@ -39,8 +80,264 @@ public class CourierConfig {
         return mailSender;
     }
 
+    /**
+     * pool of {@code spring.mail.host}, not created when routing: the router pools the connections of each relay.
+     * Only a {@code JavaMailSenderImpl} bean is pooled: a custom or decorated mail sender is used as is
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean
+    @ConditionalOnBean(JavaMailSenderImpl.class)
+    @ConditionalOnExpression("${courier.pool.enabled:true} and !${courier.routing.enabled:false}")
+    public SmtpConnectionPool smtpConnectionPool(JavaMailSenderImpl mailSender, CourierProperties courierProperties,
+                                                 ObjectProvider<CourierMetrics> metrics) {
+        SmtpConnectionPool connectionPool = new SmtpConnectionPool(mailSender, courierProperties.getPool());
+        metrics.ifAvailable(connectionPool::setMetrics);
+        return connectionPool;
+    }
+
+    /**
+     * one sender, connection pool, rate limit and health check per relay of {@code courier.routing.relays},
+     * with the {@code spring.mail} settings as defaults
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "courier.routing", name = "enabled", havingValue = "true")
+    public RelayRouter relayRouter(MailProperties mailProperties, CourierProperties courierProperties, ObjectProvider<CourierMetrics> metrics) {
+        CourierMetrics courierMetrics = metrics.getIfAvailable(() -> CourierMetrics.NONE);
+        List<RelayRouter.Relay> relays = new ArrayList<>();
+        for (CourierProperties.Routing.Relay relay : courierProperties.getRouting().getRelays()) {
+            JavaMailSenderImpl relaySender = newMailSender(mailProperties);
+            relaySender.setHost(relay.getHost());
+            relaySender.setPort(relay.getPort());
+            relaySender.setUsername(relay.getUsername());
+            relaySender.setPassword(relay.getPassword());
+            relaySender.getJavaMailProperties().putAll(relay.getProperties());
+
+            CourierTransport transport;
+            if (courierProperties.getPool().isEnabled()) {
+                SmtpConnectionPool connectionPool = new SmtpConnectionPool(relaySender, courierProperties.getPool());
+                connectionPool.setMetrics(courierMetrics);
+                transport = connectionPool;
+            } else {
+                transport = timed(relaySender, courierMetrics);
+            }
+            // every relay is throttled on its own, a relay backing off does not slow the others
+            CourierProperties.RateLimit rateLimit = relay.getRateLimit() != null ? relay.getRateLimit() : courierProperties.getRateLimit();
+            if (rateLimit.isEnabled()) {
+                transport = new RateLimitedTransport(transport, rateLimit);
+            }
+            relays.add(new RelayRouter.Relay(relay.getName(), relay.getWeight(), relay.getSenderDomains(), relay.getPriorities(),
+                    transport, relaySender::testConnection));
+        }
+        return new RelayRouter(relays, courierProperties.getRouting());
+    }
+
+    /**
+     * transport used by the service and the outbox: the relay router, the connection pool or the mail sender,
+     * behind the enabled decorators
+     */
+    @Bean
+    @Primary
+    @ConditionalOnMissingBean(name = "courierTransport")
+    public CourierTransport courierTransport(JavaMailSender mailSender, CourierProperties courierProperties, ObjectProvider<RelayRouter> relayRouter,
+                                             ObjectProvider<SmtpConnectionPool> connectionPool, ObjectProvider<CourierMetrics> metrics) {
+        CourierTransport transport = relayRouter.getIfAvailable();
+        if (transport == null) {
+            transport = connectionPool.getIfAvailable();
+        }
+        if (transport == null) {
+            transport = timed(mailSender, metrics.getIfAvailable(() -> CourierMetrics.NONE));
+        }
+        if (courierProperties.getRateLimit().isEnabled() && !(transport instanceof RelayRouter)) {
+            // the relays of the router are limited one by one
+            transport = new RateLimitedTransport(transport, courierProperties.getRateLimit());
+        }
+        if (courierProperties.getRetry().isEnabled()) {
+            transport = new RetryingTransport(transport, courierProperties.getRetry(), courierProperties.getBulk().getMaxInFlight());
+        }
+        return transport;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "courier.template", name = "enabled", havingValue = "true")
+    public CourierTemplateRenderer courierTemplateRenderer(ApplicationContext context, TemplateEngine engine, CourierProperties courierProperties) {
+        return new CourierTemplateRenderer(context, engine, courierProperties.getTemplate());
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "courier.attachment", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public AttachmentEncodingCache attachmentEncodingCache(CourierProperties courierProperties, ObjectProvider<CourierMetrics> metrics) {
+        AttachmentEncodingCache attachmentCache = new AttachmentEncodingCache(courierProperties.getAttachment());
+        metrics.ifAvailable(attachmentCache::setMetrics);
+        return attachmentCache;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "courier.inline", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public InlineResourceCache inlineResourceCache(ApplicationContext context, CourierProperties courierProperties, ObjectProvider<CourierMetrics> metrics) {
+        InlineResourceCache inlineCache = new InlineResourceCache(context, courierProperties.getInline());
+        metrics.ifAvailable(inlineCache::setMetrics);
+        return inlineCache;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "courier.dkim", name = "enabled", havingValue = "true")
+    public DkimSigner dkimSigner(ApplicationContext context, CourierProperties courierProperties) {
+        CourierProperties.Dkim dkim = courierProperties.getDkim();
+        if (dkim.getDomain() == null || dkim.getSelector() == null || dkim.getPrivateKey() == null) {
+            throw new IllegalStateException("courier.dkim requires a domain, a selector and a private-key");
+        }
+        return new DkimSigner(dkim, context);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "courier.wire", name = "enabled", havingValue = "true")
+    public WireMessageWriter wireMessageWriter(ApplicationContext context, CourierProperties courierProperties,
+                                               ObjectProvider<AttachmentEncodingCache> attachmentCache, ObjectProvider<InlineResourceCache> inlineCache) {
+        WireMessageWriter wireWriter = new WireMessageWriter(context);
+        attachmentCache.ifAvailable(wireWriter::setAttachmentCache);
+        inlineCache.ifAvailable(wireWriter::setInlineCache);
+        return wireWriter;
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean(MessageOutbox.class)
+    @ConditionalOnExpression("${courier.outbox.enabled:false} and '${courier.outbox.store:file}'.equalsIgnoreCase('file')")
+    public CourierOutbox courierOutbox(JavaMailSender mailSender, CourierProperties courierProperties, ObjectProvider<CourierTransport> transport) {
+        Session session = mailSender instanceof JavaMailSenderImpl mailSenderImpl ? mailSenderImpl.getSession() : Session.getInstance(new Properties());
+        return new CourierOutbox(courierProperties.getOutbox(), transport.getIfAvailable(() -> mailSender::send), session);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean(MessageOutbox.class)
+    @ConditionalOnExpression("${courier.outbox.enabled:false} and '${courier.outbox.store:file}'.equalsIgnoreCase('jdbc')")
+    public JdbcOutbox jdbcOutbox(JavaMailSender mailSender, CourierProperties courierProperties, ObjectProvider<DataSource> dataSource,
+                                 ObjectProvider<CourierTransport> transport) {
+        DataSource outboxDataSource = dataSource.getIfUnique();
+        if (outboxDataSource == null) {
+            throw new IllegalStateException("courier.outbox.store=jdbc requires a single DataSource bean");
+        }
+        Session session = mailSender instanceof JavaMailSenderImpl mailSenderImpl ? mailSenderImpl.getSession() : Session.getInstance(new Properties());
+        return new JdbcOutbox(outboxDataSource, courierProperties.getOutbox(), transport.getIfAvailable(() -> mailSender::send), session);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "courier.priority", name = "enabled", havingValue = "true")
+    public PriorityDispatcher priorityDispatcher(CourierProperties courierProperties) {
+        return new PriorityDispatcher(courierProperties.getPriority());
+    }
+
     @Bean
-    public CourierService courierService(ApplicationContext context, TemplateEngine engine) {
-        return new CourierServiceImpl(context, engine);
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "courier.dedup", name = "enabled", havingValue = "true")
+    public DeduplicationStore courierDeduplicationStore(CourierProperties courierProperties) {
+        return new InMemoryDeduplicationStore(courierProperties.getDedup().getMaxSize());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "courier.dedup", name = "enabled", havingValue = "true")
+    public CourierDeduplicator courierDeduplicator(DeduplicationStore store, CourierProperties courierProperties) {
+        return new CourierDeduplicator(store, courierProperties.getDedup());
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "courier.digest", name = "enabled", havingValue = "true")
+    public DigestCoalescer digestCoalescer(CourierProperties courierProperties) {
+        return new DigestCoalescer(courierProperties.getDigest());
+    }
+
+    @Bean
+    public CourierService courierService(ApplicationContext context, TemplateEngine engine, CourierProperties courierProperties, JavaMailSender mailSender,
+                                         ObjectProvider<CourierTransport> transport, ObjectProvider<CourierTemplateRenderer> templateRenderer,
+                                         ObjectProvider<AttachmentEncodingCache> attachmentCache, ObjectProvider<InlineResourceCache> inlineCache,
+                                         ObjectProvider<WireMessageWriter> wireWriter, ObjectProvider<DkimSigner> dkimSigner,
+                                         ObjectProvider<MessageOutbox> outbox,
+                                         ObjectProvider<PriorityDispatcher> priorityDispatcher, ObjectProvider<CourierMetrics> metrics,
+                                         @Qualifier("courierAsyncExecutor") ObjectProvider<Executor> asyncExecutor,
+                                         ObjectProvider<CourierDeduplicator> deduplicator, ObjectProvider<DigestCoalescer> digestCoalescer) {
+        CourierTemplateRenderer renderer = templateRenderer.getIfAvailable();
+        CourierServiceImpl courierService = new CourierServiceImpl(context, renderer != null ? renderer.getTemplateEngine() : engine, courierProperties);
+        if (mailSender instanceof JavaMailSenderImpl mailSenderImpl) {
+            courierService.setMailSender(mailSenderImpl);
+        }
+        transport.ifAvailable(courierService::setTransport);
+        attachmentCache.ifAvailable(courierService::setAttachmentCache);
+        inlineCache.ifAvailable(courierService::setInlineCache);
+        wireWriter.ifAvailable(courierService::setWireWriter);
+        dkimSigner.ifAvailable(courierService::setDkimSigner);
+        outbox.ifAvailable(courierService::setOutbox);
+        priorityDispatcher.ifAvailable(courierService::setPriorityDispatcher);
+        metrics.ifAvailable(courierService::setMetrics);
+        asyncExecutor.ifAvailable(courierService::setAsyncExecutor);
+        deduplicator.ifAvailable(courierService::setDeduplicator);
+        digestCoalescer.ifAvailable(courierService::setDigestCoalescer);
+        return courierService;
+    }
+
+    /**
+     * @return the mail sender as a transport, timed as the connection pool is
+     */
+    private static CourierTransport timed(JavaMailSender mailSender, CourierMetrics metrics) {
+        String relay = mailSender instanceof JavaMailSenderImpl mailSenderImpl ? mailSenderImpl.getHost() : null;
+        return message -> {
+            long start = System.nanoTime();
+            CourierStageEvent event = CourierStageEvent.start();
+            mailSender.send(message);
+            event.finish(CourierMetrics.Stage.TRANSMISSION, null, relay);
+            metrics.record(CourierMetrics.Stage.TRANSMISSION, System.nanoTime() - start);
+            if (message instanceof EnvelopeMessage envelopeMessage) {
+                CourierSendEvent.messageSize(envelopeMessage.getWireSize());
+            }
+            metrics.sent(message);
+        };
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "reactor.core.publisher.Flux")
+    static class CourierReactiveConfig {
+
+        /**
+         * the concurrency defaults to the pool size, of every relay when routing: more couriers in progress would only wait for a connection
+         */
+        @Bean
+        @ConditionalOnMissingBean
+        @ConditionalOnProperty(prefix = "courier.reactive", name = "enabled", havingValue = "true", matchIfMissing = true)
+        public ReactiveCourierService reactiveCourierService(CourierService courierService, CourierProperties courierProperties,
+                                                             ObjectProvider<SmtpConnectionPool> connectionPool,
+                                                             ObjectProvider<RelayRouter> relayRouter) {
+            int concurrency = courierProperties.getReactive().getConcurrency();
+            if (concurrency <= 0) {
+                RelayRouter router = relayRouter.getIfAvailable();
+                if (router != null && courierProperties.getPool().isEnabled()) {
+                    concurrency = courierProperties.getPool().getMaxSize() * router.getRelays().size();
+                } else if (router == null && connectionPool.getIfAvailable() != null) {
+                    concurrency = courierProperties.getPool().getMaxSize();
+                } else {
+                    concurrency = courierProperties.getAsync().getMaxInFlight();
+                }
+            }
+            return new ReactiveCourierService(courierService, concurrency);
+        }
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+    static class CourierMetricsConfig {
+
+        @Bean
+        @ConditionalOnMissingBean
+        @ConditionalOnBean(MeterRegistry.class)
+        @ConditionalOnProperty(prefix = "courier.metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+        public CourierMetrics courierMetrics(MeterRegistry registry, CourierProperties courierProperties) {
+            return new MicrometerCourierMetrics(registry, courierProperties.getMetrics());
+        }
     }
 }
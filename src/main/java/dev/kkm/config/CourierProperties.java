@@ -0,0 +1,1529 @@
+package dev.kkm.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tuning properties of the courier starter, bound from the {@code courier.*} namespace.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+@ConfigurationProperties(prefix = "courier")
+public class CourierProperties {
+
+    private final Bulk bulk = new Bulk();
+    private final Pool pool = new Pool();
+    private final Template template = new Template();
+    private final Attachment attachment = new Attachment();
+    private final Outbox outbox = new Outbox();
+    private final Priority priority = new Priority();
+    private final RateLimit rateLimit = new RateLimit();
+    private final Retry retry = new Retry();
+    private final Metrics metrics = new Metrics();
+    private final Validation validation = new Validation();
+    private final Chunk chunk = new Chunk();
+    private final Async async = new Async();
+    private final Reactive reactive = new Reactive();
+    private final Routing routing = new Routing();
+    private final Dedup dedup = new Dedup();
+    private final Digest digest = new Digest();
+    private final Inline inline = new Inline();
+    private final Wire wire = new Wire();
+    private final Dkim dkim = new Dkim();
+
+    public Bulk getBulk() {
+        return bulk;
+    }
+
+    public Pool getPool() {
+        return pool;
+    }
+
+    public Template getTemplate() {
+        return template;
+    }
+
+    public Attachment getAttachment() {
+        return attachment;
+    }
+
+    public Outbox getOutbox() {
+        return outbox;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
+
+    public Retry getRetry() {
+        return retry;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public Validation getValidation() {
+        return validation;
+    }
+
+    public Chunk getChunk() {
+        return chunk;
+    }
+
+    public Async getAsync() {
+        return async;
+    }
+
+    public Reactive getReactive() {
+        return reactive;
+    }
+
+    public Routing getRouting() {
+        return routing;
+    }
+
+    public Dedup getDedup() {
+        return dedup;
+    }
+
+    public Digest getDigest() {
+        return digest;
+    }
+
+    public Inline getInline() {
+        return inline;
+    }
+
+    public Wire getWire() {
+        return wire;
+    }
+
+    public Dkim getDkim() {
+        return dkim;
+    }
+
+    /**
+     * Settings of the bulk send engine used by {@code sendCouriers(List)}
+     */
+    public static class Bulk {
+        /**
+         * maximum number of couriers rendered or on the wire at the same time
+         */
+        private int maxInFlight = 16;
+
+        public int getMaxInFlight() {
+            return maxInFlight;
+        }
+
+        public void setMaxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+        }
+    }
+
+    /**
+     * Settings of the pool of authenticated SMTP connections
+     */
+    public static class Pool {
+        /**
+         * borrow connections from the pool instead of opening one connection per courier
+         */
+        private boolean enabled = true;
+        /**
+         * maximum number of open connections
+         */
+        private int maxSize = 8;
+        /**
+         * maximum time to wait for a free connection
+         */
+        private Duration borrowTimeout = Duration.ofSeconds(30);
+        /**
+         * idle connections older than this are closed by the evictor
+         */
+        private Duration idleTimeout = Duration.ofSeconds(60);
+        /**
+         * period of the idle connections eviction
+         */
+        private Duration evictionInterval = Duration.ofSeconds(30);
+        /**
+         * a connection is closed and replaced after having sent this number of messages
+         */
+        private int maxMessagesPerConnection = 100;
+        /**
+         * a connection idle for longer than this is checked with a NOOP before being reused
+         */
+        private Duration validationInterval = Duration.ofSeconds(5);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public Duration getBorrowTimeout() {
+            return borrowTimeout;
+        }
+
+        public void setBorrowTimeout(Duration borrowTimeout) {
+            this.borrowTimeout = borrowTimeout;
+        }
+
+        public Duration getIdleTimeout() {
+            return idleTimeout;
+        }
+
+        public void setIdleTimeout(Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+        }
+
+        public Duration getEvictionInterval() {
+            return evictionInterval;
+        }
+
+        public void setEvictionInterval(Duration evictionInterval) {
+            this.evictionInterval = evictionInterval;
+        }
+
+        public int getMaxMessagesPerConnection() {
+            return maxMessagesPerConnection;
+        }
+
+        public void setMaxMessagesPerConnection(int maxMessagesPerConnection) {
+            this.maxMessagesPerConnection = maxMessagesPerConnection;
+        }
+
+        public Duration getValidationInterval() {
+            return validationInterval;
+        }
+
+        public void setValidationInterval(Duration validationInterval) {
+            this.validationInterval = validationInterval;
+        }
+    }
+
+    /**
+     * Settings of the template engine owned by the starter
+     */
+    public static class Template {
+        /**
+         * render couriers with the starter engine and its own resolver, instead of the engine of the application
+         */
+        private boolean enabled = false;
+        private String prefix = "classpath:/templates/";
+        private String suffix = ".html";
+        private String encoding = "UTF-8";
+        /**
+         * maximum number of parsed templates kept in cache
+         */
+        private int cacheMaxSize = 200;
+        /**
+         * parsed templates older than this are parsed again, unset to keep them until evicted
+         */
+        private Duration cacheTtl;
+        private int expressionCacheMaxSize = 500;
+        /**
+         * templates parsed at startup
+         */
+        private List<String> preload = new ArrayList<>();
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getPrefix() {
+            return prefix;
+        }
+
+        public void setPrefix(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public String getSuffix() {
+            return suffix;
+        }
+
+        public void setSuffix(String suffix) {
+            this.suffix = suffix;
+        }
+
+        public String getEncoding() {
+            return encoding;
+        }
+
+        public void setEncoding(String encoding) {
+            this.encoding = encoding;
+        }
+
+        public int getCacheMaxSize() {
+            return cacheMaxSize;
+        }
+
+        public void setCacheMaxSize(int cacheMaxSize) {
+            this.cacheMaxSize = cacheMaxSize;
+        }
+
+        public Duration getCacheTtl() {
+            return cacheTtl;
+        }
+
+        public void setCacheTtl(Duration cacheTtl) {
+            this.cacheTtl = cacheTtl;
+        }
+
+        public int getExpressionCacheMaxSize() {
+            return expressionCacheMaxSize;
+        }
+
+        public void setExpressionCacheMaxSize(int expressionCacheMaxSize) {
+            this.expressionCacheMaxSize = expressionCacheMaxSize;
+        }
+
+        public List<String> getPreload() {
+            return preload;
+        }
+
+        public void setPreload(List<String> preload) {
+            this.preload = preload;
+        }
+    }
+
+    /**
+     * Settings of the cache of encoded attachments
+     */
+    public static class Attachment {
+        /**
+         * encode once an attachment shared by several couriers
+         */
+        private boolean enabled = true;
+        /**
+         * an encoded attachment not reused for this long is discarded
+         */
+        private Duration window = Duration.ofMinutes(10);
+        /**
+         * maximum size of the encoded attachments held in memory, the next ones are kept on disk
+         */
+        private DataSize maxMemory = DataSize.ofMegabytes(64);
+        /**
+         * encoded attachments larger than this are kept on disk
+         */
+        private DataSize spillThreshold = DataSize.ofMegabytes(1);
+        /**
+         * directory of the spilled attachments, the default temporary directory when unset
+         */
+        private String spillDirectory;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getWindow() {
+            return window;
+        }
+
+        public void setWindow(Duration window) {
+            this.window = window;
+        }
+
+        public DataSize getMaxMemory() {
+            return maxMemory;
+        }
+
+        public void setMaxMemory(DataSize maxMemory) {
+            this.maxMemory = maxMemory;
+        }
+
+        public DataSize getSpillThreshold() {
+            return spillThreshold;
+        }
+
+        public void setSpillThreshold(DataSize spillThreshold) {
+            this.spillThreshold = spillThreshold;
+        }
+
+        public String getSpillDirectory() {
+            return spillDirectory;
+        }
+
+        public void setSpillDirectory(String spillDirectory) {
+            this.spillDirectory = spillDirectory;
+        }
+    }
+
+    /**
+     * Settings of the durable local outbox
+     */
+    public static class Outbox {
+        /**
+         * journal couriers given to {@code enqueueCourier} and send them in the background
+         */
+        private boolean enabled = false;
+        /**
+         * where enqueued couriers are stored: a journal on local disk, or a table shared by every node
+         */
+        private Store store = Store.FILE;
+        /**
+         * directory of the journal segments
+         */
+        private String directory = "courier-outbox";
+        /**
+         * size above which a new journal segment is started
+         */
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+        /**
+         * maximum number of journal records written per fsync
+         */
+        private int maxBatch = 256;
+        /**
+         * number of background dispatcher threads
+         */
+        private int dispatchers = 4;
+        /**
+         * a message failing this many times is dropped
+         */
+        private int maxAttempts = 5;
+        private Duration retryDelay = Duration.ofSeconds(30);
+        /**
+         * at shutdown, time given to the sends in progress to finish
+         */
+        private Duration shutdownTimeout = Duration.ofSeconds(10);
+        private final Jdbc jdbc = new Jdbc();
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Store getStore() {
+            return store;
+        }
+
+        public void setStore(Store store) {
+            this.store = store;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public DataSize getSegmentSize() {
+            return segmentSize;
+        }
+
+        public void setSegmentSize(DataSize segmentSize) {
+            this.segmentSize = segmentSize;
+        }
+
+        public int getMaxBatch() {
+            return maxBatch;
+        }
+
+        public void setMaxBatch(int maxBatch) {
+            this.maxBatch = maxBatch;
+        }
+
+        public int getDispatchers() {
+            return dispatchers;
+        }
+
+        public void setDispatchers(int dispatchers) {
+            this.dispatchers = dispatchers;
+        }
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        public Duration getRetryDelay() {
+            return retryDelay;
+        }
+
+        public void setRetryDelay(Duration retryDelay) {
+            this.retryDelay = retryDelay;
+        }
+
+        public Duration getShutdownTimeout() {
+            return shutdownTimeout;
+        }
+
+        public void setShutdownTimeout(Duration shutdownTimeout) {
+            this.shutdownTimeout = shutdownTimeout;
+        }
+
+        public Jdbc getJdbc() {
+            return jdbc;
+        }
+
+        public enum Store {
+            /**
+             * journal on the local disk of the node, see {@code directory}
+             */
+            FILE,
+            /**
+             * table of the application DataSource, dispatched by every node
+             */
+            JDBC
+        }
+
+        /**
+         * Settings of the outbox table, with {@code store=jdbc}
+         */
+        public static class Jdbc {
+            /**
+             * name of the outbox table
+             */
+            private String table = "courier_outbox";
+            /**
+             * maximum number of rows a dispatcher claims at once
+             */
+            private int claimBatch = 32;
+            /**
+             * claimed rows not marked within this time are claimed again by any node. The node sending them renews
+             * their lease every third of it, so that a slow send (retries included) keeps its rows
+             */
+            private Duration leaseTimeout = Duration.ofMinutes(5);
+            /**
+             * delay between two claims while the table has no pending row
+             */
+            private Duration pollInterval = Duration.ofSeconds(1);
+            /**
+             * delete the rows once sent, instead of marking them SENT
+             */
+            private boolean deleteSent = true;
+            /**
+             * name of this node in the lease of its claimed rows, the host name and a random suffix by default
+             */
+            private String nodeId;
+            /**
+             * syntax of the claim query, detected from the database by default
+             */
+            private Dialect dialect = Dialect.AUTO;
+
+            public String getTable() {
+                return table;
+            }
+
+            public void setTable(String table) {
+                this.table = table;
+            }
+
+            public int getClaimBatch() {
+                return claimBatch;
+            }
+
+            public void setClaimBatch(int claimBatch) {
+                this.claimBatch = claimBatch;
+            }
+
+            public Duration getLeaseTimeout() {
+                return leaseTimeout;
+            }
+
+            public void setLeaseTimeout(Duration leaseTimeout) {
+                this.leaseTimeout = leaseTimeout;
+            }
+
+            public Duration getPollInterval() {
+                return pollInterval;
+            }
+
+            public void setPollInterval(Duration pollInterval) {
+                this.pollInterval = pollInterval;
+            }
+
+            public boolean isDeleteSent() {
+                return deleteSent;
+            }
+
+            public void setDeleteSent(boolean deleteSent) {
+                this.deleteSent = deleteSent;
+            }
+
+            public String getNodeId() {
+                return nodeId;
+            }
+
+            public void setNodeId(String nodeId) {
+                this.nodeId = nodeId;
+            }
+
+            public Dialect getDialect() {
+                return dialect;
+            }
+
+            public void setDialect(Dialect dialect) {
+                this.dialect = dialect;
+            }
+
+            public enum Dialect {
+                /**
+                 * detected from the product name of the database
+                 */
+                AUTO,
+                /**
+                 * {@code FETCH FIRST n ROWS ONLY FOR UPDATE SKIP LOCKED}: PostgreSQL, H2, HSQLDB
+                 */
+                STANDARD,
+                /**
+                 * {@code LIMIT n FOR UPDATE SKIP LOCKED}: MySQL 8, MariaDB 10.6
+                 */
+                LIMIT,
+                /**
+                 * {@code FOR UPDATE SKIP LOCKED} without row limit in the query, the rows being limited by the driver:
+                 * Oracle
+                 */
+                ORACLE,
+                /**
+                 * {@code TOP (n)} with the {@code UPDLOCK, READPAST} hints: SQL Server
+                 */
+                SQL_SERVER
+            }
+        }
+    }
+
+    /**
+     * Settings of the priority lanes of {@code submitCourier}
+     */
+    public static class Priority {
+        /**
+         * dispatch submitted couriers through one lane per priority, instead of the bulk executor
+         */
+        private boolean enabled = false;
+        /**
+         * number of worker threads shared by the lanes
+         */
+        private int workers = 8;
+        /**
+         * share of the workers given to priority 1 when every lane is backlogged
+         */
+        private int highWeight = 8;
+        /**
+         * share of the workers given to priority 3 (and couriers without priority)
+         */
+        private int normalWeight = 3;
+        /**
+         * share of the workers given to priority 5
+         */
+        private int lowWeight = 1;
+        /**
+         * maximum number of couriers waiting in a lane, a courier submitted to a full lane is rejected
+         */
+        private int laneCapacity = 10_000;
+        /**
+         * time given on close to the workers to send the couriers already submitted, the couriers still waiting
+         * afterwards are failed
+         */
+        private Duration shutdownTimeout = Duration.ofSeconds(30);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getWorkers() {
+            return workers;
+        }
+
+        public void setWorkers(int workers) {
+            this.workers = workers;
+        }
+
+        public int getHighWeight() {
+            return highWeight;
+        }
+
+        public void setHighWeight(int highWeight) {
+            this.highWeight = highWeight;
+        }
+
+        public int getNormalWeight() {
+            return normalWeight;
+        }
+
+        public void setNormalWeight(int normalWeight) {
+            this.normalWeight = normalWeight;
+        }
+
+        public int getLowWeight() {
+            return lowWeight;
+        }
+
+        public void setLowWeight(int lowWeight) {
+            this.lowWeight = lowWeight;
+        }
+
+        public int getLaneCapacity() {
+            return laneCapacity;
+        }
+
+        public void setLaneCapacity(int laneCapacity) {
+            this.laneCapacity = laneCapacity;
+        }
+
+        public Duration getShutdownTimeout() {
+            return shutdownTimeout;
+        }
+
+        public void setShutdownTimeout(Duration shutdownTimeout) {
+            this.shutdownTimeout = shutdownTimeout;
+        }
+    }
+
+    /**
+     * Settings of the rate limit applied in front of the SMTP relay
+     */
+    public static class RateLimit {
+        /**
+         * limit the send rate to the relay
+         */
+        private boolean enabled = false;
+        /**
+         * maximum number of messages sent per second
+         */
+        private double messagesPerSecond = 10;
+        /**
+         * maximum number of recipients sent to per minute
+         */
+        private double recipientsPerMinute = 600;
+        /**
+         * factor applied to the rates when the relay throttles (421, 451, 452)
+         */
+        private double backoffFactor = 0.5;
+        /**
+         * lowest share of the configured rates the backoff can go down to
+         */
+        private double minRateFactor = 0.1;
+        /**
+         * share of the configured rates given back after each recovery interval without throttling
+         */
+        private double recoveryStep = 0.1;
+        /**
+         * time without throttling before the rates are raised again
+         */
+        private Duration recoveryInterval = Duration.ofSeconds(10);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getMessagesPerSecond() {
+            return messagesPerSecond;
+        }
+
+        public void setMessagesPerSecond(double messagesPerSecond) {
+            this.messagesPerSecond = messagesPerSecond;
+        }
+
+        public double getRecipientsPerMinute() {
+            return recipientsPerMinute;
+        }
+
+        public void setRecipientsPerMinute(double recipientsPerMinute) {
+            this.recipientsPerMinute = recipientsPerMinute;
+        }
+
+        public double getBackoffFactor() {
+            return backoffFactor;
+        }
+
+        public void setBackoffFactor(double backoffFactor) {
+            this.backoffFactor = backoffFactor;
+        }
+
+        public double getMinRateFactor() {
+            return minRateFactor;
+        }
+
+        public void setMinRateFactor(double minRateFactor) {
+            this.minRateFactor = minRateFactor;
+        }
+
+        public double getRecoveryStep() {
+            return recoveryStep;
+        }
+
+        public void setRecoveryStep(double recoveryStep) {
+            this.recoveryStep = recoveryStep;
+        }
+
+        public Duration getRecoveryInterval() {
+            return recoveryInterval;
+        }
+
+        public void setRecoveryInterval(Duration recoveryInterval) {
+            this.recoveryInterval = recoveryInterval;
+        }
+    }
+
+    /**
+     * Settings of the retries of transient SMTP failures and of the relay circuit breaker
+     */
+    public static class Retry {
+        /**
+         * retry the transient failures (4xx replies, lost connections, timeouts)
+         */
+        private boolean enabled = false;
+        /**
+         * maximum number of attempts of a courier, the first one included
+         */
+        private int maxAttempts = 4;
+        /**
+         * wait before the first retry
+         */
+        private Duration initialDelay = Duration.ofSeconds(1);
+        /**
+         * factor applied to the wait after each failed retry
+         */
+        private double multiplier = 2;
+        /**
+         * longest wait between two attempts
+         */
+        private Duration maxDelay = Duration.ofMinutes(1);
+        /**
+         * share of the wait randomly removed, so that failed couriers do not retry together
+         */
+        private double jitter = 0.5;
+        /**
+         * consecutive transient failures opening the circuit
+         */
+        private int failureThreshold = 5;
+        /**
+         * time the circuit stays open before the relay is tried again
+         */
+        private Duration openDuration = Duration.ofSeconds(30);
+        /**
+         * maximum number of couriers waiting for the circuit to close, the next ones fail fast
+         */
+        private int maxQueued = 1000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        public Duration getInitialDelay() {
+            return initialDelay;
+        }
+
+        public void setInitialDelay(Duration initialDelay) {
+            this.initialDelay = initialDelay;
+        }
+
+        public double getMultiplier() {
+            return multiplier;
+        }
+
+        public void setMultiplier(double multiplier) {
+            this.multiplier = multiplier;
+        }
+
+        public Duration getMaxDelay() {
+            return maxDelay;
+        }
+
+        public void setMaxDelay(Duration maxDelay) {
+            this.maxDelay = maxDelay;
+        }
+
+        public double getJitter() {
+            return jitter;
+        }
+
+        public void setJitter(double jitter) {
+            this.jitter = jitter;
+        }
+
+        public int getFailureThreshold() {
+            return failureThreshold;
+        }
+
+        public void setFailureThreshold(int failureThreshold) {
+            this.failureThreshold = failureThreshold;
+        }
+
+        public Duration getOpenDuration() {
+            return openDuration;
+        }
+
+        public void setOpenDuration(Duration openDuration) {
+            this.openDuration = openDuration;
+        }
+
+        public int getMaxQueued() {
+            return maxQueued;
+        }
+
+        public void setMaxQueued(int maxQueued) {
+            this.maxQueued = maxQueued;
+        }
+    }
+
+    /**
+     * Settings of the Micrometer metrics, registered when a {@code MeterRegistry} is available
+     */
+    public static class Metrics {
+        /**
+         * record the metrics of the send pipeline
+         */
+        private boolean enabled = true;
+        /**
+         * publish percentile histograms of the timers and distributions
+         */
+        private boolean histograms = false;
+        /**
+         * measure the size of every courier, at the cost of serializing it once more
+         */
+        private boolean messageSize = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public boolean isHistograms() {
+            return histograms;
+        }
+
+        public void setHistograms(boolean histograms) {
+            this.histograms = histograms;
+        }
+
+        public boolean isMessageSize() {
+            return messageSize;
+        }
+
+        public void setMessageSize(boolean messageSize) {
+            this.messageSize = messageSize;
+        }
+    }
+
+    /**
+     * Settings of the address validation
+     */
+    public static class Validation {
+        /**
+         * maximum number of validated addresses kept, the cache is emptied above it
+         */
+        private int cacheMaxSize = 10_000;
+        /**
+         * number of couriers of a bulk send above which their addresses are validated in parallel
+         */
+        private int parallelThreshold = 256;
+
+        public int getCacheMaxSize() {
+            return cacheMaxSize;
+        }
+
+        public void setCacheMaxSize(int cacheMaxSize) {
+            this.cacheMaxSize = cacheMaxSize;
+        }
+
+        public int getParallelThreshold() {
+            return parallelThreshold;
+        }
+
+        public void setParallelThreshold(int parallelThreshold) {
+            this.parallelThreshold = parallelThreshold;
+        }
+    }
+
+    /**
+     * Settings of the split of large recipient lists
+     */
+    public static class Chunk {
+        /**
+         * send couriers with more recipients than {@code size} in several chunks from {@code sendCourier} and
+         * {@code sendCourierAsync}, {@code sendChunked} always does
+         */
+        private boolean enabled = false;
+        /**
+         * maximum number of recipients (to, cc and bcc) per SMTP transaction
+         */
+        private int size = 100;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public void setSize(int size) {
+            this.size = size;
+        }
+    }
+
+    /**
+     * Settings of {@code sendCourierAsync}
+     */
+    public static class Async {
+        /**
+         * time after which a courier not sent yet fails with a timeout, zero for none
+         */
+        private Duration timeout = Duration.ofMinutes(2);
+        /**
+         * size of the platform pool used when virtual threads are not available
+         */
+        private int platformThreads = 16;
+        /**
+         * maximum number of couriers of a bulk async send being rendered or on the wire at the same time
+         */
+        private int maxInFlight = 16;
+
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+
+        public int getPlatformThreads() {
+            return platformThreads;
+        }
+
+        public void setPlatformThreads(int platformThreads) {
+            this.platformThreads = platformThreads;
+        }
+
+        public int getMaxInFlight() {
+            return maxInFlight;
+        }
+
+        public void setMaxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+        }
+    }
+
+    /**
+     * Settings of the {@code ReactiveCourierService}, declared when Reactor is on the classpath
+     */
+    public static class Reactive {
+        /**
+         * false to not declare the reactive service
+         */
+        private boolean enabled = true;
+        /**
+         * maximum number of couriers of a Flux in progress at a time, and so requested from upstream;
+         * zero for the pool size (or courier.async.max-in-flight without pool)
+         */
+        private int concurrency = 0;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public void setConcurrency(int concurrency) {
+            this.concurrency = concurrency;
+        }
+    }
+
+    /**
+     * Settings of the routing of couriers over several SMTP relays, instead of the single {@code spring.mail} one
+     */
+    public static class Routing {
+        /**
+         * send through the relays below instead of {@code spring.mail.host}
+         */
+        private boolean enabled = false;
+        /**
+         * how a relay is picked among the eligible ones
+         */
+        private Strategy strategy = Strategy.LEAST_IN_FLIGHT;
+        /**
+         * interval between two connection checks of every relay, a relay failing its check is out of rotation until it passes one
+         */
+        private Duration healthCheckInterval = Duration.ofSeconds(30);
+        /**
+         * consecutive connection failures taking a relay out of rotation before its next check
+         */
+        private int failureThreshold = 3;
+        /**
+         * relays to send through
+         */
+        private List<Relay> relays = new ArrayList<>();
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Strategy getStrategy() {
+            return strategy;
+        }
+
+        public void setStrategy(Strategy strategy) {
+            this.strategy = strategy;
+        }
+
+        public Duration getHealthCheckInterval() {
+            return healthCheckInterval;
+        }
+
+        public void setHealthCheckInterval(Duration healthCheckInterval) {
+            this.healthCheckInterval = healthCheckInterval;
+        }
+
+        public int getFailureThreshold() {
+            return failureThreshold;
+        }
+
+        public void setFailureThreshold(int failureThreshold) {
+            this.failureThreshold = failureThreshold;
+        }
+
+        public List<Relay> getRelays() {
+            return relays;
+        }
+
+        public void setRelays(List<Relay> relays) {
+            this.relays = relays;
+        }
+
+        public enum Strategy {
+            /**
+             * the relay with the fewest couriers on the wire relative to its weight
+             */
+            LEAST_IN_FLIGHT,
+            /**
+             * each relay in turn, as often as its weight
+             */
+            WEIGHTED_ROUND_ROBIN
+        }
+
+        /**
+         * one SMTP relay, with its own connection pool
+         */
+        public static class Relay {
+            /**
+             * name of the relay in logs, the host when unset
+             */
+            private String name;
+            private String host;
+            private int port = 25;
+            private String username;
+            private String password;
+            /**
+             * additional JavaMail properties of the relay, as {@code spring.mail.properties}
+             */
+            private Map<String, String> properties = new HashMap<>();
+            /**
+             * share of the couriers sent through this relay
+             */
+            private int weight = 1;
+            /**
+             * when set, the relay only sends couriers from these sender domains
+             */
+            private List<String> senderDomains = new ArrayList<>();
+            /**
+             * when set, the relay only sends couriers of these priorities (1, 3 or 5, no priority being 3)
+             */
+            private List<Integer> priorities = new ArrayList<>();
+            /**
+             * rate limit of this relay instead of {@code courier.rate-limit}, with its own {@code enabled} flag
+             */
+            private RateLimit rateLimit;
+
+            public String getName() {
+                return name != null ? name : host;
+            }
+
+            public void setName(String name) {
+                this.name = name;
+            }
+
+            public String getHost() {
+                return host;
+            }
+
+            public void setHost(String host) {
+                this.host = host;
+            }
+
+            public int getPort() {
+                return port;
+            }
+
+            public void setPort(int port) {
+                this.port = port;
+            }
+
+            public String getUsername() {
+                return username;
+            }
+
+            public void setUsername(String username) {
+                this.username = username;
+            }
+
+            public String getPassword() {
+                return password;
+            }
+
+            public void setPassword(String password) {
+                this.password = password;
+            }
+
+            public Map<String, String> getProperties() {
+                return properties;
+            }
+
+            public void setProperties(Map<String, String> properties) {
+                this.properties = properties;
+            }
+
+            public int getWeight() {
+                return weight;
+            }
+
+            public void setWeight(int weight) {
+                this.weight = weight;
+            }
+
+            public List<String> getSenderDomains() {
+                return senderDomains;
+            }
+
+            public void setSenderDomains(List<String> senderDomains) {
+                this.senderDomains = senderDomains;
+            }
+
+            public List<Integer> getPriorities() {
+                return priorities;
+            }
+
+            public void setPriorities(List<Integer> priorities) {
+                this.priorities = priorities;
+            }
+
+            public RateLimit getRateLimit() {
+                return rateLimit;
+            }
+
+            public void setRateLimit(RateLimit rateLimit) {
+                this.rateLimit = rateLimit;
+            }
+        }
+    }
+
+    /**
+     * Settings of the suppression of couriers sent twice
+     */
+    public static class Dedup {
+        /**
+         * skip a courier identical to, or with the idempotency key of, a courier sent within the window
+         */
+        private boolean enabled = false;
+        /**
+         * time during which a courier is remembered
+         */
+        private Duration window = Duration.ofMinutes(10);
+        /**
+         * maximum number of couriers remembered by the in-memory store, the oldest are forgotten first
+         */
+        private int maxSize = 100_000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getWindow() {
+            return window;
+        }
+
+        public void setWindow(Duration window) {
+            this.window = window;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+    }
+
+    /**
+     * Settings of the grouping of couriers into digests by {@code coalesceCourier}
+     */
+    public static class Digest {
+        /**
+         * buffer the couriers given to coalesceCourier
+         */
+        private boolean enabled = false;
+        /**
+         * time a digest stays open after its first courier
+         */
+        private Duration window = Duration.ofSeconds(30);
+        /**
+         * number of couriers sending the digest before the end of the window
+         */
+        private int maxCount = 50;
+        /**
+         * template rendering a digest, with the variables of its couriers in {@code notifications}
+         */
+        private String template = "courier-digest";
+        /**
+         * subject of a digest, from the subject of its first courier and the number of couriers
+         */
+        private String subjectFormat = "%s (+%d more)";
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getWindow() {
+            return window;
+        }
+
+        public void setWindow(Duration window) {
+            this.window = window;
+        }
+
+        public int getMaxCount() {
+            return maxCount;
+        }
+
+        public void setMaxCount(int maxCount) {
+            this.maxCount = maxCount;
+        }
+
+        public String getTemplate() {
+            return template;
+        }
+
+        public void setTemplate(String template) {
+            this.template = template;
+        }
+
+        public String getSubjectFormat() {
+            return subjectFormat;
+        }
+
+        public void setSubjectFormat(String subjectFormat) {
+            this.subjectFormat = subjectFormat;
+        }
+    }
+
+    /**
+     * Settings of the images embedded in the HTML body and referenced by content id
+     */
+    public static class Inline {
+        /**
+         * load and encode every image once, instead of once per courier
+         */
+        private boolean enabled = true;
+        /**
+         * maximum number of encoded images kept, the least recently used are dropped first
+         */
+        private int cacheMaxSize = 64;
+        /**
+         * images available to every template: content id to location, embedded only in the couriers referencing {@code cid:<id>}
+         */
+        private Map<String, String> resources = new HashMap<>();
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getCacheMaxSize() {
+            return cacheMaxSize;
+        }
+
+        public void setCacheMaxSize(int cacheMaxSize) {
+            this.cacheMaxSize = cacheMaxSize;
+        }
+
+        public Map<String, String> getResources() {
+            return resources;
+        }
+
+        public void setResources(Map<String, String> resources) {
+            this.resources = resources;
+        }
+    }
+
+    /**
+     * Settings of the wire format writer
+     */
+    public static class Wire {
+        /**
+         * write the couriers straight to their wire format, instead of building and serializing a MIME message tree
+         */
+        private boolean enabled = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+
+    /**
+     * Settings of the DKIM signature of the couriers
+     */
+    public static class Dkim {
+        /**
+         * sign every courier with a DKIM-Signature header
+         */
+        private boolean enabled = false;
+        /**
+         * signing domain, the d= tag
+         */
+        private String domain;
+        /**
+         * selector of the public key in the DNS of the domain, the s= tag
+         */
+        private String selector;
+        /**
+         * location of the PEM RSA private key, PKCS#8 or PKCS#1, read once at startup
+         */
+        private String privateKey;
+        /**
+         * headers signed when present in the courier
+         */
+        private List<String> headers = new ArrayList<>(List.of("From", "Reply-To", "Subject", "Date", "To", "Cc",
+                "Message-ID", "MIME-Version", "Content-Type", "Content-Transfer-Encoding"));
+        /**
+         * number of body hashes kept, reused by the couriers with the same body and attachments
+         */
+        private int bodyHashCacheSize = 64;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getDomain() {
+            return domain;
+        }
+
+        public void setDomain(String domain) {
+            this.domain = domain;
+        }
+
+        public String getSelector() {
+            return selector;
+        }
+
+        public void setSelector(String selector) {
+            this.selector = selector;
+        }
+
+        public String getPrivateKey() {
+            return privateKey;
+        }
+
+        public void setPrivateKey(String privateKey) {
+            this.privateKey = privateKey;
+        }
+
+        public List<String> getHeaders() {
+            return headers;
+        }
+
+        public void setHeaders(List<String> headers) {
+            this.headers = headers;
+        }
+
+        public int getBodyHashCacheSize() {
+            return bodyHashCacheSize;
+        }
+
+        public void setBodyHashCacheSize(int bodyHashCacheSize) {
+            this.bodyHashCacheSize = bodyHashCacheSize;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package dev.kkm.dedup;
+
+import dev.kkm.config.CourierProperties;
+import dev.kkm.exception.CourierException;
+import dev.kkm.model.CourierDetail;
+import jakarta.activation.DataSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+/**
+ * @implNote suppression of couriers sent twice within {@code courier.dedup.window}.
+ * A courier is identified by its idempotency key when given, otherwise by a SHA-256 of its content: sender,
+ * recipients, copies, reply-to, subject, organization, priority, template and variables (by their {@code toString})
+ * or body, and the digest of every attachment. The key is checked before any rendering,
+ * the digest of an attachment shared by several couriers is computed once.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public class CourierDeduplicator {
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final DeduplicationStore store;
+    private final CourierProperties.Dedup config;
+    private final Map<DataSource, byte[]> attachmentDigests = Collections.synchronizedMap(new WeakHashMap<>());
+
+    public CourierDeduplicator(DeduplicationStore store, CourierProperties.Dedup config) {
+        this.store = store;
+        this.config = config;
+    }
+
+    /**
+     * Records the courier as being sent
+     * @param courierDetail courier about to be sent
+     * @return the key of the courier, to {@link #release(String)} if it fails; null when it is a duplicate
+     */
+    public String claim(CourierDetail courierDetail) {
+        String key = keyOf(courierDetail);
+        return store.putIfAbsent(key, config.getWindow()) ? key : null;
+    }
+
+    /**
+     * Forgets a courier that could not be sent, so that sending it again is not skipped
+     * @param key key returned by {@link #claim(CourierDetail)}
+     */
+    public void release(String key) {
+        if (key != null) {
+            store.remove(key);
+        }
+    }
+
+    /**
+     * @param courierDetail courier to identify
+     * @return the idempotency key of the courier, or the hash of its content
+     */
+    public String keyOf(CourierDetail courierDetail) {
+        if (courierDetail.getIdempotencyKey() != null) {
+            return "key:" + courierDetail.getIdempotencyKey();
+        }
+        MessageDigest digest = sha256();
+        update(digest, courierDetail.getSender());
+        update(digest, courierDetail.getRecipients());
+        update(digest, courierDetail.getCc());
+        update(digest, courierDetail.getBcc());
+        update(digest, courierDetail.getReplyTo());
+        update(digest, courierDetail.getSubject());
+        update(digest, courierDetail.getOrganizationName());
+        update(digest, courierDetail.getPriority() != null ? courierDetail.getPriority().toString() : null);
+        update(digest, courierDetail.getTemplateName());
+        update(digest, courierDetail.getBody());
+        for (Map.Entry<String, Object> variable : new TreeMap<>(courierDetail.getVariables()).entrySet()) {
+            update(digest, variable.getKey());
+            update(digest, String.valueOf(variable.getValue()));
+        }
+        for (Map.Entry<String, DataSource> attachment : new TreeMap<>(courierDetail.getAttachments()).entrySet()) {
+            update(digest, attachment.getKey());
+            byte[] attachmentDigest = attachmentDigests.get(attachment.getValue());
+            if (attachmentDigest == null) {
+                // hashed outside of the map lock, a concurrent first use only hashes twice
+                attachmentDigest = digestOf(attachment.getValue());
+                attachmentDigests.put(attachment.getValue(), attachmentDigest);
+            }
+            digest.update(attachmentDigest);
+        }
+        return "sha256:" + HEX.formatHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, List<String> values) {
+        List<String> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        update(digest, String.valueOf(sorted.size()));
+        sorted.forEach(value -> update(digest, value));
+    }
+
+    /**
+     * length-prefixed, so that moving characters from one field to the next changes the hash
+     */
+    private static void update(MessageDigest digest, String value) {
+        if (value == null) {
+            digest.update((byte) 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update((byte) 1);
+        digest.update(String.valueOf(bytes.length).getBytes(StandardCharsets.US_ASCII));
+        digest.update((byte) ':');
+        digest.update(bytes);
+    }
+
+    private static byte[] digestOf(DataSource dataSource) {
+        MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(dataSource.getInputStream(), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException ioException) {
+            throw new CourierException("attachment " + dataSource.getName() + " could not be read", 901);
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+            throw new IllegalStateException(noSuchAlgorithmException);
+        }
+    }
+}
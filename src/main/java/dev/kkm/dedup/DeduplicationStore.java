@@ -0,0 +1,26 @@
+package dev.kkm.dedup;
+
+import java.time.Duration;
+
+/**
+ * @implNote storage of the keys of the couriers recently sent, used by the {@link CourierDeduplicator}.
+ * The starter keeps them in memory ({@link InMemoryDeduplicationStore}); declare a bean of this type to share them
+ * between instances, e.g. {@code SET key 1 NX PX window} on Redis or an insert on a unique column.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public interface DeduplicationStore {
+
+    /**
+     * Records the key unless it is already recorded and not expired, atomically
+     * @param key key of the courier
+     * @param window time after which the key is forgotten
+     * @return true when the key was recorded, false when it already was: the courier is a duplicate
+     */
+    boolean putIfAbsent(String key, Duration window);
+
+    /**
+     * Forgets the key, so that a courier that could not be sent can be sent again
+     * @param key key of the courier
+     */
+    void remove(String key);
+}
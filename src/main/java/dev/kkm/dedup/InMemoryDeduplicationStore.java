@@ -0,0 +1,62 @@
+package dev.kkm.dedup;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @implNote keys in insertion order with their expiry: expired keys are dropped from the head on every insert,
+ * and the oldest key is forgotten first when {@code maxSize} keys are held
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public class InMemoryDeduplicationStore implements DeduplicationStore {
+
+    private final int maxSize;
+    private final LinkedHashMap<String, Long> expiries = new LinkedHashMap<>();
+
+    /**
+     * @param maxSize maximum number of keys held
+     */
+    public InMemoryDeduplicationStore(int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    @Override
+    public synchronized boolean putIfAbsent(String key, Duration window) {
+        long now = System.nanoTime();
+        evictExpired(now);
+        Long expiry = expiries.get(key);
+        if (expiry != null && expiry - now > 0) {
+            return false;
+        }
+        // re-inserted at the tail, so that the head stays the first to expire
+        expiries.remove(key);
+        expiries.put(key, now + window.toNanos());
+        if (expiries.size() > maxSize) {
+            Iterator<String> oldest = expiries.keySet().iterator();
+            oldest.next();
+            oldest.remove();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        expiries.remove(key);
+    }
+
+    /**
+     * @return number of keys held, expired ones included until the next insert
+     */
+    public synchronized int size() {
+        return expiries.size();
+    }
+
+    private void evictExpired(long now) {
+        Iterator<Map.Entry<String, Long>> entries = expiries.entrySet().iterator();
+        while (entries.hasNext() && entries.next().getValue() - now <= 0) {
+            entries.remove();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package dev.kkm.digest;
+
+import dev.kkm.config.CourierProperties;
+import dev.kkm.model.CourierDetail;
+import dev.kkm.service.CourierExecutors;
+import jakarta.activation.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * @implNote groups the couriers to the same recipients with the same coalescing key into one digest,
+ * provided they share their sender, reply-to and organization too: the digest takes them from its first courier.
+ * A digest opens with its first courier and is sent {@code courier.digest.window} later, or as soon as it holds
+ * {@code max-count} couriers. A digest of a single courier is sent as the courier itself; otherwise it is rendered once
+ * with the {@code courier.digest.template}, which gets the variables of every courier in {@code notifications}
+ * (with its {@code subject}, and its {@code body} when it has no template).
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public class DigestCoalescer implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(DigestCoalescer.class);
+
+    private final CourierProperties.Digest config;
+    private final Map<DigestKey, Digest> open = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer;
+
+    public DigestCoalescer(CourierProperties.Digest config) {
+        this.config = config;
+        this.timer = Executors.newSingleThreadScheduledExecutor(CourierExecutors.daemonThreadFactory("courier-digest"));
+    }
+
+    /**
+     * Adds the courier to the open digest of its recipients and coalescing key, opening one if needed
+     * @param courierDetail courier to group
+     * @param sender sends the digest once closed
+     * @return completed once the digest holding the courier is sent
+     */
+    public CompletableFuture<Void> add(CourierDetail courierDetail, Function<CourierDetail, CompletableFuture<Void>> sender) {
+        DigestKey key = DigestKey.of(courierDetail);
+        while (true) {
+            Digest digest = open.computeIfAbsent(key, digestKey -> open(digestKey, sender));
+            synchronized (digest) {
+                if (digest.closed) {
+                    // closed between the lookup and the lock, a new digest is opened
+                    continue;
+                }
+                digest.couriers.add(courierDetail);
+                if (digest.couriers.size() >= Math.max(1, config.getMaxCount())) {
+                    flush(key, digest);
+                }
+                return digest.sent;
+            }
+        }
+    }
+
+    /**
+     * Sends every open digest now
+     */
+    public void flush() {
+        open.forEach(this::flush);
+    }
+
+    /**
+     * @return number of digests waiting for the end of their window
+     */
+    public int getOpenCount() {
+        return open.size();
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        flush();
+    }
+
+    private Digest open(DigestKey key, Function<CourierDetail, CompletableFuture<Void>> sender) {
+        Digest digest = new Digest(sender);
+        timer.schedule(() -> flush(key, digest), config.getWindow().toMillis(), TimeUnit.MILLISECONDS);
+        return digest;
+    }
+
+    private void flush(DigestKey key, Digest digest) {
+        List<CourierDetail> couriers;
+        synchronized (digest) {
+            if (digest.closed) {
+                return;
+            }
+            digest.closed = true;
+            open.remove(key, digest);
+            couriers = digest.couriers;
+        }
+        try {
+            CourierDetail courier = couriers.size() == 1 ? couriers.get(0) : merge(couriers);
+            digest.sender.apply(courier).whenComplete((sent, failure) -> {
+                if (failure != null) {
+                    digest.sent.completeExceptionally(failure);
+                } else {
+                    digest.sent.complete(null);
+                }
+            });
+            if (couriers.size() > 1) {
+                log.info("... digest of {} couriers sent ...", couriers.size());
+            }
+        } catch (RuntimeException runtimeException) {
+            digest.sent.completeExceptionally(runtimeException);
+        }
+    }
+
+    private CourierDetail merge(List<CourierDetail> couriers) {
+        CourierDetail first = couriers.get(0);
+        List<Map<String, Object>> notifications = new ArrayList<>(couriers.size());
+        Map<String, DataSource> attachments = new LinkedHashMap<>();
+        Integer priority = null;
+        for (CourierDetail courier : couriers) {
+            Map<String, Object> notification = new HashMap<>(courier.getVariables());
+            notification.putIfAbsent("subject", courier.getSubject());
+            if (courier.getBody() != null) {
+                notification.putIfAbsent("body", courier.getBody());
+            }
+            notifications.add(notification);
+            courier.getAttachments().forEach(attachments::putIfAbsent);
+            if (courier.getPriority() != null && (priority == null || courier.getPriority() < priority)) {
+                priority = courier.getPriority();
+            }
+        }
+
+        CourierDetail.Builder builder = CourierDetail.builder()
+                .withSender(first.getSender())
+                .addRecipients(first.getRecipients())
+                .addCcs(first.getCc())
+                .addBccs(first.getBcc())
+                .withSubject(String.format(config.getSubjectFormat(), first.getSubject(), couriers.size() - 1))
+                .withOrganizationName(first.getOrganizationName())
+                .withTemplate(config.getTemplate())
+                .addVariable("notifications", notifications)
+                .addAttachments(attachments);
+        if (first.getReplyTo() != null) {
+            builder.withReplyTo(first.getReplyTo());
+        }
+        if (priority != null) {
+            builder.withPriority(priority);
+        }
+        return builder.build();
+    }
+
+    /**
+     * couriers grouped together: same sender, recipients, reply-to, organization and coalescing key.
+     * The recipient lists are compared as sets, in any order, as the digest is sent to those of its first courier.
+     */
+    private record DigestKey(String sender, Set<String> recipients, Set<String> cc, Set<String> bcc, String replyTo,
+                             String organizationName, String coalescingKey) {
+        private static DigestKey of(CourierDetail courierDetail) {
+            return new DigestKey(courierDetail.getSender(), Set.copyOf(courierDetail.getRecipients()), Set.copyOf(courierDetail.getCc()),
+                    Set.copyOf(courierDetail.getBcc()), courierDetail.getReplyTo(), courierDetail.getOrganizationName(),
+                    courierDetail.getCoalescingKey());
+        }
+    }
+
+    private static final class Digest {
+        private final Function<CourierDetail, CompletableFuture<Void>> sender;
+        private final List<CourierDetail> couriers = new ArrayList<>();
+        private final CompletableFuture<Void> sent = new CompletableFuture<>();
+        private boolean closed;
+
+        private Digest(Function<CourierDetail, CompletableFuture<Void>> sender) {
+            this.sender = sender;
+        }
+    }
+}
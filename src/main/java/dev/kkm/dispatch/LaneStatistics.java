@@ -0,0 +1,13 @@
+package dev.kkm.dispatch;
+
+/**
+ * Snapshot of one priority lane of the {@link PriorityDispatcher}
+ * @param priority courier priority served by the lane (1 high, 3 normal, 5 low)
+ * @param depth number of couriers waiting in the lane
+ * @param dispatched number of couriers taken from the lane since startup
+ * @param averageWaitMillis average time spent waiting in the lane
+ * @param maxWaitMillis longest time spent waiting in the lane
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public record LaneStatistics(int priority, int depth, long dispatched, double averageWaitMillis, long maxWaitMillis) {
+}
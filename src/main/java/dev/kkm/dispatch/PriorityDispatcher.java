@@ -0,0 +1,239 @@
+package dev.kkm.dispatch;
+
+import dev.kkm.config.CourierProperties;
+import dev.kkm.service.CourierExecutors;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * @implNote asynchronous dispatcher with one queue per courier priority.
+ * Workers pick the next lane by smooth weighted round-robin over the non-empty lanes: a lane alone is served
+ * immediately, and when every lane is backlogged each gets a share of the workers proportional to its weight,
+ * so transactional couriers overtake a campaign while the campaign still progresses.
+ * Lanes are bounded, a task submitted to a full lane is rejected. On close no task is accepted any more, the workers run
+ * out the queued tasks within the shutdown timeout and the tasks still queued afterwards are failed; a running task
+ * is never interrupted, so an SMTP conversation in progress completes.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public class PriorityDispatcher implements AutoCloseable {
+
+    private static final int NORMAL = 3;
+
+    private final Lane[] lanes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final List<Thread> workers = new ArrayList<>();
+    private final int laneCapacity;
+    private final Duration shutdownTimeout;
+    private boolean closed;
+
+    public PriorityDispatcher(CourierProperties.Priority config) {
+        this.lanes = new Lane[]{
+                new Lane(1, config.getHighWeight()),
+                new Lane(3, config.getNormalWeight()),
+                new Lane(5, config.getLowWeight())
+        };
+        this.laneCapacity = Math.max(1, config.getLaneCapacity());
+        this.shutdownTimeout = config.getShutdownTimeout();
+        ThreadFactory threadFactory = CourierExecutors.daemonThreadFactory("courier-priority");
+        for (int i = 0; i < Math.max(1, config.getWorkers()); i++) {
+            Thread worker = threadFactory.newThread(this::workLoop);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Queues a task in the lane of the priority
+     * @param priority courier priority, null for normal
+     * @param task task to run
+     * @return completed with the result of the task, or failed with a {@link RejectedExecutionException}
+     * when the lane is full or the dispatcher closed
+     */
+    public <T> CompletableFuture<T> submit(Integer priority, Supplier<T> task) {
+        Task<T> queued = new Task<>(task);
+        Lane lane = lane(priority);
+        lock.lock();
+        try {
+            if (closed) {
+                return CompletableFuture.failedFuture(new RejectedExecutionException("priority dispatcher is closed"));
+            }
+            if (lane.queue.size() >= laneCapacity) {
+                return CompletableFuture.failedFuture(new RejectedExecutionException("priority lane " + lane.priority + " is full"));
+            }
+            lane.queue.addLast(queued);
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+        return queued.future;
+    }
+
+    /**
+     * @return depth and wait time of every lane, highest priority first
+     */
+    public List<LaneStatistics> getStatistics() {
+        List<LaneStatistics> statistics = new ArrayList<>(lanes.length);
+        for (Lane lane : lanes) {
+            int depth;
+            lock.lock();
+            try {
+                depth = lane.queue.size();
+            } finally {
+                lock.unlock();
+            }
+            long dispatched = lane.dispatched.sum();
+            double averageWait = dispatched == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(lane.waitNanos.sum()) / 1000.0 / dispatched;
+            statistics.add(new LaneStatistics(lane.priority, depth, dispatched, averageWait,
+                    TimeUnit.NANOSECONDS.toMillis(lane.maxWaitNanos.get())));
+        }
+        return statistics;
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        long deadline = System.nanoTime() + shutdownTimeout.toNanos();
+        try {
+            for (Thread worker : workers) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    break;
+                }
+                worker.join(remaining);
+            }
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            for (Lane lane : lanes) {
+                Task<?> task;
+                while ((task = lane.queue.pollFirst()) != null) {
+                    task.future.completeExceptionally(new RejectedExecutionException("priority dispatcher closed before the task ran"));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Lane lane(Integer priority) {
+        int value = priority != null ? priority : NORMAL;
+        for (Lane lane : lanes) {
+            if (lane.priority == value) {
+                return lane;
+            }
+        }
+        return lanes[1];
+    }
+
+    private void workLoop() {
+        while (true) {
+            Task<?> task;
+            try {
+                task = next();
+            } catch (InterruptedException interruptedException) {
+                return;
+            }
+            if (task == null) {
+                return;
+            }
+            task.run();
+        }
+    }
+
+    /**
+     * @return the next task, null once the dispatcher is closed and every lane empty
+     */
+    private Task<?> next() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                Lane selected = null;
+                int totalWeight = 0;
+                for (Lane lane : lanes) {
+                    if (!lane.queue.isEmpty()) {
+                        lane.currentWeight += lane.weight;
+                        totalWeight += lane.weight;
+                        if (selected == null || lane.currentWeight > selected.currentWeight) {
+                            selected = lane;
+                        }
+                    }
+                }
+                if (selected != null) {
+                    selected.currentWeight -= totalWeight;
+                    Task<?> task = selected.queue.pollFirst();
+                    selected.recordWait(System.nanoTime() - task.enqueuedAt);
+                    return task;
+                }
+                if (closed) {
+                    return null;
+                }
+                available.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Lane {
+        private final int priority;
+        private final int weight;
+        private final ArrayDeque<Task<?>> queue = new ArrayDeque<>();
+        private final LongAdder dispatched = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+        private int currentWeight;
+
+        private Lane(int priority, int weight) {
+            this.priority = priority;
+            this.weight = Math.max(1, weight);
+        }
+
+        private void recordWait(long nanos) {
+            dispatched.increment();
+            waitNanos.add(nanos);
+            maxWaitNanos.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    private static final class Task<T> {
+        private final Supplier<T> supplier;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final long enqueuedAt = System.nanoTime();
+
+        private Task(Supplier<T> supplier) {
+            this.supplier = supplier;
+        }
+
+        private void run() {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(supplier.get());
+            } catch (RuntimeException runtimeException) {
+                future.completeExceptionally(runtimeException);
+            }
+        }
+    }
+}
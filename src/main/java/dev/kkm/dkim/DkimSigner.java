@@ -0,0 +1,332 @@
+package dev.kkm.dkim;
+
+import dev.kkm.config.CourierProperties;
+import dev.kkm.transport.EnvelopeMessage;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.Signature;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @implNote DKIM signer (RFC 6376): {@code rsa-sha256} with the {@code relaxed/relaxed} canonicalization.
+ * The private key is read and its provider looked up once; each courier is signed by a {@link Signature} of its own
+ * initialized with them, so couriers are signed in parallel by the threads building them, virtual threads included,
+ * without a signature kept per thread.
+ * The signed message keeps the envelope of the original one, blind copies included: the outbox stores it with the message.
+ * The body hash of a courier is looked up by the SHA-256 of its raw bytes first: the couriers of a batch with the same
+ * body and attachments (or the chunks of one courier) are canonicalized and hashed once. Two different bodies never
+ * share a body hash, the lookup key being as collision resistant as the body hash itself.
+ * Bodies are canonicalized as the SMTP transport sends them: a lone CR or LF is a line break.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public class DkimSigner {
+
+    private static final String[] TRANSPORT_IGNORED_HEADERS = {"Bcc", "Content-Length"};
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final int SIGNATURE_LINE_LENGTH = 72;
+    private static final String ALGORITHM = "SHA256withRSA";
+
+    private final CourierProperties.Dkim config;
+    private final PrivateKey privateKey;
+    private final Provider provider;
+    private final Map<String, String> bodyHashes;
+    private final AtomicLong hashedBodies = new AtomicLong();
+
+    /**
+     * @param config DKIM settings
+     * @param resourceLoader loader of the private key
+     * @throws IllegalStateException when the private key could not be read
+     */
+    public DkimSigner(CourierProperties.Dkim config, ResourceLoader resourceLoader) {
+        this.config = config;
+        this.privateKey = readPrivateKey(resourceLoader.getResource(config.getPrivateKey()));
+        try {
+            this.provider = newSignature().getProvider();
+        } catch (GeneralSecurityException securityException) {
+            throw new IllegalStateException("DKIM signature could not be initialized", securityException);
+        }
+        int maxSize = Math.max(1, config.getBodyHashCacheSize());
+        this.bodyHashes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param message message ready to be sent
+     * @param session session of the signed message
+     * @return the message with its DKIM-Signature header, sent to the same recipients
+     */
+    public MimeMessage sign(MimeMessage message, Session session) throws MessagingException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            message.writeTo(out, TRANSPORT_IGNORED_HEADERS);
+        } catch (IOException ioException) {
+            throw new MessagingException("courier could not be serialized to be signed", ioException);
+        }
+        return new EnvelopeMessage(session, sign(out.toByteArray()), message.getAllRecipients());
+    }
+
+    /**
+     * @param wire message as sent on the wire
+     * @return the message preceded by its DKIM-Signature header
+     */
+    public byte[] sign(byte[] wire) throws MessagingException {
+        int bodyStart = bodyStart(wire);
+        List<String> headers = headers(wire, bodyStart);
+        String bodyHash = bodyHash(wire, bodyStart);
+
+        StringBuilder signed = new StringBuilder();
+        StringBuilder headerData = new StringBuilder();
+        for (String name : config.getHeaders()) {
+            String header = lastHeader(headers, name);
+            if (header != null) {
+                signed.append(signed.length() == 0 ? "" : ":").append(name.toLowerCase(Locale.ROOT));
+                headerData.append(relaxedHeader(header)).append("\r\n");
+            }
+        }
+        String unsigned = "DKIM-Signature: v=1; a=rsa-sha256; c=relaxed/relaxed; d=" + config.getDomain()
+                + "; s=" + config.getSelector() + "; t=" + System.currentTimeMillis() / 1000 + ";\r\n\th=" + signed
+                + ";\r\n\tbh=" + bodyHash + ";\r\n\tb=";
+        headerData.append(relaxedHeader(unsigned));
+
+        String signature;
+        try {
+            Signature signer = newSignature();
+            signer.update(headerData.toString().getBytes(StandardCharsets.US_ASCII));
+            signature = Base64.getEncoder().encodeToString(signer.sign());
+        } catch (GeneralSecurityException securityException) {
+            throw new MessagingException("courier could not be signed", securityException);
+        }
+
+        StringBuilder header = new StringBuilder(unsigned);
+        for (int i = 0; i < signature.length(); i += SIGNATURE_LINE_LENGTH) {
+            header.append(i == 0 ? "" : "\r\n\t ").append(signature, i, Math.min(signature.length(), i + SIGNATURE_LINE_LENGTH));
+        }
+        header.append("\r\n");
+        byte[] signatureHeader = header.toString().getBytes(StandardCharsets.US_ASCII);
+        byte[] result = new byte[signatureHeader.length + wire.length];
+        System.arraycopy(signatureHeader, 0, result, 0, signatureHeader.length);
+        System.arraycopy(wire, 0, result, signatureHeader.length, wire.length);
+        return result;
+    }
+
+    /**
+     * @return number of bodies hashed, the others reused the hash of an identical body
+     */
+    public long getHashedBodies() {
+        return hashedBodies.get();
+    }
+
+    private String bodyHash(byte[] wire, int bodyStart) {
+        // the raw bytes are digested in one pass, the canonicalization line by line is what is saved
+        MessageDigest rawDigest = sha256();
+        rawDigest.update(wire, bodyStart, wire.length - bodyStart);
+        String key = Base64.getEncoder().encodeToString(rawDigest.digest());
+        synchronized (bodyHashes) {
+            String hash = bodyHashes.get(key);
+            if (hash != null) {
+                return hash;
+            }
+        }
+        // hashed outside of the lock, a body hashed concurrently by two threads is only hashed twice
+        String hash = Base64.getEncoder().encodeToString(relaxedBodyDigest(wire, bodyStart));
+        hashedBodies.incrementAndGet();
+        synchronized (bodyHashes) {
+            bodyHashes.put(key, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * SHA-256 of the body canonicalized line by line: whitespace runs reduced to one space, trailing whitespace
+     * and trailing empty lines removed, every line ended by CRLF
+     */
+    private static byte[] relaxedBodyDigest(byte[] wire, int bodyStart) {
+        MessageDigest digest = sha256();
+        byte[] line = new byte[256];
+        int lineLength = 0;
+        int emptyLines = 0;
+        boolean space = false;
+        for (int i = bodyStart; i <= wire.length; i++) {
+            byte b = i < wire.length ? wire[i] : (byte) '\n';
+            boolean end = i == wire.length;
+            if (b == '\r' || b == '\n') {
+                if (b == '\r' && i + 1 < wire.length && wire[i + 1] == '\n') {
+                    i++;
+                }
+                if (end && lineLength == 0) {
+                    break;
+                }
+                if (lineLength == 0) {
+                    emptyLines++;
+                } else {
+                    for (; emptyLines > 0; emptyLines--) {
+                        digest.update(CRLF);
+                    }
+                    digest.update(line, 0, lineLength);
+                    digest.update(CRLF);
+                }
+                lineLength = 0;
+                space = false;
+            } else if (b == ' ' || b == '\t') {
+                space = true;
+            } else {
+                if (lineLength + 2 > line.length) {
+                    line = Arrays.copyOf(line, line.length * 2);
+                }
+                if (space) {
+                    line[lineLength++] = ' ';
+                }
+                space = false;
+                line[lineLength++] = b;
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * @return the header unfolded, its name in lower case and its whitespace runs reduced to one space
+     */
+    static String relaxedHeader(String header) {
+        int colon = header.indexOf(':');
+        String name = header.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+        String value = header.substring(colon + 1).replace("\r\n", "").replace("\n", "").replaceAll("[ \\t]+", " ").trim();
+        return name + ":" + value;
+    }
+
+    private static String lastHeader(List<String> headers, String name) {
+        for (int i = headers.size() - 1; i >= 0; i--) {
+            String header = headers.get(i);
+            if (header.length() > name.length() && header.charAt(name.length()) == ':' && header.regionMatches(true, 0, name, 0, name.length())) {
+                return header;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the header fields, each with its folded lines
+     */
+    private static List<String> headers(byte[] wire, int bodyStart) {
+        String section = new String(wire, 0, bodyStart, StandardCharsets.ISO_8859_1);
+        List<String> headers = new ArrayList<>();
+        for (String line : section.split("\r?\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            if ((line.charAt(0) == ' ' || line.charAt(0) == '\t') && !headers.isEmpty()) {
+                headers.set(headers.size() - 1, headers.get(headers.size() - 1) + "\r\n" + line);
+            } else {
+                headers.add(line);
+            }
+        }
+        return headers;
+    }
+
+    /**
+     * @return the offset of the body, after the empty line ending the headers
+     */
+    private static int bodyStart(byte[] wire) throws MessagingException {
+        for (int i = 0; i + 1 < wire.length; i++) {
+            if (wire[i] == '\n' && wire[i + 1] == '\n') {
+                return i + 2;
+            }
+            if (wire[i] == '\n' && wire[i + 1] == '\r' && i + 2 < wire.length && wire[i + 2] == '\n') {
+                return i + 3;
+            }
+        }
+        throw new MessagingException("courier has no body to sign");
+    }
+
+    /**
+     * @return a signature initialized with the private key, from the provider found for it at startup
+     */
+    private Signature newSignature() throws GeneralSecurityException {
+        Signature signature = provider != null ? Signature.getInstance(ALGORITHM, provider) : Signature.getInstance(ALGORITHM);
+        signature.initSign(privateKey);
+        return signature;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (GeneralSecurityException securityException) {
+            throw new IllegalStateException(securityException);
+        }
+    }
+
+    /**
+     * Reads a PEM RSA private key, PKCS#8 ({@code BEGIN PRIVATE KEY}) or PKCS#1 ({@code BEGIN RSA PRIVATE KEY})
+     */
+    private static PrivateKey readPrivateKey(Resource resource) {
+        String pem;
+        try (InputStream in = resource.getInputStream()) {
+            pem = new String(in.readAllBytes(), StandardCharsets.US_ASCII);
+        } catch (IOException ioException) {
+            throw new IllegalStateException("DKIM private key " + resource + " could not be read", ioException);
+        }
+        boolean pkcs1 = pem.contains("BEGIN RSA PRIVATE KEY");
+        String base64 = pem.replaceAll("-----[A-Z ]+-----", "").replaceAll("\\s", "");
+        try {
+            byte[] der = Base64.getDecoder().decode(base64);
+            return KeyFactory.getInstance("RSA").generatePrivate(new PKCS8EncodedKeySpec(pkcs1 ? pkcs8Of(der) : der));
+        } catch (IllegalArgumentException | GeneralSecurityException exception) {
+            throw new IllegalStateException("DKIM private key " + resource + " is not a PEM RSA private key", exception);
+        }
+    }
+
+    /**
+     * @return the PKCS#1 key wrapped in a PKCS#8 structure: version 0, rsaEncryption algorithm, key as octet string
+     */
+    private static byte[] pkcs8Of(byte[] pkcs1) {
+        byte[] versionAndAlgorithm = {0x02, 0x01, 0x00, 0x30, 0x0d, 0x06, 0x09, 0x2a, (byte) 0x86, 0x48, (byte) 0x86,
+                (byte) 0xf7, 0x0d, 0x01, 0x01, 0x01, 0x05, 0x00};
+        ByteArrayOutputStream octetString = new ByteArrayOutputStream();
+        derElement(octetString, 0x04, pkcs1);
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        content.writeBytes(versionAndAlgorithm);
+        content.writeBytes(octetString.toByteArray());
+        ByteArrayOutputStream sequence = new ByteArrayOutputStream();
+        derElement(sequence, 0x30, content.toByteArray());
+        return sequence.toByteArray();
+    }
+
+    private static void derElement(ByteArrayOutputStream out, int tag, byte[] value) {
+        out.write(tag);
+        int length = value.length;
+        if (length < 0x80) {
+            out.write(length);
+        } else {
+            int bytes = (Integer.SIZE - Integer.numberOfLeadingZeros(length) + 7) / 8;
+            out.write(0x80 | bytes);
+            for (int i = bytes - 1; i >= 0; i--) {
+                out.write(length >>> (i * 8));
+            }
+        }
+        out.writeBytes(value);
+    }
+}
@@ -0,0 +1,34 @@
+package dev.kkm.exception;
+
+import dev.kkm.model.ChunkReport;
+
+/**
+ * Thrown when a courier sent in chunks was not accepted by every chunk: the recipients of the accepted chunks
+ * did get the courier, the report tells them apart from the others
+ * @author  maximilien kengne kongne
+ * @version  1.0.0
+ */
+public class ChunkedCourierException extends CourierException {
+    private final transient ChunkReport report;
+
+    public ChunkedCourierException(ChunkReport report) {
+        super("courier not sent to " + report.getRejectedRecipients().size() + " of its "
+                + (report.getAcceptedRecipients().size() + report.getRejectedRecipients().size()) + " recipients",
+                report.getFailures().get(0).getError().getStatus());
+        this.report = report;
+    }
+
+    /**
+     * @return outcome of every chunk and recipient
+     */
+    public ChunkReport getReport() {
+        return report;
+    }
+
+    /**
+     * @return true when some recipients got the courier, sending it again would deliver it to them twice
+     */
+    public boolean isPartiallySent() {
+        return !report.getAcceptedRecipients().isEmpty();
+    }
+}
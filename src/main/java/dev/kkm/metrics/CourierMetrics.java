@@ -0,0 +1,56 @@
+package dev.kkm.metrics;
+
+import jakarta.mail.internet.MimeMessage;
+
+/**
+ * @implNote measures of the send pipeline. The engines always report to an instance, {@link #NONE} when metrics
+ * are disabled: its methods do nothing, so the disabled path costs a {@code System.nanoTime()} and no allocation.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public interface CourierMetrics {
+
+    /**
+     * metrics disabled
+     */
+    CourierMetrics NONE = new CourierMetrics() {
+    };
+
+    /**
+     * stages of the send pipeline
+     */
+    enum Stage {
+        /** validation and parsing of the addresses */
+        VALIDATION,
+        /** rendering of the template */
+        TEMPLATE,
+        /** building of the MIME message, template and attachments included */
+        MIME,
+        /** DKIM signature of the message */
+        SIGNATURE,
+        /** base64 encoding of an attachment */
+        ATTACHMENT,
+        /** borrowing or opening of an SMTP connection */
+        CONNECTION,
+        /** transmission of the message to the relay */
+        TRANSMISSION
+    }
+
+    /**
+     * @param stage measured stage
+     * @param nanos duration of the stage
+     */
+    default void record(Stage stage, long nanos) {
+    }
+
+    /**
+     * @param message message accepted by the relay
+     */
+    default void sent(MimeMessage message) {
+    }
+
+    /**
+     * @param status status code of the {@code CourierException} thrown
+     */
+    default void failed(int status) {
+    }
+}
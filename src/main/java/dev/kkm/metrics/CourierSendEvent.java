@@ -0,0 +1,98 @@
+package dev.kkm.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * @implNote Flight Recorder event of one {@code sendCourier}, from the address validation to the reply of the relay.
+ * Its stages are {@link CourierStageEvent}s of the same thread. When no recording enables it the event is never begun
+ * nor registered. The message is never serialized for the event: the transport names the relay and the size of the
+ * bytes it already produced on the event of the sending thread, see {@link #relay(String)} and {@link #messageSize(long)}.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+@Name("dev.kkm.courier.Send")
+@Label("Courier Send")
+@Category("Courier")
+@Description("A courier sent by sendCourier")
+@StackTrace(false)
+public class CourierSendEvent extends Event {
+
+    private static final ThreadLocal<CourierSendEvent> CURRENT = new ThreadLocal<>();
+
+    @Label("Template")
+    private String templateName;
+
+    @Label("Recipients")
+    @Description("Recipients of the courier, cc and bcc included")
+    private int recipientCount;
+
+    @Label("Message Size")
+    @DataAmount
+    private long messageSize = -1;
+
+    @Label("Relay")
+    private String relay;
+
+    @Label("Status")
+    @Description("0 once accepted by the relay, the status of the CourierException otherwise")
+    private int status;
+
+    /**
+     * Begins the event of the courier sent by the calling thread, when a recording enables it
+     * @param templateName template of the courier, null for a plain text courier
+     * @param recipientCount recipients of the courier, cc and bcc included
+     * @return the event, to finish once the courier is sent or failed
+     */
+    public static CourierSendEvent start(String templateName, int recipientCount) {
+        CourierSendEvent event = new CourierSendEvent();
+        if (event.isEnabled()) {
+            event.templateName = templateName;
+            event.recipientCount = recipientCount;
+            CURRENT.set(event);
+            event.begin();
+        }
+        return event;
+    }
+
+    /**
+     * Names the relay of the courier being sent by the calling thread, if its event is recorded
+     * @param relay name of the relay
+     */
+    public static void relay(String relay) {
+        CourierSendEvent event = CURRENT.get();
+        if (event != null) {
+            event.relay = relay;
+        }
+    }
+
+    /**
+     * Records the size on the wire of the courier being sent by the calling thread, if its event is recorded
+     * @param messageSize size in bytes of the message, as serialized by the transport
+     */
+    public static void messageSize(long messageSize) {
+        CourierSendEvent event = CURRENT.get();
+        if (event != null) {
+            event.messageSize = messageSize;
+        }
+    }
+
+    /**
+     * @param status 0 when sent, the status of the {@code CourierException} otherwise
+     */
+    public void finish(int status) {
+        if (!isEnabled()) {
+            return;
+        }
+        CURRENT.remove();
+        end();
+        if (shouldCommit()) {
+            this.status = status;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package dev.kkm.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * @implNote Flight Recorder event of a stage of the send pipeline, the stages of {@link CourierMetrics.Stage}.
+ * Begun and committed on the thread running the stage; when no recording enables it the JIT reduces it to nothing.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+@Name("dev.kkm.courier.Stage")
+@Label("Courier Stage")
+@Category("Courier")
+@Description("A stage of the courier send pipeline")
+@StackTrace(false)
+public class CourierStageEvent extends Event {
+
+    @Label("Stage")
+    private String stage;
+
+    @Label("Template")
+    @Description("Template rendered, for the template and MIME stages")
+    private String templateName;
+
+    @Label("Relay")
+    @Description("Relay of the connection, for the connection and transmission stages")
+    private String relay;
+
+    /**
+     * Begins the event of a stage run by the calling thread
+     * @return the event, to finish once the stage is done
+     */
+    public static CourierStageEvent start() {
+        CourierStageEvent event = new CourierStageEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param stage stage which is done
+     */
+    public void finish(CourierMetrics.Stage stage) {
+        finish(stage, null, null);
+    }
+
+    /**
+     * @param stage stage which is done
+     * @param templateName template rendered by the stage, if any
+     * @param relay relay the stage talked to, if any
+     */
+    public void finish(CourierMetrics.Stage stage, String templateName, String relay) {
+        end();
+        if (shouldCommit()) {
+            this.stage = stage.name();
+            this.templateName = templateName;
+            this.relay = relay;
+            commit();
+        }
+    }
+}
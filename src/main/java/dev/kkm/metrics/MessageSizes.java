@@ -0,0 +1,50 @@
+package dev.kkm.metrics;
+
+import dev.kkm.transport.EnvelopeMessage;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * @implNote size of a message on the wire: the length of the bytes of an {@link EnvelopeMessage}, already serialized;
+ * any other message is serialized into a stream counting the bytes
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+final class MessageSizes {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageSizes.class);
+
+    private MessageSizes() {
+    }
+
+    static long sizeOf(MimeMessage message) {
+        if (message instanceof EnvelopeMessage envelopeMessage) {
+            return envelopeMessage.getWireSize();
+        }
+        CountingOutputStream out = new CountingOutputStream();
+        try {
+            message.writeTo(out);
+        } catch (IOException | MessagingException exception) {
+            log.debug("... courier size not measured: {} ...", exception.getMessage());
+        }
+        return out.count;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
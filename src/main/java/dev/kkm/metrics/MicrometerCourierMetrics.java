@@ -0,0 +1,91 @@
+package dev.kkm.metrics;
+
+import dev.kkm.config.CourierProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @implNote Micrometer meters of the send pipeline, all registered at startup so that recording is a lookup in an array:
+ * <ul>
+ *     <li>{@code courier.stage} timer, tagged by {@code stage}</li>
+ *     <li>{@code courier.sent} counter and {@code courier.failed} counter, tagged by {@code status} (900 to 905)</li>
+ *     <li>{@code courier.message.recipients} and {@code courier.message.size} distributions</li>
+ * </ul>
+ * The size of a message is measured when {@code courier.metrics.message-size} is enabled: a message written to its wire
+ * format has its size known, any other is serialized once more.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public class MicrometerCourierMetrics implements CourierMetrics {
+
+    private static final Logger log = LoggerFactory.getLogger(MicrometerCourierMetrics.class);
+    private static final int FIRST_STATUS = 900;
+    private static final int LAST_STATUS = 905;
+
+    private final Timer[] stages = new Timer[Stage.values().length];
+    private final Counter[] failures = new Counter[LAST_STATUS - FIRST_STATUS + 1];
+    private final Counter sent;
+    private final DistributionSummary recipients;
+    private final DistributionSummary size;
+
+    public MicrometerCourierMetrics(MeterRegistry registry, CourierProperties.Metrics config) {
+        for (Stage stage : Stage.values()) {
+            stages[stage.ordinal()] = Timer.builder("courier.stage")
+                    .description("duration of a stage of the courier send pipeline")
+                    .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+                    .publishPercentileHistogram(config.isHistograms())
+                    .register(registry);
+        }
+        for (int status = FIRST_STATUS; status <= LAST_STATUS; status++) {
+            failures[status - FIRST_STATUS] = Counter.builder("courier.failed")
+                    .description("couriers failed, by CourierException status")
+                    .tag("status", String.valueOf(status))
+                    .register(registry);
+        }
+        this.sent = Counter.builder("courier.sent").description("couriers accepted by the relay").register(registry);
+        this.recipients = DistributionSummary.builder("courier.message.recipients")
+                .description("recipients of a courier, cc and bcc included")
+                .publishPercentileHistogram(config.isHistograms())
+                .register(registry);
+        this.size = config.isMessageSize() ? DistributionSummary.builder("courier.message.size")
+                .description("size of a courier on the wire")
+                .baseUnit("bytes")
+                .publishPercentileHistogram(config.isHistograms())
+                .register(registry) : null;
+    }
+
+    @Override
+    public void record(Stage stage, long nanos) {
+        stages[stage.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void sent(MimeMessage message) {
+        sent.increment();
+        try {
+            recipients.record(message.getAllRecipients() != null ? message.getAllRecipients().length : 0);
+        } catch (MessagingException messagingException) {
+            log.debug("... courier recipients not counted: {} ...", messagingException.getMessage());
+        }
+        if (size != null) {
+            long messageSize = MessageSizes.sizeOf(message);
+            size.record(messageSize);
+            CourierSendEvent.messageSize(messageSize);
+        }
+    }
+
+    @Override
+    public void failed(int status) {
+        if (status >= FIRST_STATUS && status <= LAST_STATUS) {
+            failures[status - FIRST_STATUS].increment();
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package dev.kkm.mime;
+
+import dev.kkm.attachment.AttachmentEncodingCache;
+import dev.kkm.attachment.InlineResourceCache;
+import dev.kkm.model.CourierDetail;
+import dev.kkm.validation.CourierAddresses;
+import jakarta.activation.DataSource;
+import jakarta.activation.FileTypeMap;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.ContentDisposition;
+import jakarta.mail.internet.ContentType;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeUtility;
+import jakarta.mail.internet.ParameterList;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @implNote writes a courier straight to its RFC 5322 wire format, without building a MIME message tree:
+ * headers are written once, already encoded and folded, and the body parts are spliced in as bytes.
+ * Attachments and images come base64-encoded from the {@link AttachmentEncodingCache} and the {@link InlineResourceCache}
+ * when enabled, so a part shared by several couriers is copied, not encoded again.
+ * Multipart boundaries derive from the content, so the same courier sent to several recipients has the same body bytes,
+ * and are checked against the text written as is.
+ * The courier is written into a buffer sized from its text and attachments, handed over to the message without a copy.
+ * <p>
+ * The layout is the one of {@code MimeMessageHelper} in mixed-related mode, without the multiparts a courier does not need:
+ * a text courier without images nor attachments is a single part. The Bcc header is not written, the blind copies
+ * are only in the envelope.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public class WireMessageWriter {
+
+    private static final String CHARSET = "UTF-8";
+    private static final int MAX_LINE_LENGTH = 998;
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    private static final int HEADERS_SIZE = 2048;
+    private static final int PART_SIZE = 16 * 1024;
+
+    private final ResourceLoader resourceLoader;
+    private AttachmentEncodingCache attachmentCache;
+    private InlineResourceCache inlineCache;
+
+    public WireMessageWriter(ResourceLoader resourceLoader) {
+        this.resourceLoader = resourceLoader;
+    }
+
+    /**
+     * @param attachmentCache cache the encoded attachments are taken from
+     */
+    public void setAttachmentCache(AttachmentEncodingCache attachmentCache) {
+        this.attachmentCache = attachmentCache;
+    }
+
+    /**
+     * @param inlineCache cache the encoded images are taken from
+     */
+    public void setInlineCache(InlineResourceCache inlineCache) {
+        this.inlineCache = inlineCache;
+    }
+
+    /**
+     * @param courierDetail subject, organization name, priority and attachments of the courier
+     * @param addresses validated addresses of the courier
+     * @param html rendered HTML body, null to send the text body of the courier
+     * @param inlines images to embed: content id to location
+     * @return the message as sent on the wire, headers included, from the position to the limit of the buffer
+     * @throws MessagingException when an attachment or an image could not be read
+     */
+    public ByteBuffer write(CourierDetail courierDetail, CourierAddresses addresses, String html, Map<String, String> inlines) throws MessagingException {
+        String text = html != null ? html : courierDetail.getBody();
+        boolean mixed = courierDetail.getAttachments() != null && !courierDetail.getAttachments().isEmpty();
+        boolean related = !inlines.isEmpty();
+        WireBuffer out = new WireBuffer(initialSize(text, inlines, courierDetail));
+        try {
+            writeHeaders(out, courierDetail, addresses);
+            long contentHash = contentHash(text, inlines, courierDetail);
+            String mixedBoundary = mixed ? boundary("Mixed", contentHash, text) : null;
+            String relatedBoundary = related ? boundary("Related", contentHash, text) : null;
+
+            if (mixed) {
+                out.header("Content-Type", "multipart/mixed; boundary=\"" + mixedBoundary + "\"").crlf();
+                out.ascii("--").ascii(mixedBoundary).crlf();
+            }
+            if (related) {
+                out.header("Content-Type", "multipart/related; boundary=\"" + relatedBoundary + "\"").crlf();
+                out.ascii("--").ascii(relatedBoundary).crlf();
+            }
+            writeText(out, text, html != null);
+            if (related) {
+                for (Map.Entry<String, String> inline : inlines.entrySet()) {
+                    out.crlf().ascii("--").ascii(relatedBoundary).crlf();
+                    writeInline(out, inline.getKey(), inline.getValue());
+                }
+                out.crlf().ascii("--").ascii(relatedBoundary).ascii("--").crlf();
+            }
+            if (mixed) {
+                for (Map.Entry<String, DataSource> attachment : courierDetail.getAttachments().entrySet()) {
+                    out.crlf().ascii("--").ascii(mixedBoundary).crlf();
+                    writeAttachment(out, attachment.getKey(), attachment.getValue());
+                }
+                out.crlf().ascii("--").ascii(mixedBoundary).ascii("--").crlf();
+            }
+            return out.toByteBuffer();
+        } catch (IOException ioException) {
+            throw new MessagingException("courier could not be written", ioException);
+        }
+    }
+
+    /**
+     * @return size of the courier if its text is written as is and its parts are not larger than the usual attachment,
+     * so that the buffer of most couriers does not grow
+     */
+    private static int initialSize(String text, Map<String, String> inlines, CourierDetail courierDetail) {
+        long size = HEADERS_SIZE + (text != null ? text.length() : 0) + (long) inlines.size() * PART_SIZE;
+        if (courierDetail.getAttachments() != null) {
+            size += (long) courierDetail.getAttachments().size() * PART_SIZE;
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE - 8);
+    }
+
+    private void writeHeaders(WireBuffer out, CourierDetail courierDetail, CourierAddresses addresses) throws IOException {
+        out.header("Date", DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now()));
+        InternetAddress from = new InternetAddress(addresses.sender().getAddress(), courierDetail.getOrganizationName(), CHARSET);
+        out.header("From", from.toString());
+        if (addresses.replyTo() != null) {
+            out.addresses("Reply-To", new InternetAddress[]{addresses.replyTo()});
+        }
+        out.addresses("To", addresses.to());
+        out.addresses("Cc", addresses.cc());
+        out.header("Message-ID", messageId(addresses.sender()));
+        if (courierDetail.getSubject() != null) {
+            out.header("Subject", MimeUtility.fold(9, MimeUtility.encodeText(courierDetail.getSubject(), CHARSET, null)));
+        }
+        out.header("MIME-Version", "1.0");
+        if (courierDetail.getPriority() != null) {
+            out.header("X-Priority", Integer.toString(courierDetail.getPriority()));
+        }
+    }
+
+    private void writeText(WireBuffer out, String text, boolean html) throws IOException {
+        String body = text != null ? text : "";
+        boolean sevenBit = isSevenBit(body);
+        out.header("Content-Type", (html ? "text/html" : "text/plain") + "; charset=" + CHARSET);
+        out.header("Content-Transfer-Encoding", sevenBit ? "7bit" : "quoted-printable");
+        out.crlf();
+        if (sevenBit) {
+            out.ascii(body);
+        } else {
+            try (OutputStream encoder = MimeUtility.encode(out, "quoted-printable")) {
+                encoder.write(body.getBytes(StandardCharsets.UTF_8));
+            } catch (MessagingException messagingException) {
+                throw new IOException(messagingException);
+            }
+        }
+    }
+
+    private void writeInline(WireBuffer out, String contentId, String location) throws IOException, MessagingException {
+        if (inlineCache != null) {
+            DataSource encoded = inlineCache.getEncoded(location);
+            writePartHeaders(out, encoded.getContentType(), encoded.getName(), "inline");
+            out.header("Content-ID", "<" + contentId + ">").crlf();
+            copy(encoded, out);
+            return;
+        }
+        Resource resource = resourceLoader.getResource(location);
+        String name = resource.getFilename() != null ? resource.getFilename() : location;
+        writePartHeaders(out, FileTypeMap.getDefaultFileTypeMap().getContentType(name), name, "inline");
+        out.header("Content-ID", "<" + contentId + ">").crlf();
+        try (InputStream in = resource.getInputStream()) {
+            encode(in, out);
+        }
+    }
+
+    private void writeAttachment(WireBuffer out, String name, DataSource dataSource) throws IOException, MessagingException {
+        writePartHeaders(out, dataSource.getContentType(), name, "attachment");
+        out.crlf();
+        DataSource encoded = attachmentCache != null ? attachmentCache.getEncoded(dataSource) : null;
+        if (encoded != null) {
+            copy(encoded, out);
+        } else {
+            try (InputStream in = dataSource.getInputStream()) {
+                encode(in, out);
+            }
+        }
+    }
+
+    private static void writePartHeaders(WireBuffer out, String contentType, String name, String disposition) throws IOException {
+        try {
+            ContentType type = new ContentType(contentType != null ? contentType : "application/octet-stream");
+            ParameterList typeParameters = type.getParameterList() != null ? type.getParameterList() : new ParameterList();
+            typeParameters.set("name", name, CHARSET);
+            type.setParameterList(typeParameters);
+            ParameterList dispositionParameters = new ParameterList();
+            dispositionParameters.set("filename", name, CHARSET);
+            ContentDisposition contentDisposition = new ContentDisposition(disposition, dispositionParameters);
+            out.header("Content-Type", type.toString());
+            out.header("Content-Transfer-Encoding", "base64");
+            out.header("Content-Disposition", contentDisposition.toString());
+        } catch (MessagingException messagingException) {
+            throw new IOException("content type " + contentType + " of " + name + " is invalid", messagingException);
+        }
+    }
+
+    private static void copy(DataSource encoded, WireBuffer out) throws IOException {
+        try (InputStream in = encoded.getInputStream()) {
+            in.transferTo(out);
+        }
+    }
+
+    private static void encode(InputStream in, WireBuffer out) throws IOException {
+        // closing the encoder flushes its last line, closing the buffer does nothing
+        try (OutputStream encoder = MimeUtility.encode(out, "base64")) {
+            in.transferTo(encoder);
+        } catch (MessagingException messagingException) {
+            throw new IOException(messagingException);
+        }
+    }
+
+    private static boolean isSevenBit(String text) {
+        int lineLength = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80 || c == 0) {
+                return false;
+            }
+            lineLength = c == '\n' || c == '\r' ? 0 : lineLength + 1;
+            if (lineLength > MAX_LINE_LENGTH) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String messageId(InternetAddress sender) {
+        String email = sender.getAddress();
+        String domain = email != null && email.indexOf('@') >= 0 ? email.substring(email.lastIndexOf('@') + 1) : "localhost";
+        return "<" + Long.toHexString(ThreadLocalRandom.current().nextLong()) + "." + SEQUENCE.incrementAndGet() + ".courier@" + domain + ">";
+    }
+
+    /**
+     * Boundaries derive from the content, so couriers with the same body and parts have identical bodies on the wire,
+     * e.g. to reuse their DKIM body hash. A text written as is (7bit) could hold the boundary: the next one is taken then.
+     * Quoted-printable and base64 parts cannot hold it, they never write {@code =_}.
+     */
+    static String boundary(String kind, long contentHash, String text) {
+        String boundary = "----=_" + kind + "_" + Long.toHexString(contentHash);
+        while (text != null && text.contains(boundary)) {
+            boundary = "----=_" + kind + "_" + Long.toHexString(++contentHash);
+        }
+        return boundary;
+    }
+
+    private static long contentHash(String text, Map<String, String> inlines, CourierDetail courierDetail) {
+        long hash = text != null ? text.hashCode() : 0;
+        hash = hash * 31 + (text != null ? text.length() : 0);
+        hash = (hash << 32) ^ inlines.hashCode();
+        if (courierDetail.getAttachments() != null) {
+            for (Map.Entry<String, DataSource> attachment : courierDetail.getAttachments().entrySet()) {
+                hash = hash * 31 + attachment.getKey().hashCode();
+                hash = hash * 31 + String.valueOf(attachment.getValue().getContentType()).hashCode();
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * growable buffer writing the headers without encoding them again: they are ASCII once encoded and folded
+     */
+    private static final class WireBuffer extends ByteArrayOutputStream {
+
+        private WireBuffer(int size) {
+            super(size);
+        }
+
+        /**
+         * @return the written bytes, over the array of the buffer
+         */
+        private ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+
+        private WireBuffer ascii(String value) {
+            ensureCapacity(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                buf[count++] = (byte) value.charAt(i);
+            }
+            return this;
+        }
+
+        private WireBuffer crlf() {
+            write('\r');
+            write('\n');
+            return this;
+        }
+
+        private WireBuffer header(String name, String value) {
+            return ascii(name).ascii(": ").ascii(value).crlf();
+        }
+
+        private void addresses(String name, InternetAddress[] addresses) {
+            if (addresses != null && addresses.length > 0) {
+                header(name, InternetAddress.toString(addresses, name.length() + 2));
+            }
+        }
+
+        private void ensureCapacity(int length) {
+            if (count + length > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + length));
+            }
+        }
+    }
+}
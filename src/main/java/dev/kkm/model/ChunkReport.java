@@ -0,0 +1,52 @@
+package dev.kkm.model;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Per-chunk and per-recipient report of a courier sent in chunks, chunks are ordered as the recipients
+ * @author  maximilien kengne kongne
+ * @version  1.0.0
+ */
+public class ChunkReport {
+    private final String messageId;
+    private final List<ChunkResult> chunks;
+    private final long durationMillis;
+
+    public ChunkReport(String messageId, List<ChunkResult> chunks, long durationMillis) {
+        this.messageId = messageId;
+        this.chunks = List.copyOf(chunks);
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * @return Message-ID header shared by every chunk
+     */
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public List<ChunkResult> getChunks() {
+        return chunks;
+    }
+
+    public List<ChunkResult> getFailures() {
+        return chunks.stream().filter(chunk -> !chunk.isSuccess()).toList();
+    }
+
+    public List<String> getAcceptedRecipients() {
+        return chunks.stream().map(ChunkResult::getAccepted).flatMap(Collection::stream).toList();
+    }
+
+    public List<String> getRejectedRecipients() {
+        return chunks.stream().map(ChunkResult::getRejected).flatMap(Collection::stream).toList();
+    }
+
+    public boolean isAllAccepted() {
+        return chunks.stream().allMatch(ChunkResult::isSuccess);
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+}
@@ -0,0 +1,62 @@
+package dev.kkm.model;
+
+import dev.kkm.exception.CourierException;
+
+import java.util.List;
+
+/**
+ * Outcome of one chunk of recipients of a chunked courier
+ * @author  maximilien kengne kongne
+ * @version  1.0.0
+ */
+public class ChunkResult {
+    private final int index;
+    private final List<String> accepted;
+    private final List<String> rejected;
+    private final CourierException error;
+    private final long durationMillis;
+
+    public ChunkResult(int index, List<String> accepted, List<String> rejected, CourierException error, long durationMillis) {
+        this.index = index;
+        this.accepted = List.copyOf(accepted);
+        this.rejected = List.copyOf(rejected);
+        this.error = error;
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * @return position of the chunk in the courier
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return recipients of the chunk accepted by the relay
+     */
+    public List<String> getAccepted() {
+        return accepted;
+    }
+
+    /**
+     * @return recipients of the chunk rejected by the relay, or not sent because the chunk failed
+     */
+    public List<String> getRejected() {
+        return rejected;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * @return the failure cause, null when every recipient of the chunk was accepted
+     */
+    public CourierException getError() {
+        return error;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+}
@@ -1,8 +1,10 @@
 package dev.kkm.model;
 
+import dev.kkm.attachment.AttachmentSources;
 import dev.kkm.exception.CourierException;
 import jakarta.activation.DataSource;
 
+import java.nio.file.Path;
 
 import java.util.*;
 
@@ -35,6 +37,19 @@ public class CourierDetail {
      * {@link jakarta.activation.DataSource}
      */
     private final Map<String, DataSource> attachments;
+    /**
+     * images embedded in the HTML body: content id referenced as {@code cid:<id>} to the location of the resource
+     * ({@code classpath:}, {@code file:} or URL)
+     */
+    private final Map<String, String> inlines;
+    /**
+     * key identifying the courier for the deduplication, instead of its content hash
+     */
+    private final String idempotencyKey;
+    /**
+     * couriers to the same recipients with the same key are grouped in one digest by {@code coalesceCourier}
+     */
+    private final String coalescingKey;
 
     public String getSender() {
         return sender;
@@ -84,6 +99,18 @@ public class CourierDetail {
         return attachments;
     }
 
+    public Map<String, String> getInlines() {
+        return inlines;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public String getCoalescingKey() {
+        return coalescingKey;
+    }
+
     private CourierDetail(Builder builder) {
         this.sender = builder.sender;
         this.recipients = List.copyOf(builder.recipients);
@@ -97,6 +124,9 @@ public class CourierDetail {
         this.replyTo = builder.replyTo;
         this.variables = Map.copyOf(builder.variables);
         this.attachments = Map.copyOf(builder.attachments);
+        this.inlines = Map.copyOf(builder.inlines);
+        this.idempotencyKey = builder.idempotencyKey;
+        this.coalescingKey = builder.coalescingKey;
     }
 
     public static Builder builder() {
@@ -117,6 +147,9 @@ public class CourierDetail {
         private String replyTo;
         private final Map<String, Object> variables = new HashMap<>();
         private final Map<String, DataSource> attachments = new HashMap<>();
+        private final Map<String, String> inlines = new HashMap<>();
+        private String idempotencyKey;
+        private String coalescingKey;
 
         private Builder() {}
 
@@ -186,6 +219,22 @@ public class CourierDetail {
             return this;
         }
 
+        /**
+         * Identifies the courier for {@code courier.dedup}: a courier with the key of a courier sent within the window is skipped
+         */
+        public Builder withIdempotencyKey(String idempotencyKey) {
+            this.idempotencyKey = Objects.requireNonNull(idempotencyKey, "Idempotency key cannot be null");
+            return this;
+        }
+
+        /**
+         * Groups the courier with the couriers to the same recipients and with the same key, see {@code coalesceCourier}
+         */
+        public Builder withCoalescingKey(String coalescingKey) {
+            this.coalescingKey = Objects.requireNonNull(coalescingKey, "Coalescing key cannot be null");
+            return this;
+        }
+
         public Builder addVariable(String key, Object value) {
             this.variables.put(
                     Objects.requireNonNull(key, "Variable key cannot be null"),
@@ -207,22 +256,65 @@ public class CourierDetail {
             return this;
         }
 
+        /**
+         * Attaches in-memory content, moved to a temporary file when larger than
+         * {@link AttachmentSources#DEFAULT_SPILL_THRESHOLD} so that it does not stay on the heap
+         */
+        public Builder addAttachment(String name, byte[] content, String contentType) {
+            Objects.requireNonNull(content, "Attachment content cannot be null");
+            return addAttachment(name, AttachmentSources.bytes(content, contentType, name));
+        }
+
+        /**
+         * Attaches a file, streamed when the courier is sent
+         */
+        public Builder addAttachment(String name, Path file, String contentType) {
+            Objects.requireNonNull(file, "Attachment file cannot be null");
+            return addAttachment(name, AttachmentSources.file(file, contentType));
+        }
+
         public Builder addAttachments(Map<String, DataSource> attachments) {
             attachments.forEach(this::addAttachment);
             return this;
         }
 
+        /**
+         * Embeds an image referenced as {@code <img src="cid:contentId">} in the HTML body
+         * @param contentId content id of the image
+         * @param location location of the image, e.g. {@code classpath:images/logo.png} or {@code file:/opt/images/logo.png}
+         */
+        public Builder addInline(String contentId, String location) {
+            this.inlines.put(
+                    Objects.requireNonNull(contentId, "Inline content id cannot be null"),
+                    Objects.requireNonNull(location, "Inline location cannot be null")
+            );
+            return this;
+        }
+
         public CourierDetail build() {
 
             if (recipients.isEmpty()) {
                 throw new CourierException("At least one recipient is required");
             }
 
-            if (sender.isBlank()) {
+            if (templateName != null && variables.isEmpty()) {
+                throw new CourierException("Variables are required when using a template");
+            }
+
+            return buildSkeleton();
+        }
+
+        /**
+         * Builds the shared part of a mail merge, recipients and template variables being given per row
+         * @return the merge skeleton
+         */
+        public CourierDetail buildSkeleton() {
+
+            if (sender == null || sender.isBlank()) {
                 throw new CourierException("Sender is required");
             }
 
-            if (subject.isBlank()) {
+            if (subject == null || subject.isBlank()) {
                 throw new CourierException("Subject is required");
             }
 
@@ -234,10 +326,6 @@ public class CourierDetail {
                 throw new CourierException("Cannot specify both body and template");
             }
 
-            if (templateName != null && variables.isEmpty()) {
-                throw new CourierException("Variables are required when using a template");
-            }
-
             if (priority != null && !List.of(1,3,5).contains(priority)) {
                 throw new CourierException("Priority must be in ( 1, 3, 5)");
             }
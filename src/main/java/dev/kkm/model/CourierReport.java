@@ -0,0 +1,52 @@
+package dev.kkm.model;
+
+import java.util.List;
+
+/**
+ * Per-courier report of a bulk send, results are ordered as the submitted batch
+ * @author  maximilien kengne kongne
+ * @version  1.0.0
+ */
+public class CourierReport {
+    private final List<CourierResult> results;
+    private final long durationMillis;
+
+    public CourierReport(List<CourierResult> results, long durationMillis) {
+        this.results = List.copyOf(results);
+        this.durationMillis = durationMillis;
+    }
+
+    public List<CourierResult> getResults() {
+        return results;
+    }
+
+    public List<CourierResult> getFailures() {
+        return results.stream().filter(result -> !result.isSuccess()).toList();
+    }
+
+    /**
+     * @return number of couriers sent, the couriers skipped as duplicates included
+     */
+    public int getSentCount() {
+        return (int) results.stream().filter(CourierResult::isSuccess).count();
+    }
+
+    /**
+     * @return number of couriers skipped as duplicates of couriers sent within the dedup window
+     */
+    public int getDuplicateCount() {
+        return (int) results.stream().filter(CourierResult::isDuplicate).count();
+    }
+
+    public int getFailedCount() {
+        return results.size() - getSentCount();
+    }
+
+    public boolean isAllSent() {
+        return results.stream().allMatch(CourierResult::isSuccess);
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+}
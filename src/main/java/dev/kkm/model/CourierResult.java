@@ -0,0 +1,84 @@
+package dev.kkm.model;
+
+import dev.kkm.exception.CourierException;
+
+/**
+ * Outcome of one courier of a bulk send
+ * @author  maximilien kengne kongne
+ * @version  1.0.0
+ */
+public class CourierResult {
+    private final int index;
+    private final CourierException error;
+    private final long durationMillis;
+    private final SendResult sendResult;
+
+    private CourierResult(int index, CourierException error, long durationMillis, SendResult sendResult) {
+        this.index = index;
+        this.error = error;
+        this.durationMillis = durationMillis;
+        this.sendResult = sendResult;
+    }
+
+    public static CourierResult success(int index, long durationMillis) {
+        return new CourierResult(index, null, durationMillis, null);
+    }
+
+    public static CourierResult success(int index, SendResult sendResult) {
+        return new CourierResult(index, null, sendResult.getBuildMillis() + sendResult.getSendMillis(), sendResult);
+    }
+
+    /**
+     * @return result of a courier skipped as a duplicate, see {@link SendResult#duplicate()}
+     */
+    public static CourierResult duplicate(int index) {
+        return new CourierResult(index, null, 0, SendResult.duplicate());
+    }
+
+    public static CourierResult failure(int index, CourierException error, long durationMillis) {
+        return new CourierResult(index, error, durationMillis, null);
+    }
+
+    /**
+     * @return position of the courier in the submitted batch
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * @return true when the courier was skipped as a duplicate of a courier sent within the dedup window
+     */
+    public boolean isDuplicate() {
+        return sendResult != null && sendResult.isDuplicate();
+    }
+
+    /**
+     * @return the failure cause, null when the courier was sent
+     */
+    public CourierException getError() {
+        return error;
+    }
+
+    /**
+     * @return status code of the failure (see {@link CourierException#getStatus()}), 0 when sent
+     */
+    public int getStatus() {
+        return error == null ? 0 : error.getStatus();
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * @return message id and recipients of the sent courier, null when failed or not tracked by the send
+     */
+    public SendResult getSendResult() {
+        return sendResult;
+    }
+}
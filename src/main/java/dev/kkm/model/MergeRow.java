@@ -0,0 +1,68 @@
+package dev.kkm.model;
+
+import dev.kkm.exception.CourierException;
+
+import java.util.*;
+
+/**
+ * One row of a mail merge: the recipients of a courier and the variables specific to them
+ * @author  maximilien kengne kongne
+ * @version  1.0.0
+ */
+public class MergeRow {
+    private final List<String> recipients;
+    private final Map<String, Object> variables;
+
+    public MergeRow(List<String> recipients, Map<String, Object> variables) {
+        if (Objects.requireNonNull(recipients, "Recipients cannot be null").isEmpty()) {
+            throw new CourierException("At least one recipient is required");
+        }
+        this.recipients = List.copyOf(recipients);
+        this.variables = Map.copyOf(Objects.requireNonNull(variables, "Variables cannot be null"));
+    }
+
+    public static MergeRow of(String recipient, Map<String, Object> variables) {
+        return new MergeRow(List.of(Objects.requireNonNull(recipient, "Recipient cannot be null")), variables);
+    }
+
+    public List<String> getRecipients() {
+        return recipients;
+    }
+
+    /**
+     * @return variables of this row, they take precedence over the variables of the merge skeleton
+     */
+    public Map<String, Object> getVariables() {
+        return variables;
+    }
+
+    /**
+     * @param skeleton skeleton of the merge
+     * @return the courier of this row: the skeleton sent to the row recipients, the row variables overriding its own
+     */
+    public CourierDetail courierOf(CourierDetail skeleton) {
+        CourierDetail.Builder builder = CourierDetail.builder()
+                .withSender(skeleton.getSender())
+                .addRecipients(recipients)
+                .addCcs(skeleton.getCc())
+                .addBccs(skeleton.getBcc())
+                .withSubject(skeleton.getSubject())
+                .withOrganizationName(skeleton.getOrganizationName())
+                .addVariables(skeleton.getVariables())
+                .addVariables(variables)
+                .addAttachments(skeleton.getAttachments());
+        skeleton.getInlines().forEach(builder::addInline);
+        if (skeleton.getTemplateName() != null) {
+            builder.withTemplate(skeleton.getTemplateName());
+        } else {
+            builder.withBody(skeleton.getBody());
+        }
+        if (skeleton.getPriority() != null) {
+            builder.withPriority(skeleton.getPriority());
+        }
+        if (skeleton.getReplyTo() != null) {
+            builder.withReplyTo(skeleton.getReplyTo());
+        }
+        return builder.build();
+    }
+}
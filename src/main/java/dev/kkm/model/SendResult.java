@@ -0,0 +1,96 @@
+package dev.kkm.model;
+
+import java.util.List;
+
+/**
+ * Outcome of a courier sent asynchronously
+ * @author  maximilien kengne kongne
+ * @version  1.0.0
+ */
+public class SendResult {
+
+    /**
+     * What became of the courier
+     */
+    public enum Status {
+        /**
+         * handed to the relay, to the accepted recipients
+         */
+        SENT,
+        /**
+         * skipped as a duplicate of a courier already sent within the dedup window, nothing was sent
+         */
+        DUPLICATE
+    }
+
+    private final Status status;
+    private final String messageId;
+    private final List<String> accepted;
+    private final List<String> rejected;
+    private final long buildMillis;
+    private final long sendMillis;
+
+    public SendResult(String messageId, List<String> accepted, List<String> rejected, long buildMillis, long sendMillis) {
+        this(Status.SENT, messageId, accepted, rejected, buildMillis, sendMillis);
+    }
+
+    private SendResult(Status status, String messageId, List<String> accepted, List<String> rejected, long buildMillis, long sendMillis) {
+        this.status = status;
+        this.messageId = messageId;
+        this.accepted = List.copyOf(accepted);
+        this.rejected = List.copyOf(rejected);
+        this.buildMillis = buildMillis;
+        this.sendMillis = sendMillis;
+    }
+
+    /**
+     * @return result of a courier skipped as a duplicate: no Message-ID and no recipient
+     */
+    public static SendResult duplicate() {
+        return new SendResult(Status.DUPLICATE, null, List.of(), List.of(), 0, 0);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isDuplicate() {
+        return status == Status.DUPLICATE;
+    }
+
+    /**
+     * @return Message-ID header of the sent message, to correlate bounces and replies
+     */
+    public String getMessageId() {
+        return messageId;
+    }
+
+    /**
+     * @return recipients accepted by the relay
+     */
+    public List<String> getAccepted() {
+        return accepted;
+    }
+
+    /**
+     * @return recipients rejected by the relay, only with {@code mail.smtp.sendpartial=true}: otherwise a rejected
+     * recipient fails the courier
+     */
+    public List<String> getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return time spent validating and rendering the courier
+     */
+    public long getBuildMillis() {
+        return buildMillis;
+    }
+
+    /**
+     * @return time spent by the transport, retries included
+     */
+    public long getSendMillis() {
+        return sendMillis;
+    }
+}
@@ -0,0 +1,59 @@
+package dev.kkm.model;
+
+import java.util.List;
+
+/**
+ * Summary of a streamed bulk send: counts and failures only, the results of the sent couriers are not kept
+ * @author  maximilien kengne kongne
+ * @version  1.0.0
+ */
+public class StreamReport {
+    private final long sentCount;
+    private final long duplicateCount;
+    private final List<CourierResult> failures;
+    private final long durationMillis;
+
+    public StreamReport(long sentCount, List<CourierResult> failures, long durationMillis) {
+        this(sentCount, 0, failures, durationMillis);
+    }
+
+    public StreamReport(long sentCount, long duplicateCount, List<CourierResult> failures, long durationMillis) {
+        this.sentCount = sentCount;
+        this.duplicateCount = duplicateCount;
+        this.failures = List.copyOf(failures);
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * @return number of couriers sent, the couriers skipped as duplicates included
+     */
+    public long getSentCount() {
+        return sentCount;
+    }
+
+    /**
+     * @return number of couriers skipped as duplicates of couriers sent within the dedup window
+     */
+    public long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    public long getFailedCount() {
+        return failures.size();
+    }
+
+    /**
+     * @return the failed couriers, ordered by their position in the source
+     */
+    public List<CourierResult> getFailures() {
+        return failures;
+    }
+
+    public boolean isAllSent() {
+        return failures.isEmpty();
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+}
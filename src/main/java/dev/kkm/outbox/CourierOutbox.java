@@ -0,0 +1,174 @@
+package dev.kkm.outbox;
+
+import dev.kkm.config.CourierProperties;
+import dev.kkm.service.CourierExecutors;
+import dev.kkm.transport.CourierTransport;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @implNote durable outbox: a courier is appended to the {@link OutboxJournal} and acknowledged to the caller once on disk,
+ * then background dispatchers send it through the {@link CourierTransport} and mark it done.
+ * Messages not acknowledged when the application stopped are sent again at startup (at-least-once delivery).
+ * A message is journaled with its envelope recipients, see {@link OutboxMessages}: its blind copies are not lost.
+ * Any failure of a send counts as an attempt, a dispatcher never stops on it. Once closed, the dispatchers stop taking
+ * messages and the sends in progress finish within {@code courier.outbox.shutdown-timeout} before the journal is closed.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public class CourierOutbox implements MessageOutbox, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(CourierOutbox.class);
+    private static final OutboxEntry STOP = new OutboxEntry(-1, null, 0, 0);
+
+    private final CourierProperties.Outbox config;
+    private final OutboxJournal journal;
+    private final CourierTransport transport;
+    private final Session session;
+    private final BlockingQueue<OutboxEntry> ready = new LinkedBlockingQueue<>();
+    private final ConcurrentHashMap<Long, Integer> attempts = new ConcurrentHashMap<>();
+    private final ExecutorService dispatchers;
+    private final int dispatcherCount;
+    private final ScheduledExecutorService retries;
+    private volatile boolean closed;
+
+    /**
+     * @param config outbox settings
+     * @param transport transport the dispatchers send through
+     * @param session mail session used to read back the journaled messages
+     */
+    public CourierOutbox(CourierProperties.Outbox config, CourierTransport transport, Session session) {
+        this.config = config;
+        this.transport = transport;
+        this.session = session;
+        this.journal = new OutboxJournal(Path.of(config.getDirectory()), config.getSegmentSize().toBytes(), config.getMaxBatch());
+        this.retries = Executors.newSingleThreadScheduledExecutor(CourierExecutors.daemonThreadFactory("courier-outbox-retry"));
+        this.dispatcherCount = Math.max(1, config.getDispatchers());
+        this.dispatchers = Executors.newFixedThreadPool(dispatcherCount, CourierExecutors.daemonThreadFactory("courier-outbox-dispatcher"));
+
+        ready.addAll(journal.getRecovered());
+        for (int i = 0; i < dispatcherCount; i++) {
+            dispatchers.execute(this::dispatchLoop);
+        }
+    }
+
+    /**
+     * Journals the message, it is sent in the background
+     * @param message message ready to be sent
+     * @return the entry of the message once durable on disk
+     */
+    public OutboxEntry enqueue(MimeMessage message) throws MessagingException, IOException {
+        try {
+            OutboxEntry entry = journal.append(OutboxMessages.encode(message)).join();
+            ready.add(entry);
+            return entry;
+        } catch (CompletionException completionException) {
+            throw new IOException("courier could not be journaled", completionException.getCause());
+        }
+    }
+
+    @Override
+    public void append(MimeMessage message) throws MessagingException, IOException {
+        enqueue(message);
+    }
+
+    /**
+     * @implNote the messages are appended together, so they share the fsyncs of the journal
+     */
+    @Override
+    public void appendAll(List<MimeMessage> messages) throws MessagingException, IOException {
+        List<CompletableFuture<OutboxEntry>> appends = new ArrayList<>(messages.size());
+        for (MimeMessage message : messages) {
+            appends.add(journal.append(OutboxMessages.encode(message)));
+        }
+        for (CompletableFuture<OutboxEntry> append : appends) {
+            try {
+                ready.add(append.join());
+            } catch (CompletionException completionException) {
+                throw new IOException("courier could not be journaled", completionException.getCause());
+            }
+        }
+    }
+
+    /**
+     * @return number of journaled messages waiting for a dispatcher
+     */
+    public int getBacklog() {
+        return ready.size();
+    }
+
+    /**
+     * @implNote the messages not sent yet stay in the journal, they are sent at the next startup
+     */
+    @Override
+    public void close() {
+        closed = true;
+        // the retries scheduled are journaled, they are not needed to send the messages again
+        retries.shutdownNow();
+        dispatchers.shutdown();
+        // wakes the idle dispatchers, a dispatcher sending stops once its message is sent
+        for (int i = 0; i < dispatcherCount; i++) {
+            ready.add(STOP);
+        }
+        try {
+            if (!dispatchers.awaitTermination(config.getShutdownTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("... outbox sends still in progress after {}, interrupted ...", config.getShutdownTimeout());
+                dispatchers.shutdownNow();
+            }
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        } finally {
+            journal.close();
+        }
+    }
+
+    private void dispatchLoop() {
+        while (!closed) {
+            OutboxEntry entry;
+            try {
+                entry = ready.take();
+            } catch (InterruptedException interruptedException) {
+                return;
+            }
+            if (closed) {
+                return;
+            }
+            dispatch(entry);
+        }
+    }
+
+    private void dispatch(OutboxEntry entry) {
+        try {
+            MimeMessage message = OutboxMessages.decode(session, journal.read(entry));
+            transport.send(message);
+            attempts.remove(entry.id());
+            journal.ack(entry);
+        } catch (MessagingException | IOException | RuntimeException exception) {
+            int attempt = attempts.merge(entry.id(), 1, Integer::sum);
+            if (attempt >= config.getMaxAttempts()) {
+                log.error("... outbox message {} dropped after {} attempts: {} ...", entry.id(), attempt, exception.getMessage());
+                attempts.remove(entry.id());
+                journal.ack(entry);
+            } else if (!closed) {
+                log.warn("... outbox message {} failed (attempt {}), retrying: {} ...", entry.id(), attempt, exception.getMessage());
+                retries.schedule(() -> ready.add(entry), config.getRetryDelay().toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+}
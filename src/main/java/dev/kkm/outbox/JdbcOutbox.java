@@ -0,0 +1,486 @@
+package dev.kkm.outbox;
+
+import dev.kkm.config.CourierProperties;
+import dev.kkm.service.CourierExecutors;
+import dev.kkm.transport.CourierTransport;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * @implNote outbox stored in a table shared by every node of the application.
+ * Appends are inserted by a single writer thread, which drains every pending append into one batched insert
+ * and one commit. The dispatchers of every node claim pending rows with {@code SELECT ... FOR UPDATE SKIP LOCKED}
+ * (or its equivalent in the dialect of the database): concurrent claims skip each other's rows instead of waiting,
+ * and each claimed row gets a lease in the same transaction. The leases of the rows being sent are renewed every
+ * third of the lease timeout. Rows are sent outside of any transaction and their outcome is written in one batch per claim.
+ * A row holds the message and its envelope recipients, see {@link OutboxMessages}: its blind copies are not lost.
+ * A row whose lease expired, as its node crashed while sending it, is claimed again (at-least-once delivery).
+ * The leases and the retry times are computed by the database on its own clock, see {@link #clockSql}.
+ * <p>
+ * The table is created by one of the {@code dev/kkm/outbox/schema-*.sql} scripts shipped with the starter.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public class JdbcOutbox implements MessageOutbox, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(JdbcOutbox.class);
+    private static final Pattern TABLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)?");
+    private static final Insert CLOSE = new Insert(null, null);
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final DataSource dataSource;
+    private final CourierProperties.Outbox config;
+    private final CourierProperties.Outbox.Jdbc jdbc;
+    private final CourierTransport transport;
+    private final Session session;
+    private final String nodeId;
+    private final String insertSql;
+    private final String claimSql;
+    private final String leaseSql;
+    private final String sentSql;
+    private final String failedSql;
+    private final String releaseSql;
+    private final String renewSql;
+    private final BlockingQueue<Insert> inserts = new LinkedBlockingQueue<>();
+    private final Semaphore wakeUps = new Semaphore(0);
+    private final Thread writer;
+    private final ExecutorService dispatchers;
+    private final int dispatcherCount;
+    private final ScheduledExecutorService leases;
+    private final Set<Claimed> leased = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    /**
+     * @param dataSource data source of the outbox table
+     * @param config outbox settings
+     * @param transport transport the dispatchers send through
+     * @param session mail session used to read back the stored messages
+     */
+    public JdbcOutbox(DataSource dataSource, CourierProperties.Outbox config, CourierTransport transport, Session session) {
+        this.dataSource = dataSource;
+        this.config = config;
+        this.jdbc = config.getJdbc();
+        this.transport = transport;
+        this.session = session;
+        this.nodeId = jdbc.getNodeId() != null ? jdbc.getNodeId() : defaultNodeId();
+
+        String table = jdbc.getTable();
+        if (table == null || !TABLE_NAME.matcher(table).matches()) {
+            throw new IllegalArgumentException("courier.outbox.jdbc.table is not a valid table name: " + table);
+        }
+        CourierProperties.Outbox.Jdbc.Dialect dialect = jdbc.getDialect() != CourierProperties.Outbox.Jdbc.Dialect.AUTO
+                ? jdbc.getDialect() : detectDialect(dataSource);
+        String now = clockSql(dialect, Duration.ZERO);
+        String leaseUntil = clockSql(dialect, jdbc.getLeaseTimeout());
+        this.insertSql = "INSERT INTO " + table + " (payload, recipients, status, attempts, available_at, created_at)"
+                + " VALUES (?, ?, 'PENDING', 0, " + now + ", " + now + ")";
+        this.claimSql = claimSql(dialect, table, Math.max(1, jdbc.getClaimBatch()));
+        this.leaseSql = "UPDATE " + table + " SET lease_owner = ?, lease_until = " + leaseUntil + " WHERE id = ?";
+        this.sentSql = jdbc.isDeleteSent()
+                ? "DELETE FROM " + table + " WHERE id = ? AND lease_owner = ?"
+                : "UPDATE " + table + " SET status = 'SENT', lease_owner = NULL, lease_until = NULL WHERE id = ? AND lease_owner = ?";
+        this.failedSql = "UPDATE " + table + " SET status = ?, attempts = ?, available_at = " + clockSql(dialect, config.getRetryDelay())
+                + ", last_error = ?, lease_owner = NULL, lease_until = NULL WHERE id = ? AND lease_owner = ?";
+        this.releaseSql = "UPDATE " + table + " SET lease_owner = NULL, lease_until = NULL WHERE id = ? AND lease_owner = ?";
+        this.renewSql = "UPDATE " + table + " SET lease_until = " + leaseUntil + " WHERE id = ? AND lease_owner = ?";
+
+        this.writer = CourierExecutors.daemonThreadFactory("courier-outbox-writer").newThread(this::writeLoop);
+        this.writer.start();
+        this.dispatcherCount = Math.max(1, config.getDispatchers());
+        this.dispatchers = Executors.newFixedThreadPool(dispatcherCount, CourierExecutors.daemonThreadFactory("courier-outbox-dispatcher"));
+        for (int i = 0; i < dispatcherCount; i++) {
+            dispatchers.execute(this::dispatchLoop);
+        }
+        long renewPeriod = Math.max(1, jdbc.getLeaseTimeout().toMillis() / 3);
+        this.leases = Executors.newSingleThreadScheduledExecutor(CourierExecutors.daemonThreadFactory("courier-outbox-lease"));
+        this.leases.scheduleWithFixedDelay(this::renewLeases, renewPeriod, renewPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param dialect syntax of the database
+     * @param table outbox table
+     * @param batch maximum number of rows claimed
+     * @return the query selecting and locking the next pending rows, skipping the rows locked by other nodes
+     */
+    static String claimSql(CourierProperties.Outbox.Jdbc.Dialect dialect, String table, int batch) {
+        String columns = "id, payload, recipients, attempts";
+        String now = clockSql(dialect, Duration.ZERO);
+        String pending = " WHERE status = 'PENDING' AND available_at <= " + now + " AND (lease_until IS NULL OR lease_until < " + now + ")";
+        return switch (dialect) {
+            case LIMIT -> "SELECT " + columns + " FROM " + table + pending + " ORDER BY id LIMIT " + batch + " FOR UPDATE SKIP LOCKED";
+            // Oracle locks the rows as they are fetched, the driver stops after the maximum number of rows
+            case ORACLE -> "SELECT " + columns + " FROM " + table + pending + " ORDER BY id FOR UPDATE SKIP LOCKED";
+            case SQL_SERVER -> "SELECT TOP (" + batch + ") " + columns + " FROM " + table + " WITH (UPDLOCK, READPAST, ROWLOCK)"
+                    + pending + " ORDER BY id";
+            default -> "SELECT " + columns + " FROM " + table + pending + " ORDER BY id FETCH FIRST " + batch + " ROWS ONLY FOR UPDATE SKIP LOCKED";
+        };
+    }
+
+    /**
+     * The times of the table are read from the clock of the database, never from the clock of a node:
+     * the leases and the retries of every node are compared on the same clock, whatever their drift or time zone.
+     * They are instants, in a column with a time zone or in UTC when the database has no such column.
+     * @param dialect syntax of the database
+     * @param offset duration added to the current time of the database
+     * @return the SQL expression of the current time of the database plus the offset
+     */
+    static String clockSql(CourierProperties.Outbox.Jdbc.Dialect dialect, Duration offset) {
+        long millis = offset.toMillis();
+        String seconds = BigDecimal.valueOf(millis, 3).toPlainString();
+        return switch (dialect) {
+            case LIMIT -> millis == 0 ? "UTC_TIMESTAMP(3)" : "TIMESTAMPADD(MICROSECOND, " + millis * 1000 + ", UTC_TIMESTAMP(3))";
+            case ORACLE -> millis == 0 ? "SYSTIMESTAMP" : "(SYSTIMESTAMP + NUMTODSINTERVAL(" + seconds + ", 'SECOND'))";
+            case SQL_SERVER -> millis == 0 ? "SYSUTCDATETIME()"
+                    : "DATEADD(MILLISECOND, " + millis % 1000 + ", DATEADD(SECOND, " + millis / 1000 + ", SYSUTCDATETIME()))";
+            default -> millis == 0 ? "CURRENT_TIMESTAMP" : "(CURRENT_TIMESTAMP + INTERVAL '" + seconds + "' SECOND)";
+        };
+    }
+
+    private static CourierProperties.Outbox.Jdbc.Dialect detectDialect(DataSource dataSource) {
+        String product;
+        try (Connection connection = dataSource.getConnection()) {
+            product = connection.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT);
+        } catch (SQLException sqlException) {
+            log.warn("... outbox database not detected, the standard claim query is used: {} ...", sqlException.getMessage());
+            return CourierProperties.Outbox.Jdbc.Dialect.STANDARD;
+        }
+        if (product.contains("mysql") || product.contains("mariadb")) {
+            return CourierProperties.Outbox.Jdbc.Dialect.LIMIT;
+        }
+        if (product.contains("oracle")) {
+            return CourierProperties.Outbox.Jdbc.Dialect.ORACLE;
+        }
+        if (product.contains("sql server")) {
+            return CourierProperties.Outbox.Jdbc.Dialect.SQL_SERVER;
+        }
+        return CourierProperties.Outbox.Jdbc.Dialect.STANDARD;
+    }
+
+    @Override
+    public void append(MimeMessage message) throws MessagingException, IOException {
+        appendAll(List.of(message));
+    }
+
+    /**
+     * @implNote the messages are inserted together, in the batch of the next commit
+     */
+    @Override
+    public void appendAll(List<MimeMessage> messages) throws MessagingException, IOException {
+        if (closed) {
+            throw new IllegalStateException("outbox is closed");
+        }
+        List<Insert> batch = new ArrayList<>(messages.size());
+        for (MimeMessage message : messages) {
+            batch.add(new Insert(OutboxMessages.wire(message), OutboxMessages.recipients(message)));
+        }
+        inserts.addAll(batch);
+        for (Insert insert : batch) {
+            try {
+                insert.done.join();
+            } catch (CompletionException completionException) {
+                throw new IOException("courier could not be stored in the outbox", completionException.getCause());
+            }
+        }
+    }
+
+    /**
+     * @return name of this node in the lease of its claimed rows
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        inserts.add(CLOSE);
+        try {
+            writer.join();
+            dispatchers.shutdown();
+            // wakes the idle dispatchers, a dispatcher sending releases the rest of its claim
+            wakeUps.release(dispatcherCount);
+            if (!dispatchers.awaitTermination(config.getShutdownTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                dispatchers.shutdownNow();
+            }
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        } finally {
+            leases.shutdownNow();
+        }
+    }
+
+    private void writeLoop() {
+        int maxBatch = Math.max(1, config.getMaxBatch());
+        List<Insert> batch = new ArrayList<>(maxBatch);
+        boolean stop = false;
+        while (!stop) {
+            try {
+                batch.add(inserts.take());
+            } catch (InterruptedException interruptedException) {
+                return;
+            }
+            inserts.drainTo(batch, maxBatch - batch.size());
+            stop = batch.remove(CLOSE);
+            if (batch.isEmpty()) {
+                continue;
+            }
+            try {
+                insert(batch);
+                batch.forEach(insert -> insert.done.complete(null));
+                wakeUps.release(dispatcherCount);
+            } catch (SQLException | RuntimeException exception) {
+                log.error("... outbox insert failed: {} ...", exception.getMessage());
+                batch.forEach(insert -> insert.done.completeExceptionally(exception));
+            }
+            batch.clear();
+        }
+    }
+
+    private void insert(List<Insert> batch) throws SQLException {
+        inTransaction(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(insertSql)) {
+                for (Insert insert : batch) {
+                    statement.setBytes(1, insert.payload);
+                    statement.setString(2, insert.recipients);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            return null;
+        });
+    }
+
+    private void dispatchLoop() {
+        while (!closed) {
+            List<Claimed> claimed;
+            try {
+                claimed = claim();
+            } catch (SQLException | RuntimeException exception) {
+                log.warn("... outbox claim failed: {} ...", exception.getMessage());
+                claimed = List.of();
+            }
+            if (!claimed.isEmpty()) {
+                leased.addAll(claimed);
+                try {
+                    dispatch(claimed);
+                } finally {
+                    claimed.forEach(leased::remove);
+                }
+            }
+            if (claimed.size() < Math.max(1, jdbc.getClaimBatch()) && !closed) {
+                // the table is drained, wait for the next insert of this node or the next poll
+                try {
+                    wakeUps.tryAcquire(jdbc.getPollInterval().toMillis(), TimeUnit.MILLISECONDS);
+                    wakeUps.drainPermits();
+                } catch (InterruptedException interruptedException) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private List<Claimed> claim() throws SQLException {
+        return inTransaction(connection -> {
+            List<Claimed> claimed = new ArrayList<>();
+            try (PreparedStatement select = connection.prepareStatement(claimSql)) {
+                select.setMaxRows(Math.max(1, jdbc.getClaimBatch()));
+                select.setFetchSize(Math.max(1, jdbc.getClaimBatch()));
+                try (ResultSet rows = select.executeQuery()) {
+                    while (rows.next()) {
+                        claimed.add(new Claimed(rows.getLong(1), rows.getBytes(2), rows.getString(3), rows.getInt(4)));
+                    }
+                }
+            }
+            if (!claimed.isEmpty()) {
+                try (PreparedStatement lease = connection.prepareStatement(leaseSql)) {
+                    for (Claimed row : claimed) {
+                        lease.setString(1, nodeId);
+                        lease.setLong(2, row.id);
+                        lease.addBatch();
+                    }
+                    lease.executeBatch();
+                }
+            }
+            return claimed;
+        });
+    }
+
+    /**
+     * Extends the leases of the rows this node is sending, so that a slow send is not claimed again by another node
+     */
+    private void renewLeases() {
+        List<Claimed> rows = List.copyOf(leased);
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            inTransaction(connection -> {
+                executeBatch(connection, renewSql, rows, (statement, row) -> {
+                    statement.setLong(1, row.id);
+                    statement.setString(2, nodeId);
+                });
+                return null;
+            });
+        } catch (SQLException | RuntimeException exception) {
+            log.warn("... outbox leases of node {} not renewed: {} ...", nodeId, exception.getMessage());
+        }
+    }
+
+    private void dispatch(List<Claimed> claimed) {
+        List<Claimed> sent = new ArrayList<>(claimed.size());
+        List<Claimed> failed = new ArrayList<>();
+        List<Claimed> released = new ArrayList<>();
+        for (Claimed row : claimed) {
+            if (closed) {
+                released.add(row);
+                continue;
+            }
+            try {
+                transport.send(OutboxMessages.read(session, row.payload, row.recipients));
+                sent.add(row);
+            } catch (MessagingException | RuntimeException exception) {
+                // any failure of one row is its own, the rows already sent are still marked
+                row.error = exception.getMessage() != null ? exception.getMessage() : exception.toString();
+                failed.add(row);
+            }
+        }
+        try {
+            mark(sent, failed, released);
+        } catch (SQLException | RuntimeException exception) {
+            // the leases expire and the rows are claimed again
+            log.error("... outbox results of {} rows not written: {} ...", claimed.size(), exception.getMessage());
+        }
+    }
+
+    private void mark(List<Claimed> sent, List<Claimed> failed, List<Claimed> released) throws SQLException {
+        inTransaction(connection -> {
+            executeBatch(connection, sentSql, sent, (statement, row) -> {
+                statement.setLong(1, row.id);
+                statement.setString(2, nodeId);
+            });
+            executeBatch(connection, failedSql, failed, (statement, row) -> {
+                int attempt = row.attempts + 1;
+                boolean dropped = attempt >= config.getMaxAttempts();
+                if (dropped) {
+                    log.error("... outbox message {} dropped after {} attempts: {} ...", row.id, attempt, row.error);
+                } else {
+                    log.warn("... outbox message {} failed (attempt {}), retrying: {} ...", row.id, attempt, row.error);
+                }
+                statement.setString(1, dropped ? "FAILED" : "PENDING");
+                statement.setInt(2, attempt);
+                statement.setString(3, row.error == null || row.error.length() <= MAX_ERROR_LENGTH ? row.error : row.error.substring(0, MAX_ERROR_LENGTH));
+                statement.setLong(4, row.id);
+                statement.setString(5, nodeId);
+            });
+            executeBatch(connection, releaseSql, released, (statement, row) -> {
+                statement.setLong(1, row.id);
+                statement.setString(2, nodeId);
+            });
+            return null;
+        });
+    }
+
+    private static void executeBatch(Connection connection, String sql, List<Claimed> rows, Binder binder) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (Claimed row : rows) {
+                binder.bind(statement, row);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private <T> T inTransaction(Work<T> work) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                T result = work.run(connection);
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException exception) {
+                connection.rollback();
+                throw exception;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (IOException ioException) {
+            host = "courier";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    @FunctionalInterface
+    private interface Work<T> {
+        T run(Connection connection) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface Binder {
+        void bind(PreparedStatement statement, Claimed row) throws SQLException;
+    }
+
+    private static final class Insert {
+        private final byte[] payload;
+        private final String recipients;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private Insert(byte[] payload, String recipients) {
+            this.payload = payload;
+            this.recipients = recipients;
+        }
+    }
+
+    private static final class Claimed {
+        private final long id;
+        private final byte[] payload;
+        private final String recipients;
+        private final int attempts;
+        private String error;
+
+        private Claimed(long id, byte[] payload, String recipients, int attempts) {
+            this.id = id;
+            this.payload = payload;
+            this.recipients = recipients;
+            this.attempts = attempts;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package dev.kkm.outbox;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * @implNote durable store of the messages given to {@code enqueueCourier}: a message is stored before the caller
+ * gets the control back, then sent in the background (at-least-once delivery).
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public interface MessageOutbox {
+
+    /**
+     * Stores the message, it is sent in the background
+     * @param message message ready to be sent
+     */
+    void append(MimeMessage message) throws MessagingException, IOException;
+
+    /**
+     * Stores the messages, they are sent in the background
+     * @param messages messages ready to be sent
+     */
+    default void appendAll(List<MimeMessage> messages) throws MessagingException, IOException {
+        for (MimeMessage message : messages) {
+            append(message);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package dev.kkm.outbox;
+
+/**
+ * Position of a message in the outbox journal
+ * @param id identifier of the message, unique among the messages not yet acknowledged
+ * @param segment segment file holding the message
+ * @param offset position of the serialized message in the segment
+ * @param length size of the serialized message
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public record OutboxEntry(long id, OutboxJournal.Segment segment, long offset, int length) {
+}
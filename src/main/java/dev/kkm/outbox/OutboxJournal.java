@@ -0,0 +1,406 @@
+package dev.kkm.outbox;
+
+import dev.kkm.service.CourierExecutors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * @implNote append-only journal of the outbox, split into segment files.
+ * A record is {@code [int length][byte type][long id][payload][int crc32]}, the crc covering the header and the payload;
+ * a message record holds the serialized message and an ack record marks the message with the same id as done.
+ * Appends are written by a single writer thread which drains every pending append and fsyncs once per batch (group commit).
+ * A batch failing half-written is truncated from its segment, or the writer moves to a new segment when it cannot be,
+ * so that no record is ever appended after a torn one. Recovery still skips a corrupt record to the next valid one.
+ * Sealed segments are deleted oldest first, once all their messages are acknowledged: a segment is never deleted
+ * before an older one, as it may hold the acks of the older one.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public class OutboxJournal implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxJournal.class);
+    private static final byte MESSAGE = 1;
+    private static final byte ACK = 2;
+    private static final byte CLOSE = 3;
+    private static final int HEADER_SIZE = Integer.BYTES + Byte.BYTES + Long.BYTES;
+    private static final String SEGMENT_PREFIX = "outbox-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final long maxSegmentSize;
+    private final int maxBatch;
+    private final BlockingQueue<Write> writes = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final List<OutboxEntry> recovered = new ArrayList<>();
+    private final Deque<Segment> sealed = new ArrayDeque<>();
+    private Segment current;
+    private long nextId;
+    private volatile boolean closed;
+
+    /**
+     * Opens the journal and reads back the messages not acknowledged before the last stop
+     * @param directory directory of the segment files
+     * @param maxSegmentSize size above which a new segment is started
+     * @param maxBatch maximum number of records written per fsync
+     */
+    public OutboxJournal(Path directory, long maxSegmentSize, int maxBatch) {
+        this.directory = directory;
+        this.maxSegmentSize = maxSegmentSize;
+        this.maxBatch = Math.max(1, maxBatch);
+        try {
+            Files.createDirectories(directory);
+            long lastSequence = recover();
+            this.current = Segment.open(directory.resolve(segmentName(lastSequence + 1)), lastSequence + 1);
+        } catch (IOException ioException) {
+            throw new UncheckedIOException("outbox journal could not be opened in " + directory, ioException);
+        }
+        this.writer = CourierExecutors.daemonThreadFactory("courier-outbox-writer").newThread(this::writeLoop);
+        this.writer.start();
+    }
+
+    /**
+     * @return the messages not acknowledged before the last stop, in append order
+     */
+    public List<OutboxEntry> getRecovered() {
+        return List.copyOf(recovered);
+    }
+
+    /**
+     * @param payload serialized message
+     * @return completed with the journal entry once the message is durable on disk
+     */
+    public CompletableFuture<OutboxEntry> append(byte[] payload) {
+        Write write = new Write(MESSAGE, null, payload);
+        submit(write);
+        return write.done;
+    }
+
+    /**
+     * Marks the message as done. Acks are written with the next batch and are not waited for:
+     * an ack lost in a crash only means the message is sent once more.
+     * @param entry entry of the message
+     */
+    public void ack(OutboxEntry entry) {
+        submit(new Write(ACK, entry, null));
+    }
+
+    /**
+     * @param entry entry of the message
+     * @return the serialized message
+     */
+    public byte[] read(OutboxEntry entry) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(entry.length());
+        try (FileChannel channel = FileChannel.open(entry.segment().path, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, entry.offset() + buffer.position()) < 0) {
+                    throw new IOException("outbox record " + entry.id() + " is truncated");
+                }
+            }
+        }
+        return buffer.array();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        // not interrupted: an interrupt during a write would close the channel
+        writes.add(new Write(CLOSE, null, null));
+        try {
+            writer.join();
+            current.channel.close();
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ioException) {
+            log.warn("... outbox segment {} not closed: {} ...", current.path, ioException.getMessage());
+        }
+    }
+
+    private void submit(Write write) {
+        if (closed) {
+            throw new IllegalStateException("outbox journal is closed");
+        }
+        writes.add(write);
+    }
+
+    private void writeLoop() {
+        List<Write> batch = new ArrayList<>(maxBatch);
+        boolean stop = false;
+        while (!stop) {
+            try {
+                batch.add(writes.take());
+            } catch (InterruptedException interruptedException) {
+                return;
+            }
+            writes.drainTo(batch, maxBatch - batch.size());
+            stop = batch.removeIf(write -> write.type == CLOSE);
+            try {
+                writeBatch(batch);
+            } catch (IOException | RuntimeException exception) {
+                log.error("... outbox journal write failed: {} ...", exception.getMessage());
+                discardBatch(batch, exception);
+            }
+            batch.clear();
+        }
+    }
+
+    private void writeBatch(List<Write> batch) throws IOException {
+        boolean durable = false;
+        for (Write write : batch) {
+            if (current.size >= maxSegmentSize) {
+                roll();
+            }
+            if (write.type == MESSAGE) {
+                long id = nextId++;
+                long offset = current.size + HEADER_SIZE;
+                current.write(MESSAGE, id, write.payload);
+                current.pending.incrementAndGet();
+                write.entry = new OutboxEntry(id, current, offset, write.payload.length);
+                durable = true;
+            } else {
+                current.write(ACK, write.ackOf.id(), new byte[0]);
+            }
+        }
+        if (durable || (closed && !batch.isEmpty())) {
+            current.channel.force(false);
+        }
+        current.complete = current.size;
+        boolean acked = false;
+        for (Write write : batch) {
+            if (write.type == MESSAGE) {
+                write.done.complete(write.entry);
+            } else {
+                write.ackOf.segment().pending.decrementAndGet();
+                acked = true;
+            }
+        }
+        if (acked) {
+            deleteAcknowledgedSegments();
+        }
+    }
+
+    /**
+     * Drops the records of a failed batch from the current segment, the records of the segments rolled during the batch
+     * being already durable
+     */
+    private void discardBatch(List<Write> batch, Exception exception) {
+        for (Write write : batch) {
+            if (write.type != MESSAGE) {
+                continue;
+            }
+            if (write.entry != null && write.entry.segment() != current) {
+                write.done.complete(write.entry);
+            } else {
+                if (write.entry != null) {
+                    current.pending.decrementAndGet();
+                }
+                write.done.completeExceptionally(exception);
+            }
+        }
+        try {
+            current.channel.truncate(current.complete);
+            current.channel.position(current.complete);
+            current.size = current.complete;
+        } catch (IOException truncateException) {
+            log.warn("... outbox segment {} not truncated, moving to a new segment: {} ...", current.path, truncateException.getMessage());
+            try {
+                Segment torn = current;
+                current = Segment.open(directory.resolve(segmentName(torn.sequence + 1)), torn.sequence + 1);
+                torn.channel.close();
+                sealed.addLast(torn);
+                deleteAcknowledgedSegments();
+            } catch (IOException rollException) {
+                log.error("... outbox journal could not move to a new segment: {} ...", rollException.getMessage());
+            }
+        }
+    }
+
+    private void roll() throws IOException {
+        Segment full = current;
+        full.channel.force(false);
+        current = Segment.open(directory.resolve(segmentName(full.sequence + 1)), full.sequence + 1);
+        full.channel.close();
+        sealed.addLast(full);
+        deleteAcknowledgedSegments();
+    }
+
+    private void deleteAcknowledgedSegments() {
+        while (!sealed.isEmpty() && sealed.peekFirst().pending.get() == 0) {
+            sealed.pollFirst().delete();
+        }
+    }
+
+    /**
+     * @return the sequence of the last existing segment
+     */
+    private long recover() throws IOException {
+        List<Path> paths;
+        try (Stream<Path> files = Files.list(directory)) {
+            paths = files.filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+
+        Map<Long, OutboxEntry> pending = new LinkedHashMap<>();
+        List<Segment> segments = new ArrayList<>();
+        long lastSequence = 0;
+        for (Path path : paths) {
+            String name = path.getFileName().toString();
+            long sequence = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            Segment segment = new Segment(path, sequence, null);
+            segments.add(segment);
+            lastSequence = Math.max(lastSequence, sequence);
+            scan(segment, pending);
+        }
+
+        for (OutboxEntry entry : pending.values()) {
+            entry.segment().pending.incrementAndGet();
+            recovered.add(entry);
+        }
+        sealed.addAll(segments);
+        deleteAcknowledgedSegments();
+        if (!recovered.isEmpty()) {
+            log.info("... outbox journal recovered {} unsent messages ...", recovered.size());
+        }
+        return lastSequence;
+    }
+
+    private void scan(Segment segment, Map<Long, OutboxEntry> pending) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+            long position = 0;
+            long size = channel.size();
+            long skipped = 0;
+            while (position + HEADER_SIZE + Integer.BYTES <= size) {
+                ByteBuffer record = readRecord(channel, position, size);
+                if (record == null) {
+                    // torn or corrupt record: its length cannot be trusted, the next valid record is searched byte by byte
+                    position++;
+                    skipped++;
+                    continue;
+                }
+                int length = record.getInt(0);
+                byte type = record.get(Integer.BYTES);
+                long id = record.getLong(Integer.BYTES + Byte.BYTES);
+                if (type == MESSAGE) {
+                    pending.put(id, new OutboxEntry(id, segment, position + HEADER_SIZE, length));
+                } else {
+                    pending.remove(id);
+                }
+                nextId = Math.max(nextId, id + 1);
+                position += HEADER_SIZE + length + Integer.BYTES;
+            }
+            skipped += size - position;
+            if (skipped > 0) {
+                log.warn("... outbox segment {} has {} unreadable bytes ...", segment.path, skipped);
+            }
+        }
+    }
+
+    /**
+     * @return the record at the position, or null when it is torn or corrupt
+     */
+    private static ByteBuffer readRecord(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(channel, header, position);
+        int length = header.getInt(0);
+        byte type = header.get(Integer.BYTES);
+        if (length < 0 || (type != MESSAGE && type != ACK) || position + HEADER_SIZE + length + Integer.BYTES > size) {
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + length + Integer.BYTES);
+        readFully(channel, record, position);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, HEADER_SIZE + length);
+        return (int) crc.getValue() == record.getInt(HEADER_SIZE + length) ? record : null;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("outbox segment ended while reading a record");
+            }
+        }
+    }
+
+    private static String segmentName(long sequence) {
+        return String.format("%s%019d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX);
+    }
+
+    /**
+     * one file of the journal
+     */
+    static final class Segment {
+        private final Path path;
+        private final long sequence;
+        private final FileChannel channel;
+        private final AtomicInteger pending = new AtomicInteger();
+        private long size;
+        /**
+         * size of the segment at the end of the last batch fully written
+         */
+        private long complete;
+
+        private Segment(Path path, long sequence, FileChannel channel) {
+            this.path = path;
+            this.sequence = sequence;
+            this.channel = channel;
+        }
+
+        private static Segment open(Path path, long sequence) throws IOException {
+            return new Segment(path, sequence, FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+        }
+
+        private void write(byte type, long id, byte[] payload) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payload.length + Integer.BYTES);
+            buffer.putInt(payload.length).put(type).putLong(id).put(payload);
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), 0, buffer.position());
+            buffer.putInt((int) crc.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                size += channel.write(buffer);
+            }
+        }
+
+        private void delete() {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ioException) {
+                log.warn("... outbox segment {} not deleted: {} ...", path, ioException.getMessage());
+            }
+        }
+    }
+
+    private static final class Write {
+        private final byte type;
+        private final OutboxEntry ackOf;
+        private final byte[] payload;
+        private final CompletableFuture<OutboxEntry> done = new CompletableFuture<>();
+        private OutboxEntry entry;
+
+        private Write(byte type, OutboxEntry ackOf, byte[] payload) {
+            this.type = type;
+            this.ackOf = ackOf;
+            this.payload = payload;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package dev.kkm.outbox;
+
+import dev.kkm.transport.EnvelopeMessage;
+import jakarta.mail.Address;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @implNote stored form of an outbox message: its bytes without the Bcc header, and its envelope recipients apart.
+ * The envelope is the only place where the blind copies of a message written to its wire format or signed are found,
+ * the message is sent back to it as an {@link EnvelopeMessage}.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+final class OutboxMessages {
+
+    private static final String[] ENVELOPE_ONLY_HEADERS = {"Bcc", "Content-Length"};
+
+    private OutboxMessages() {
+    }
+
+    /**
+     * @param message message ready to be sent
+     * @return the message as sent on the wire, without its Bcc header
+     */
+    static byte[] wire(MimeMessage message) throws MessagingException, IOException {
+        message.saveChanges();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        message.writeTo(out, ENVELOPE_ONLY_HEADERS);
+        return out.toByteArray();
+    }
+
+    /**
+     * @param message message ready to be sent
+     * @return the recipients the message is sent to, blind copies included, as an address list
+     */
+    static String recipients(MimeMessage message) throws MessagingException {
+        Address[] recipients = message.getAllRecipients();
+        return recipients != null ? InternetAddress.toString(recipients) : "";
+    }
+
+    /**
+     * @param session mail session of the message
+     * @param wire stored bytes of the message
+     * @param recipients stored recipients of the message
+     * @return the message, sent to the stored recipients
+     */
+    static MimeMessage read(Session session, byte[] wire, String recipients) throws MessagingException {
+        return new EnvelopeMessage(session, wire, InternetAddress.parse(recipients));
+    }
+
+    /**
+     * @param message message ready to be sent
+     * @return the journal record of the message: the length of its recipients, its recipients and its bytes
+     */
+    static byte[] encode(MimeMessage message) throws MessagingException, IOException {
+        byte[] recipients = recipients(message).getBytes(StandardCharsets.UTF_8);
+        byte[] wire = wire(message);
+        return ByteBuffer.allocate(Integer.BYTES + recipients.length + wire.length)
+                .putInt(recipients.length).put(recipients).put(wire)
+                .array();
+    }
+
+    /**
+     * @param session mail session of the message
+     * @param record journal record written by {@link #encode(MimeMessage)}
+     * @return the message, sent to the journaled recipients
+     */
+    static MimeMessage decode(Session session, byte[] record) throws MessagingException {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new MessagingException("outbox record is not a courier: recipients of " + length + " bytes");
+        }
+        String recipients = new String(record, Integer.BYTES, length, StandardCharsets.UTF_8);
+        byte[] wire = new byte[record.length - Integer.BYTES - length];
+        System.arraycopy(record, Integer.BYTES + length, wire, 0, wire.length);
+        return read(session, wire, recipients);
+    }
+}
@@ -0,0 +1,81 @@
+package dev.kkm.reactive;
+
+import dev.kkm.exception.CourierException;
+import dev.kkm.model.CourierDetail;
+import dev.kkm.model.CourierResult;
+import dev.kkm.model.SendResult;
+import dev.kkm.service.CourierService;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @implNote reactive variant of the {@link CourierService}, for WebFlux applications.
+ * Couriers are sent through {@link CourierService#sendCourierAsync(CourierDetail)}: no subscriber thread is blocked
+ * and no {@code publishOn(boundedElastic)} is needed.
+ * A {@link Flux} of couriers is consumed with backpressure: at most {@code concurrency} couriers are requested
+ * from upstream and in progress, so a slow relay, an exhausted connection pool or a rate limit slows the source down
+ * instead of buffering it in memory. Cancelling the subscription stops the couriers not sent yet.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public class ReactiveCourierService {
+
+    private final CourierService courierService;
+    private final int concurrency;
+
+    /**
+     * @param courierService service the couriers are sent with
+     * @param concurrency maximum number of couriers of a stream in progress at a time
+     */
+    public ReactiveCourierService(CourierService courierService, int concurrency) {
+        this.courierService = courierService;
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * Sends the courier when subscribed
+     * @param courierDetail courier to send
+     * @return the message id and recipients once sent, or an error with a {@link CourierException}
+     */
+    public Mono<SendResult> sendCourier(CourierDetail courierDetail) {
+        return Mono.fromFuture(() -> courierService.sendCourierAsync(courierDetail))
+                .onErrorMap(failure -> !(failure instanceof CourierException), ReactiveCourierService::toCourierException);
+    }
+
+    /**
+     * Sends the couriers of the stream, without stopping at the first failure
+     * @param courierDetails couriers to send, requested {@code concurrency} at a time
+     * @return the outcome of every courier as soon as known, in completion order;
+     * {@link CourierResult#getIndex()} is the position of the courier in the stream
+     */
+    public Flux<CourierResult> sendCourier(Publisher<CourierDetail> courierDetails) {
+        return Flux.from(courierDetails)
+                .index()
+                .flatMap(indexed -> send(indexed.getT1().intValue(), indexed.getT2()), concurrency, 1);
+    }
+
+    /**
+     * @return maximum number of couriers of a stream in progress at a time
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    private Mono<CourierResult> send(int index, CourierDetail courierDetail) {
+        long start = System.nanoTime();
+        return sendCourier(courierDetail)
+                .map(sendResult -> CourierResult.success(index, sendResult))
+                .onErrorResume(CourierException.class, courierException ->
+                        Mono.just(CourierResult.failure(index, courierException, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))));
+    }
+
+    private static CourierException toCourierException(Throwable failure) {
+        if (failure instanceof TimeoutException) {
+            return new CourierException("courier not sent within the timeout", 902);
+        }
+        return new CourierException(failure.getMessage(), 901);
+    }
+}
@@ -0,0 +1,45 @@
+package dev.kkm.service;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @implNote factory of the worker executors used by the courier engines.
+ * Virtual threads are used when the running JVM offers them (21+), the starter itself still targets 17
+ * so they are looked up reflectively and a pool of daemon platform threads is used otherwise.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public final class CourierExecutors {
+
+    private CourierExecutors() {}
+
+    /**
+     * @param name prefix of the worker thread names
+     * @param platformThreads size of the platform pool used when virtual threads are not available
+     * @return an executor running one task per virtual thread, or a fixed platform pool
+     */
+    public static ExecutorService newWorkerExecutor(String name, int platformThreads) {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException notAvailable) {
+            return Executors.newFixedThreadPool(Math.max(1, platformThreads), daemonThreadFactory(name));
+        }
+    }
+
+    /**
+     * @param name prefix of the thread names
+     * @return a factory of named daemon threads
+     */
+    public static ThreadFactory daemonThreadFactory(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -2,17 +2,237 @@ package dev.kkm.service;
 
 
 
+import dev.kkm.exception.CourierException;
+import dev.kkm.model.ChunkReport;
+import dev.kkm.model.ChunkResult;
 import dev.kkm.model.CourierDetail;
+import dev.kkm.model.CourierReport;
+import dev.kkm.model.CourierResult;
+import dev.kkm.model.MergeRow;
+import dev.kkm.model.SendResult;
+import dev.kkm.model.StreamReport;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
- * @implNote couriers manager
+ * @implNote couriers manager. Only {@link #sendCourier(CourierDetail)} and {@link #sendCourier(List)} are abstract:
+ * the other operations have a default falling back on them, so that existing implementations keep compiling and working.
+ * The fallbacks do without the starter infrastructure: a merge sends one courier per row, a chunked courier is sent
+ * as one chunk, an enqueued courier is sent before returning and a coalesced courier is sent alone.
+ * With {@code courier.dedup.enabled}, every operation skips the couriers already sent within the window, the merge rows
+ * included; the bulk operations report them as {@link CourierResult#isDuplicate()} results.
  * @version 1.0.0
  * @since  18/04/2025
  * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
  */
 public interface CourierService {
+    /**
+     * Sends the courier, in chunks of {@code courier.chunk.size} recipients when it has more.
+     * With {@code courier.dedup.enabled}, a courier already sent within the window is skipped
+     * @param courierDetail courier to send
+     * @throws dev.kkm.exception.CourierException when the courier, or one of its chunks, could not be sent
+     */
     void sendCourier(CourierDetail courierDetail);
+
+    /**
+     * Builds the courier once and sends it to its recipients in chunks of {@code courier.chunk.size}, in parallel.
+     * The default sends the courier with {@link #sendCourier(CourierDetail)}, as a single chunk
+     * @param courierDetail courier to send
+     * @return the outcome of every chunk and recipient
+     */
+    default ChunkReport sendChunked(CourierDetail courierDetail) {
+        long start = System.nanoTime();
+        List<String> recipients = new ArrayList<>(courierDetail.getRecipients());
+        recipients.addAll(courierDetail.getCc());
+        recipients.addAll(courierDetail.getBcc());
+        ChunkResult chunk;
+        try {
+            sendCourier(courierDetail);
+            chunk = new ChunkResult(0, recipients, List.of(), null, millisSince(start));
+        } catch (CourierException courierException) {
+            chunk = new ChunkResult(0, List.of(), recipients, courierException, millisSince(start));
+        }
+        return new ChunkReport(null, List.of(chunk), millisSince(start));
+    }
+
+    /**
+     * Sends a batch of couriers
+     * @param courierDetails couriers to send
+     * @throws CourierException when a courier of the batch could not be sent
+     */
     void sendCourier(List<CourierDetail> courierDetails);
+
+    /**
+     * Sends a batch of couriers concurrently, without stopping at the first failure
+     * @param courierDetails couriers to send
+     * @return the outcome of every courier, in the order of the batch
+     */
+    default CourierReport sendCouriers(List<CourierDetail> courierDetails) {
+        long start = System.nanoTime();
+        List<CourierResult> results = new ArrayList<>(courierDetails.size());
+        for (int index = 0; index < courierDetails.size(); index++) {
+            long courierStart = System.nanoTime();
+            try {
+                sendCourier(courierDetails.get(index));
+                results.add(CourierResult.success(index, millisSince(courierStart)));
+            } catch (CourierException courierException) {
+                results.add(CourierResult.failure(index, courierException, millisSince(courierStart)));
+            }
+        }
+        return new CourierReport(results, millisSince(start));
+    }
+
+    /**
+     * Sends the couriers of the source as they are pulled, at most {@code courier.bulk.max-in-flight} of them
+     * being held at a time: a courier is garbage as soon as it is sent, whatever the size of the source
+     * @param courierDetails couriers to send, lazily produced (a database cursor for instance), the stream is closed once consumed
+     * @param onResult called with the outcome of every courier as soon as known, from the bulk workers and possibly concurrently
+     * @return the number of couriers sent and the failures
+     */
+    default StreamReport sendStream(Stream<CourierDetail> courierDetails, Consumer<CourierResult> onResult) {
+        try (courierDetails) {
+            return sendStream(courierDetails.iterator(), onResult);
+        }
+    }
+
+    /**
+     * Sends the couriers of the source as they are pulled, see {@link #sendStream(Stream, Consumer)}
+     * @param courierDetails couriers to send, lazily produced
+     * @param onResult called with the outcome of every courier as soon as known
+     * @return the number of couriers sent and the failures
+     */
+    default StreamReport sendStream(Iterator<CourierDetail> courierDetails, Consumer<CourierResult> onResult) {
+        long start = System.nanoTime();
+        long sent = 0;
+        List<CourierResult> failures = new ArrayList<>();
+        for (int index = 0; courierDetails.hasNext(); index++) {
+            long courierStart = System.nanoTime();
+            CourierResult result;
+            try {
+                sendCourier(courierDetails.next());
+                result = CourierResult.success(index, millisSince(courierStart));
+                sent++;
+            } catch (CourierException courierException) {
+                result = CourierResult.failure(index, courierException, millisSince(courierStart));
+                failures.add(result);
+            }
+            onResult.accept(result);
+        }
+        return new StreamReport(sent, failures, millisSince(start));
+    }
+
+    /**
+     * Sends the couriers of the source as they are pulled, see {@link #sendStream(Stream, Consumer)}
+     * @param courierDetails couriers to send, lazily produced
+     * @param onResult called with the outcome of every courier as soon as known
+     * @return the number of couriers sent and the failures
+     */
+    default StreamReport sendStream(Spliterator<CourierDetail> courierDetails, Consumer<CourierResult> onResult) {
+        return sendStream(Spliterators.iterator(courierDetails), onResult);
+    }
+
+    /**
+     * Sends one courier per row, sharing everything but the recipients and the row variables.
+     * The default builds the courier of each row and sends it with {@link #sendCourier(CourierDetail)}
+     * @param skeleton shared sender, subject, template or body, copies, attachments and variables,
+     *                 built with {@link CourierDetail.Builder#buildSkeleton()}
+     * @param rows recipients and variables of each courier, the stream is closed once consumed
+     * @return the outcome of every row, in the order of the stream
+     */
+    default CourierReport sendMerge(CourierDetail skeleton, Stream<MergeRow> rows) {
+        long start = System.nanoTime();
+        List<CourierResult> results = new ArrayList<>();
+        try (rows) {
+            Iterator<MergeRow> iterator = rows.iterator();
+            for (int index = 0; iterator.hasNext(); index++) {
+                long courierStart = System.nanoTime();
+                try {
+                    sendCourier(iterator.next().courierOf(skeleton));
+                    results.add(CourierResult.success(index, millisSince(courierStart)));
+                } catch (CourierException courierException) {
+                    results.add(CourierResult.failure(index, courierException, millisSince(courierStart)));
+                }
+            }
+        }
+        return new CourierReport(results, millisSince(start));
+    }
+
+    /**
+     * Validates and renders the courier, then stores it in the outbox; it is sent in the background.
+     * Requires {@code courier.outbox.enabled=true}; the default sends the courier with {@link #sendCourier(CourierDetail)}
+     * before returning
+     * @param courierDetail courier to send
+     */
+    default void enqueueCourier(CourierDetail courierDetail) {
+        sendCourier(courierDetail);
+    }
+
+    /**
+     * Validates and renders the couriers, then stores them together in the outbox; they are sent in the background.
+     * Requires {@code courier.outbox.enabled=true}; the default sends the couriers with {@link #sendCouriers(List)}
+     * before returning
+     * @param courierDetails couriers to send
+     * @return the outcome of every courier, in the order of the list: a success means stored in the outbox
+     */
+    default CourierReport enqueueCouriers(List<CourierDetail> courierDetails) {
+        return sendCouriers(courierDetails);
+    }
+
+    /**
+     * Sends the courier in the background, in the lane of its priority:
+     * high priority couriers overtake the low priority ones waiting to be sent
+     * @param courierDetail courier to send
+     * @return completed once sent, or exceptionally with a {@link dev.kkm.exception.CourierException}
+     */
+    default CompletableFuture<Void> submitCourier(CourierDetail courierDetail) {
+        return CompletableFuture.runAsync(() -> sendCourier(courierDetail));
+    }
+
+    /**
+     * Groups the courier with the couriers to the same recipients and with the same coalescing key, received within
+     * {@code courier.digest.window}: they are sent as one digest rendered by {@code courier.digest.template}.
+     * Requires {@code courier.digest.enabled=true}; the default sends the courier alone with {@link #submitCourier(CourierDetail)}
+     * @param courierDetail courier to send
+     * @return completed once the digest holding the courier is sent, or exceptionally with a {@link dev.kkm.exception.CourierException}
+     */
+    default CompletableFuture<Void> coalesceCourier(CourierDetail courierDetail) {
+        return submitCourier(courierDetail);
+    }
+
+    /**
+     * Sends the courier on the async executor (virtual threads when available), the caller is not held.
+     * Cancelling the future, or its timeout ({@code courier.async.timeout}), stops the courier if it is not sent yet,
+     * its pending retries included.
+     * @param courierDetail courier to send
+     * @return completed with the message id, timings and recipients once sent,
+     * or exceptionally with a {@link dev.kkm.exception.CourierException}; at once without message id for a duplicate
+     */
+    default CompletableFuture<SendResult> sendCourierAsync(CourierDetail courierDetail) {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            sendCourier(courierDetail);
+            return new SendResult(null, courierDetail.getRecipients(), List.of(), 0, millisSince(start));
+        });
+    }
+
+    /**
+     * Sends the couriers on the async executor, at most {@code courier.async.max-in-flight} at a time
+     * @param courierDetails couriers to send
+     * @return one future per courier, in the order of the list; cancelling one skips or stops that courier only
+     */
+    default List<CompletableFuture<SendResult>> sendCourierAsync(List<CourierDetail> courierDetails) {
+        return courierDetails.stream().map(this::sendCourierAsync).toList();
+    }
+
+    private static long millisSince(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
 }
@@ -1,13 +1,44 @@
 package dev.kkm.service;
 
+import dev.kkm.attachment.AttachmentEncodingCache;
+import dev.kkm.attachment.InlineResourceCache;
+import dev.kkm.attachment.SharedBodyPart;
+import dev.kkm.config.CourierProperties;
+import dev.kkm.dedup.CourierDeduplicator;
+import dev.kkm.dkim.DkimSigner;
+import dev.kkm.digest.DigestCoalescer;
+import dev.kkm.dispatch.PriorityDispatcher;
+import dev.kkm.exception.ChunkedCourierException;
 import dev.kkm.exception.CourierException;
+import dev.kkm.metrics.CourierMetrics;
+import dev.kkm.metrics.CourierSendEvent;
+import dev.kkm.metrics.CourierStageEvent;
+import dev.kkm.mime.WireMessageWriter;
+import dev.kkm.model.ChunkReport;
+import dev.kkm.model.ChunkResult;
 import dev.kkm.model.CourierDetail;
+import dev.kkm.model.CourierReport;
+import dev.kkm.model.CourierResult;
+import dev.kkm.model.MergeRow;
+import dev.kkm.model.SendResult;
+import dev.kkm.model.StreamReport;
+import dev.kkm.outbox.MessageOutbox;
+import dev.kkm.transport.CourierTransport;
+import dev.kkm.transport.EnvelopeMessage;
+import dev.kkm.validation.AddressValidator;
+import dev.kkm.validation.CourierAddresses;
 import jakarta.activation.DataSource;
+import jakarta.mail.Address;
+import jakarta.mail.Message;
 import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
 import jakarta.mail.internet.InternetAddress;
 import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.MimeUtility;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.context.ApplicationContext;
 import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSenderImpl;
@@ -16,98 +47,1060 @@ import org.springframework.stereotype.Service;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.Context;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 @Service
-public class CourierServiceImpl implements CourierService {
+public class CourierServiceImpl implements CourierService, DisposableBean {
 
     private final ApplicationContext applicationContext;
     private final TemplateEngine templateEngine;
+    private final CourierProperties properties;
+    private final ExecutorService bulkExecutor;
+    private final AddressValidator addressValidator;
+    private final ExecutorService ownAsyncExecutor;
+    private Executor asyncExecutor;
+    private CourierTransport transport;
+    private AttachmentEncodingCache attachmentCache;
+    private InlineResourceCache inlineCache;
+    private WireMessageWriter wireWriter;
+    private DkimSigner dkimSigner;
+    private MessageOutbox outbox;
+    private PriorityDispatcher priorityDispatcher;
+    private CourierMetrics metrics = CourierMetrics.NONE;
+    private volatile JavaMailSenderImpl mailSender;
+    private CourierDeduplicator deduplicator;
+    private DigestCoalescer digestCoalescer;
     private static final Logger log = LoggerFactory.getLogger(CourierServiceImpl.class);
+    private static final Session PARSING_SESSION = Session.getInstance(new Properties());
+    private static final String[] ENVELOPE_ONLY_HEADERS = {"Bcc", "Content-Length"};
 
     public CourierServiceImpl( ApplicationContext applicationContext, TemplateEngine templateEngine) {
+        this(applicationContext, templateEngine, new CourierProperties());
+    }
+
+    public CourierServiceImpl(ApplicationContext applicationContext, TemplateEngine templateEngine, CourierProperties properties) {
         this.applicationContext = applicationContext;
         this.templateEngine = templateEngine;
+        this.properties = properties;
+        this.bulkExecutor = CourierExecutors.newWorkerExecutor("courier-bulk", properties.getBulk().getMaxInFlight());
+        this.addressValidator = new AddressValidator(properties.getValidation());
+        this.ownAsyncExecutor = CourierExecutors.newWorkerExecutor("courier-async", properties.getAsync().getPlatformThreads());
+        this.asyncExecutor = ownAsyncExecutor;
+        this.transport = message -> mailSender().send(message);
+    }
+
+    /**
+     * @param deduplicator suppression of the couriers sent twice within {@code courier.dedup.window}
+     */
+    public void setDeduplicator(CourierDeduplicator deduplicator) {
+        this.deduplicator = deduplicator;
+    }
+
+    /**
+     * @param digestCoalescer grouping of the couriers of {@link #coalesceCourier(CourierDetail)} into digests
+     */
+    public void setDigestCoalescer(DigestCoalescer digestCoalescer) {
+        this.digestCoalescer = digestCoalescer;
+    }
+
+    /**
+     * @param mailSender mail sender creating the messages, instead of looking it up in the context
+     */
+    public void setMailSender(JavaMailSenderImpl mailSender) {
+        this.mailSender = Objects.requireNonNull(mailSender, "Mail sender cannot be null");
+    }
+
+    /**
+     * @param transport transport putting the messages on the wire, e.g. a pool of SMTP connections
+     */
+    public void setTransport(CourierTransport transport) {
+        this.transport = Objects.requireNonNull(transport, "Transport cannot be null");
+    }
+
+    /**
+     * @param attachmentCache cache encoding once the attachments shared by several couriers
+     */
+    public void setAttachmentCache(AttachmentEncodingCache attachmentCache) {
+        this.attachmentCache = attachmentCache;
+    }
+
+    /**
+     * @param inlineCache cache encoding once the inline images shared by several couriers
+     */
+    public void setInlineCache(InlineResourceCache inlineCache) {
+        this.inlineCache = inlineCache;
+    }
+
+    /**
+     * @param wireWriter writer of the couriers straight to their wire format, instead of a MIME message tree
+     */
+    public void setWireWriter(WireMessageWriter wireWriter) {
+        this.wireWriter = wireWriter;
+    }
+
+    /**
+     * @param dkimSigner DKIM signer of every courier built
+     */
+    public void setDkimSigner(DkimSigner dkimSigner) {
+        this.dkimSigner = dkimSigner;
+    }
+
+    /**
+     * @param outbox durable outbox of {@link #enqueueCourier(CourierDetail)}
+     */
+    public void setOutbox(MessageOutbox outbox) {
+        this.outbox = outbox;
+    }
+
+    /**
+     * @param priorityDispatcher priority lanes of {@link #submitCourier(CourierDetail)}
+     */
+    public void setPriorityDispatcher(PriorityDispatcher priorityDispatcher) {
+        this.priorityDispatcher = priorityDispatcher;
+    }
+
+    /**
+     * @param asyncExecutor executor of {@link #sendCourierAsync(CourierDetail)}, instead of the starter own one
+     */
+    public void setAsyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = Objects.requireNonNull(asyncExecutor, "Async executor cannot be null");
+    }
+
+    /**
+     * @param metrics metrics of the template rendering, the MIME assembly and the failures
+     */
+    public void setMetrics(CourierMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics, "Metrics cannot be null");
     }
 
     @Override
     public void sendCourier(CourierDetail courierDetail) {
         log.info("... init sendCourier ...");
-        Calendar calendar = Calendar.getInstance();
+        String dedupKey = claim(courierDetail);
+        if (deduplicator != null && dedupKey == null) {
+            return;
+        }
+        try {
+            send(courierDetail);
+        } catch (ChunkedCourierException chunkedCourierException) {
+            // the recipients of the accepted chunks got the courier, sending it again must be taken for a duplicate
+            if (!chunkedCourierException.isPartiallySent()) {
+                release(dedupKey);
+            }
+            throw chunkedCourierException;
+        } catch (RuntimeException runtimeException) {
+            release(dedupKey);
+            throw runtimeException;
+        }
+    }
+
+    private void send(CourierDetail courierDetail) {
+        int recipientCount = countRecipients(courierDetail);
+        CourierSendEvent event = CourierSendEvent.start(courierDetail.getTemplateName(), recipientCount);
+        if (event.isEnabled()) {
+            // the relay of the mail sender, unless the transport names another one
+            CourierSendEvent.relay(mailSender().getHost());
+        }
+        int status = 0;
+        try {
+            if (properties.getChunk().isEnabled() && recipientCount > properties.getChunk().getSize()) {
+                ChunkReport report = sendChunked(courierDetail);
+                if (!report.isAllAccepted()) {
+                    throw new ChunkedCourierException(report);
+                }
+                log.info("... Courier sent successfully ...");
+                return;
+            }
 
             try {
-                MimeMessage message = applicationContext.getBean(JavaMailSenderImpl.class).createMimeMessage();
-                MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-                helper.setSubject(courierDetail.getSubject());
-                helper.setSentDate(calendar.getTime());
-                helper.setFrom(new InternetAddress(courierDetail.getSender(), courierDetail.getOrganizationName()));
+                MimeMessage message = createMessage(courierDetail);
 
-                isValidEmail("sender", courierDetail.getSender());
+                transport.send(message);
 
-                for (String recipient : courierDetail.getRecipients()) {
-                    isValidEmail("recipient", recipient);
-                    helper.addTo(recipient);
-                }
+                log.info("... Courier sent successfully ...");
 
-                if (courierDetail.getCc() != null) {
-                    for (String cc : courierDetail.getCc()) {
-                        isValidEmail("cc", cc);
-                        helper.addCc(cc);
-                    }
-                }
+            } catch (Exception exception) {
+                throw translate(exception);
+            }
+        } catch (CourierException courierException) {
+            status = courierException.getStatus();
+            throw courierException;
+        } finally {
+            event.finish(status);
+        }
+    }
 
-                if (courierDetail.getBcc() != null) {
-                    for (String bcc : courierDetail.getBcc()) {
-                        isValidEmail("bcc", bcc);
-                        helper.addBcc(bcc);
-                    }
-                }
+    /**
+     * @implNote sends the whole batch as {@link #sendCouriers(List)} does, then throws the failure of the first courier not sent
+     */
+    @Override
+    public void sendCourier(List<CourierDetail> courierDetails) {
+        CourierReport report = sendCouriers(courierDetails);
+        if (!report.isAllSent()) {
+            throw report.getFailures().get(0).getError();
+        }
+    }
 
-                if (courierDetail.getTemplateName() != null) {
-                    String processedHtml = processTemplate(courierDetail);
-                    helper.setText(processedHtml, true);
-                } else {
-                    helper.setText(courierDetail.getBody());
-                }
+    /**
+     * @implNote sends the couriers concurrently on the bulk executor, at most {@code courier.bulk.max-in-flight}
+     * of them being rendered or on the wire at the same time. A failing courier does not stop the batch,
+     * its {@link CourierException} is recorded in the report.
+     * The addresses of the whole list are validated first, in parallel, before any courier is rendered or sent.
+     */
+    @Override
+    public CourierReport sendCouriers(List<CourierDetail> courierDetails) {
+        log.info("... init bulk sendCourier of {} couriers ...", courierDetails.size());
+        long start = System.nanoTime();
+        CourierStageEvent validation = CourierStageEvent.start();
+        List<CourierAddresses> addresses = addressValidator.validateAll(courierDetails);
+        validation.finish(CourierMetrics.Stage.VALIDATION);
+        metrics.record(CourierMetrics.Stage.VALIDATION, System.nanoTime() - start);
+        return dispatch(IntStream.range(0, courierDetails.size()).iterator(), courierDetails::get,
+                index -> createMessage(courierDetails.get(index), addresses.get(index).orThrow()));
+    }
+
+    /**
+     * @implNote the message is built and serialized once, without its Bcc header. Every chunk is a view of the same
+     * bytes with its own envelope ({@link EnvelopeMessage}), the chunks are sent concurrently on the bulk executor,
+     * each one on its own connection when the transport is pooled. A failing chunk does not stop the others.
+     */
+    @Override
+    public ChunkReport sendChunked(CourierDetail courierDetail) {
+        long start = System.nanoTime();
+        CompletableFuture<ChunkReport> chunks;
+        try {
+            CourierAddresses addresses = addressValidator.validate(courierDetail);
+            List<InternetAddress> envelope = new ArrayList<>();
+            Collections.addAll(envelope, addresses.to());
+            Collections.addAll(envelope, addresses.cc());
+            Collections.addAll(envelope, addresses.bcc());
+            chunks = sendChunks(createMessage(courierDetail, addresses), envelope.toArray(Address[]::new), start);
+        } catch (Exception exception) {
+            throw translate(exception);
+        }
+        return chunks.join();
+    }
 
-                if (courierDetail.getPriority() != null) {
-                    helper.setPriority(courierDetail.getPriority());
+    /**
+     * Serializes the message once, then sends every chunk of its recipients as a view of the same bytes
+     * @param message message built for all its recipients
+     * @param envelope recipients of the message, blind copies included
+     * @param start start of the send, in nanoseconds
+     * @return the outcome of every chunk, once they are all given up by the transport
+     */
+    private CompletableFuture<ChunkReport> sendChunks(MimeMessage message, Address[] envelope, long start) throws MessagingException, IOException {
+        message.saveChanges();
+        String messageId = message.getMessageID();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        message.writeTo(out, ENVELOPE_ONLY_HEADERS);
+        byte[] wire = out.toByteArray();
+        int chunkSize = Math.max(1, properties.getChunk().getSize());
+
+        List<CompletableFuture<ChunkResult>> futures = new ArrayList<>();
+        for (int from = 0, index = 0; from < envelope.length; from += chunkSize, index++) {
+            Address[] chunk = Arrays.copyOfRange(envelope, from, Math.min(from + chunkSize, envelope.length));
+            int position = index;
+            long chunkStart = System.nanoTime();
+            futures.add(CompletableFuture.supplyAsync(() -> build(chunk, recipients -> new EnvelopeMessage(PARSING_SESSION, wire, recipients)), bulkExecutor)
+                    .thenCompose(transport::sendAsync)
+                    .handle((sent, failure) -> chunkResult(position, chunk, chunkStart, failure)));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).thenApply(done -> {
+            List<ChunkResult> chunks = futures.stream().map(CompletableFuture::join).toList();
+            ChunkReport report = new ChunkReport(messageId, chunks, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            log.info("... chunked send done: {} recipients accepted, {} rejected ...",
+                    report.getAcceptedRecipients().size(), report.getRejectedRecipients().size());
+            return report;
+        });
+    }
+
+    /**
+     * @implNote the sender, cc, bcc and replyTo of the skeleton are validated and parsed once for the whole merge,
+     * its headers are formatted and its attachments encoded once. Each row only renders its body and sets its
+     * recipients, on the bulk executor. Without the attachment cache, the attachments are encoded by a cache
+     * of the merge, closed with it.
+     */
+    @Override
+    public CourierReport sendMerge(CourierDetail skeleton, Stream<MergeRow> rows) {
+        log.info("... init sendMerge of template {} ...", skeleton.getTemplateName());
+        boolean attachments = skeleton.getAttachments() != null && !skeleton.getAttachments().isEmpty();
+        AttachmentEncodingCache mergeCache = attachmentCache == null && attachments ? new AttachmentEncodingCache(properties.getAttachment()) : null;
+        try (rows) {
+            Envelope envelope;
+            MergeParts parts;
+            try {
+                envelope = new Envelope(
+                        new InternetAddress(addressValidator.parse("sender", skeleton.getSender()).getAddress(), skeleton.getOrganizationName()),
+                        addressValidator.parse("cc", skeleton.getCc()),
+                        addressValidator.parse("bcc", skeleton.getBcc()),
+                        skeleton.getReplyTo() == null ? null : addressValidator.parse("replyTo", skeleton.getReplyTo()));
+                parts = mergeParts(skeleton, envelope, mergeCache != null ? mergeCache : attachmentCache);
+            } catch (Exception exception) {
+                throw translate(exception);
+            }
+            return dispatch(rows.iterator(), row -> row.courierOf(skeleton), row -> createMergeMessage(skeleton, envelope, parts, row));
+        } finally {
+            if (mergeCache != null) {
+                mergeCache.close();
+            }
+        }
+    }
+
+    /**
+     * @implNote unlike {@link #sendCouriers(List)} the addresses are validated with each courier, on the bulk executor,
+     * since the source is not known in advance
+     */
+    @Override
+    public StreamReport sendStream(Stream<CourierDetail> courierDetails, Consumer<CourierResult> onResult) {
+        try (courierDetails) {
+            return sendStream(courierDetails.iterator(), onResult);
+        }
+    }
+
+    @Override
+    public StreamReport sendStream(Iterator<CourierDetail> courierDetails, Consumer<CourierResult> onResult) {
+        log.info("... init streamed sendCourier ...");
+        long start = System.nanoTime();
+        AtomicLong sent = new AtomicLong();
+        AtomicLong duplicates = new AtomicLong();
+        List<CourierResult> failures = Collections.synchronizedList(new ArrayList<>());
+        pump(courierDetails, Function.identity(), this::createMessage, result -> {
+            if (result.isSuccess()) {
+                sent.incrementAndGet();
+                if (result.isDuplicate()) {
+                    duplicates.incrementAndGet();
                 }
+            } else {
+                failures.add(result);
+            }
+            onResult.accept(result);
+        });
+        failures.sort(Comparator.comparingInt(CourierResult::getIndex));
+        StreamReport report = new StreamReport(sent.get(), duplicates.get(), failures, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        log.info("... streamed send done: {} sent, {} failed ...", report.getSentCount(), report.getFailedCount());
+        return report;
+    }
+
+    @Override
+    public void enqueueCourier(CourierDetail courierDetail) {
+        if (outbox == null) {
+            throw new CourierException("outbox is not enabled, set courier.outbox.enabled=true");
+        }
+        String dedupKey = claim(courierDetail);
+        if (deduplicator != null && dedupKey == null) {
+            return;
+        }
+        try {
+            outbox.append(createMessage(courierDetail));
+        } catch (Exception exception) {
+            release(dedupKey);
+            throw translate(exception);
+        }
+    }
+
+    /**
+     * @implNote the couriers are built one after the other, then stored together: one batch and one commit
+     * (or one fsync) for the whole list instead of one per courier
+     */
+    @Override
+    public CourierReport enqueueCouriers(List<CourierDetail> courierDetails) {
+        if (outbox == null) {
+            throw new CourierException("outbox is not enabled, set courier.outbox.enabled=true");
+        }
+        long start = System.nanoTime();
+        List<CourierResult> results = new ArrayList<>(courierDetails.size());
+        List<Integer> indexes = new ArrayList<>(courierDetails.size());
+        List<String> dedupKeys = new ArrayList<>(courierDetails.size());
+        List<MimeMessage> messages = new ArrayList<>(courierDetails.size());
+        for (int index = 0; index < courierDetails.size(); index++) {
+            String dedupKey = claim(courierDetails.get(index));
+            if (deduplicator != null && dedupKey == null) {
+                results.add(CourierResult.duplicate(index));
+                continue;
+            }
+            try {
+                messages.add(createMessage(courierDetails.get(index)));
+                indexes.add(index);
+                dedupKeys.add(dedupKey);
+            } catch (Exception exception) {
+                release(dedupKey);
+                results.add(CourierResult.failure(index, translate(exception), 0));
+            }
+        }
+        try {
+            outbox.appendAll(messages);
+            indexes.forEach(index -> results.add(CourierResult.success(index, 0)));
+        } catch (Exception exception) {
+            dedupKeys.forEach(this::release);
+            CourierException courierException = translate(exception);
+            indexes.forEach(index -> results.add(CourierResult.failure(index, courierException, 0)));
+        }
+        results.sort(Comparator.comparingInt(CourierResult::getIndex));
+        CourierReport report = new CourierReport(results, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        log.info("... {} couriers enqueued, {} failed ...", report.getSentCount(), report.getFailedCount());
+        return report;
+    }
 
-                if (courierDetail.getReplyTo() != null) {
-                    isValidEmail("replyTo", courierDetail.getReplyTo());
-                    helper.setReplyTo(courierDetail.getReplyTo());
+    /**
+     * @implNote the courier is built and handed to the transport by a worker, which is freed
+     * while the transport waits between two retries
+     */
+    @Override
+    public CompletableFuture<Void> submitCourier(CourierDetail courierDetail) {
+        String dedupKey = claim(courierDetail);
+        if (deduplicator != null && dedupKey == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> sending;
+        if (priorityDispatcher == null) {
+            sending = CompletableFuture.supplyAsync(() -> build(courierDetail, this::createMessage), bulkExecutor)
+                    .thenCompose(this::sendAsync);
+        } else {
+            sending = priorityDispatcher.submit(courierDetail.getPriority(), () -> sendAsync(build(courierDetail, this::createMessage)))
+                    .thenCompose(Function.identity());
+        }
+        return releaseOnFailure(sending, dedupKey);
+    }
+
+    @Override
+    public CompletableFuture<Void> coalesceCourier(CourierDetail courierDetail) {
+        if (digestCoalescer == null) {
+            throw new CourierException("digest is not enabled, set courier.digest.enabled=true");
+        }
+        return digestCoalescer.add(courierDetail, this::submitCourier);
+    }
+
+    /**
+     * @implNote the courier is built then handed to the transport on the async executor. The stages check whether the
+     * future is already done (cancelled or timed out) before starting, and the transport future is cancelled with it,
+     * which stops the pending retries.
+     */
+    @Override
+    public CompletableFuture<SendResult> sendCourierAsync(CourierDetail courierDetail) {
+        String dedupKey = claim(courierDetail);
+        if (deduplicator != null && dedupKey == null) {
+            return CompletableFuture.completedFuture(SendResult.duplicate());
+        }
+        CompletableFuture<SendResult> result = new CompletableFuture<>();
+        releaseOnFailure(result, dedupKey);
+        try {
+            asyncExecutor.execute(() -> sendAsync(courierDetail, result));
+        } catch (RejectedExecutionException rejectedExecutionException) {
+            result.completeExceptionally(new CourierException("courier rejected by the async executor", 905));
+        }
+        Duration timeout = properties.getAsync().getTimeout();
+        return timeout == null || timeout.isZero() ? result : result.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @implNote a window of {@code courier.async.max-in-flight} couriers: each completion starts the next courier,
+     * no thread waits for a free slot
+     */
+    @Override
+    public List<CompletableFuture<SendResult>> sendCourierAsync(List<CourierDetail> courierDetails) {
+        List<CompletableFuture<SendResult>> results = new ArrayList<>(courierDetails.size());
+        for (int i = 0; i < courierDetails.size(); i++) {
+            results.add(new CompletableFuture<>());
+        }
+        AtomicInteger next = new AtomicInteger();
+        for (int i = 0; i < Math.max(1, properties.getAsync().getMaxInFlight()); i++) {
+            startNext(courierDetails, results, next);
+        }
+        return results;
+    }
+
+    @Override
+    public void destroy() {
+        if (digestCoalescer != null) {
+            // the open digests are sent while the executors still accept them
+            digestCoalescer.flush();
+        }
+        bulkExecutor.shutdown();
+        ownAsyncExecutor.shutdown();
+    }
+
+    /**
+     * @implNote couriers completing at once (duplicates, rejections) are handled by the loop, not by a completion
+     * callback calling this method again, so that a long run of them does not grow the stack
+     */
+    private void startNext(List<CourierDetail> courierDetails, List<CompletableFuture<SendResult>> results, AtomicInteger next) {
+        while (true) {
+            int index = next.getAndIncrement();
+            // couriers cancelled before their turn are skipped
+            while (index < results.size() && results.get(index).isDone()) {
+                index = next.getAndIncrement();
+            }
+            if (index >= results.size()) {
+                return;
+            }
+            CompletableFuture<SendResult> result = results.get(index);
+            CompletableFuture<SendResult> sending = sendCourierAsync(courierDetails.get(index));
+            result.whenComplete((sendResult, failure) -> sending.cancel(false));
+            if (sending.isDone()) {
+                sending.whenComplete((sendResult, failure) -> forward(sendResult, failure, result));
+                continue;
+            }
+            sending.whenComplete((sendResult, failure) -> {
+                forward(sendResult, failure, result);
+                startNext(courierDetails, results, next);
+            });
+            return;
+        }
+    }
+
+    private static <T> void forward(T value, Throwable failure, CompletableFuture<T> result) {
+        if (failure != null) {
+            result.completeExceptionally(failure);
+        } else {
+            result.complete(value);
+        }
+    }
+
+    private void sendAsync(CourierDetail courierDetail, CompletableFuture<SendResult> result) {
+        if (result.isDone()) {
+            return;
+        }
+        long start = System.nanoTime();
+        if (properties.getChunk().isEnabled() && countRecipients(courierDetail) > properties.getChunk().getSize()) {
+            try {
+                ChunkReport report = sendChunked(courierDetail);
+                if (report.getAcceptedRecipients().isEmpty()) {
+                    result.completeExceptionally(new ChunkedCourierException(report));
+                    return;
                 }
+                result.complete(new SendResult(report.getMessageId(), report.getAcceptedRecipients(), report.getRejectedRecipients(),
+                        0, report.getDurationMillis()));
+            } catch (CourierException courierException) {
+                result.completeExceptionally(courierException);
+            }
+            return;
+        }
+
+        MimeMessage message;
+        Address[] recipients;
+        try {
+            message = createMessage(courierDetail);
+            recipients = message.getAllRecipients();
+        } catch (Exception exception) {
+            result.completeExceptionally(translate(exception));
+            return;
+        }
+        long built = System.nanoTime();
+        if (result.isDone()) {
+            return;
+        }
 
-                if (courierDetail.getAttachments() != null) {
-                    for (Map.Entry<String, DataSource> attachment : courierDetail.getAttachments().entrySet()) {
-                        helper.addAttachment(attachment.getKey(), attachment.getValue());
-                    }
+        CompletableFuture<Void> sending = transport.sendAsync(message);
+        result.whenComplete((sendResult, failure) -> sending.cancel(false));
+        sending.whenComplete((sent, failure) -> {
+            ChunkResult outcome = chunkResult(0, recipients != null ? recipients : new Address[0], built, failure);
+            if (outcome.getError() != null && outcome.getAccepted().isEmpty()) {
+                result.completeExceptionally(outcome.getError());
+                return;
+            }
+            result.complete(new SendResult(messageId(message), outcome.getAccepted(), outcome.getRejected(),
+                    TimeUnit.NANOSECONDS.toMillis(built - start), outcome.getDurationMillis()));
+        });
+    }
+
+    /**
+     * @return the key of the courier, null when deduplication is disabled or the courier is a duplicate
+     */
+    private String claim(CourierDetail courierDetail) {
+        if (deduplicator == null) {
+            return null;
+        }
+        String dedupKey = deduplicator.claim(courierDetail);
+        if (dedupKey == null) {
+            log.info("... duplicate courier skipped ...");
+        }
+        return dedupKey;
+    }
+
+    private void release(String dedupKey) {
+        if (deduplicator != null) {
+            deduplicator.release(dedupKey);
+        }
+    }
+
+    /**
+     * a courier not sent is forgotten, so that sending it again is not taken for a duplicate
+     */
+    private <T> CompletableFuture<T> releaseOnFailure(CompletableFuture<T> sending, String dedupKey) {
+        if (dedupKey != null) {
+            sending.whenComplete((sent, failure) -> {
+                if (failure != null) {
+                    release(dedupKey);
                 }
+            });
+        }
+        return sending;
+    }
+
+    /**
+     * @return the mail sender creating the messages, looked up once instead of for every courier
+     */
+    private JavaMailSenderImpl mailSender() {
+        JavaMailSenderImpl sender = mailSender;
+        if (sender == null) {
+            mailSender = sender = applicationContext.getBean(JavaMailSenderImpl.class);
+        }
+        return sender;
+    }
+
+    private static String messageId(MimeMessage message) {
+        try {
+            return message.getMessageID();
+        } catch (MessagingException messagingException) {
+            return null;
+        }
+    }
+
+    /**
+     * Validates the courier and builds its message, rendering its template if any
+     * @param courierDetail courier to build
+     * @return the message ready to be sent
+     */
+    private MimeMessage createMessage(CourierDetail courierDetail) throws MessagingException, UnsupportedEncodingException {
+        long start = System.nanoTime();
+        CourierStageEvent validation = CourierStageEvent.start();
+        CourierAddresses addresses = addressValidator.validate(courierDetail);
+        validation.finish(CourierMetrics.Stage.VALIDATION);
+        metrics.record(CourierMetrics.Stage.VALIDATION, System.nanoTime() - start);
+        return createMessage(courierDetail, addresses);
+    }
+
+    /**
+     * Builds the message of a courier whose addresses are already validated, rendering its template if any
+     * @param courierDetail courier to build
+     * @param addresses parsed addresses of the courier
+     * @return the message ready to be sent
+     */
+    private MimeMessage createMessage(CourierDetail courierDetail, CourierAddresses addresses) throws MessagingException, UnsupportedEncodingException {
+        long start = System.nanoTime();
+        CourierStageEvent event = CourierStageEvent.start();
+        if (wireWriter != null) {
+            String html = courierDetail.getTemplateName() != null ? processTemplate(courierDetail) : null;
+            MimeMessage message = writeMessage(courierDetail, addresses, html, courierDetail.getInlines());
+            event.finish(CourierMetrics.Stage.MIME, courierDetail.getTemplateName(), null);
+            metrics.record(CourierMetrics.Stage.MIME, System.nanoTime() - start);
+            return sign(message);
+        }
+        Calendar calendar = Calendar.getInstance();
+
+        MimeMessage message = mailSender().createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+        helper.setSubject(courierDetail.getSubject());
+        helper.setSentDate(calendar.getTime());
+        helper.setFrom(new InternetAddress(addresses.sender().getAddress(), courierDetail.getOrganizationName()));
+
+        // each recipient list is written once, adding addresses one by one re-parses the header every time
+        message.setRecipients(Message.RecipientType.TO, addresses.to());
+        setRecipients(message, Message.RecipientType.CC, addresses.cc());
+        setRecipients(message, Message.RecipientType.BCC, addresses.bcc());
+
+        String html = null;
+        if (courierDetail.getTemplateName() != null) {
+            html = processTemplate(courierDetail);
+            helper.setText(html, true);
+        } else {
+            helper.setText(courierDetail.getBody());
+        }
+        addInlines(helper, html, courierDetail.getInlines());
+
+        if (courierDetail.getPriority() != null) {
+            helper.setPriority(courierDetail.getPriority());
+        }
+
+        if (addresses.replyTo() != null) {
+            helper.setReplyTo(addresses.replyTo());
+        }
+
+        addAttachments(helper, courierDetail);
+        event.finish(CourierMetrics.Stage.MIME, courierDetail.getTemplateName(), null);
+        metrics.record(CourierMetrics.Stage.MIME, System.nanoTime() - start);
+        return sign(message);
+    }
+
+    /**
+     * Formats the headers shared by the couriers of a merge, and encodes its attachments
+     * @param cache cache encoding the attachments, null when the skeleton has none
+     */
+    private static MergeParts mergeParts(CourierDetail skeleton, Envelope envelope, AttachmentEncodingCache cache)
+            throws MessagingException, UnsupportedEncodingException {
+        // formatted as MimeMessage does, the name and ': ' being taken into account when folding
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Subject", MimeUtility.fold(9, MimeUtility.encodeText(skeleton.getSubject(), "UTF-8", null)));
+        headers.put("From", envelope.from().toString());
+        if (envelope.replyTo() != null) {
+            headers.put("Reply-To", InternetAddress.toString(new Address[]{envelope.replyTo()}, 10));
+        }
+        if (envelope.cc().length > 0) {
+            headers.put("Cc", InternetAddress.toString(envelope.cc(), 4));
+        }
+        if (envelope.bcc().length > 0) {
+            headers.put("Bcc", InternetAddress.toString(envelope.bcc(), 5));
+        }
+        if (skeleton.getPriority() != null) {
+            headers.put("X-Priority", Integer.toString(skeleton.getPriority()));
+        }
+        List<SharedBodyPart> attachments = new ArrayList<>();
+        if (skeleton.getAttachments() != null) {
+            for (Map.Entry<String, DataSource> attachment : skeleton.getAttachments().entrySet()) {
+                SharedBodyPart part = SharedBodyPart.attachment(attachment.getKey(), attachment.getValue());
+                // encoded now rather than by the first rows concurrently
+                part.newBodyPart(cache);
+                attachments.add(part);
+            }
+        }
+        return new MergeParts(headers, attachments, cache);
+    }
+
+    private MimeMessage createMergeMessage(CourierDetail skeleton, Envelope envelope, MergeParts parts, MergeRow row) throws MessagingException {
+        long start = System.nanoTime();
+        CourierStageEvent event = CourierStageEvent.start();
+        if (wireWriter != null) {
+            String html = skeleton.getTemplateName() != null ? processTemplate(skeleton.getTemplateName(), skeleton.getVariables(), row.getVariables()) : null;
+            CourierAddresses addresses = new CourierAddresses(envelope.from(), addressValidator.parse("recipient", row.getRecipients()),
+                    envelope.cc(), envelope.bcc(), envelope.replyTo(), null);
+            MimeMessage message = writeMessage(skeleton, addresses, html, skeleton.getInlines());
+            event.finish(CourierMetrics.Stage.MIME, skeleton.getTemplateName(), null);
+            metrics.record(CourierMetrics.Stage.MIME, System.nanoTime() - start);
+            return sign(message);
+        }
+        MimeMessage message = mailSender().createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+        for (Map.Entry<String, String> header : parts.headers().entrySet()) {
+            message.setHeader(header.getKey(), header.getValue());
+        }
+        message.setSentDate(new Date());
+        message.setRecipients(Message.RecipientType.TO, addressValidator.parse("recipient", row.getRecipients()));
+
+        String html = null;
+        if (skeleton.getTemplateName() != null) {
+            html = processTemplate(skeleton.getTemplateName(), skeleton.getVariables(), row.getVariables());
+            helper.setText(html, true);
+        } else {
+            helper.setText(skeleton.getBody());
+        }
+        addInlines(helper, html, skeleton.getInlines());
+        for (SharedBodyPart attachment : parts.attachments()) {
+            helper.getRootMimeMultipart().addBodyPart(attachment.newBodyPart(parts.cache()));
+        }
+        event.finish(CourierMetrics.Stage.MIME, skeleton.getTemplateName(), null);
+        metrics.record(CourierMetrics.Stage.MIME, System.nanoTime() - start);
+        return sign(message);
+    }
 
-                applicationContext.getBean(JavaMailSenderImpl.class).send(message);
 
-                log.info("... Courier sent successfully ...");
 
-            } catch (MessagingException messagingException) {
-                throw new CourierException(messagingException.getMessage(),901);
-            } catch (MailSendException mailSendException) {
-                if (!Objects.requireNonNull(mailSendException.getMessage()).contains("Invalid Addresses")) {
-                    throw new CourierException("mail not send",902);
+    private static int countRecipients(CourierDetail courierDetail) {
+        return courierDetail.getRecipients().size()
+                + (courierDetail.getCc() != null ? courierDetail.getCc().size() : 0)
+                + (courierDetail.getBcc() != null ? courierDetail.getBcc().size() : 0);
+    }
+
+    /**
+     * @implNote with {@code mail.smtp.sendpartial=true} the relay may accept part of a chunk,
+     * the valid sent addresses of the {@link SendFailedException} are then reported as accepted
+     */
+    private ChunkResult chunkResult(int index, Address[] chunk, long start, Throwable failure) {
+        long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        List<String> recipients = Arrays.stream(chunk).map(address -> ((InternetAddress) address).getAddress()).toList();
+        if (failure == null) {
+            return new ChunkResult(index, recipients, List.of(), null, durationMillis);
+        }
+        CourierException error = toCourierException(failure);
+        Throwable cause = failure;
+        while (cause != null && !(cause instanceof SendFailedException)) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof SendFailedException sendFailed && sendFailed.getValidSentAddresses() != null) {
+            List<String> accepted = Arrays.stream(sendFailed.getValidSentAddresses()).map(Address::toString).toList();
+            List<String> rejected = recipients.stream().filter(recipient -> !accepted.contains(recipient)).toList();
+            return new ChunkResult(index, accepted, rejected, error, durationMillis);
+        }
+        return new ChunkResult(index, List.of(), recipients, error, durationMillis);
+    }
+
+    private static void setRecipients(MimeMessage message, Message.RecipientType type, InternetAddress[] addresses) throws MessagingException {
+        if (addresses.length > 0) {
+            message.setRecipients(type, addresses);
+        }
+    }
+
+    private void addAttachments(MimeMessageHelper helper, CourierDetail courierDetail) throws MessagingException {
+        if (courierDetail.getAttachments() != null) {
+            for (Map.Entry<String, DataSource> attachment : courierDetail.getAttachments().entrySet()) {
+                if (attachmentCache != null) {
+                    helper.getRootMimeMultipart().addBodyPart(attachmentCache.getBodyPart(attachment.getKey(), attachment.getValue()));
                 } else {
-                    throw new CourierException("invalid email address", 903);
+                    helper.addAttachment(attachment.getKey(), attachment.getValue());
                 }
-            } catch (UnsupportedEncodingException unsupportedEncodingException) {
-                throw new CourierException(unsupportedEncodingException.getMessage(), 904);
-            }catch (RuntimeException runtimeException) {
-                throw new CourierException(runtimeException.getMessage(), 905);
             }
+        }
     }
 
-    @Override
-    public void sendCourier(List<CourierDetail> courierDetails) {
-        courierDetails.forEach(this::sendCourier);
+    /**
+     * Embeds the images of the courier, and the shared images of {@code courier.inline.resources} the HTML body references
+     * @param html rendered HTML body, null for a text body
+     * @param inlines images of the courier
+     */
+    private void addInlines(MimeMessageHelper helper, String html, Map<String, String> inlines) throws MessagingException {
+        for (Map.Entry<String, String> inline : embeddedImages(html, inlines).entrySet()) {
+            if (inlineCache != null) {
+                helper.getMimeMultipart().addBodyPart(inlineCache.getBodyPart(inline.getKey(), inline.getValue()));
+            } else {
+                helper.addInline(inline.getKey(), applicationContext.getResource(inline.getValue()));
+            }
+        }
+    }
+
+    /**
+     * @param html rendered HTML body, null for a text body
+     * @param inlines images of the courier
+     * @return the images of the courier, and the shared images of {@code courier.inline.resources} the HTML body references
+     */
+    private Map<String, String> embeddedImages(String html, Map<String, String> inlines) {
+        Map<String, String> shared = properties.getInline().getResources();
+        if (html == null || shared.isEmpty()) {
+            return inlines;
+        }
+        Map<String, String> embedded = new LinkedHashMap<>(inlines);
+        shared.forEach((contentId, location) -> {
+            if (html.contains("cid:" + contentId)) {
+                embedded.putIfAbsent(contentId, location);
+            }
+        });
+        return embedded;
+    }
+
+    /**
+     * Writes the courier straight to its wire format, the message is read back from the bytes without parsing its body
+     * @param courierDetail subject, organization name, priority and attachments of the courier
+     * @param addresses addresses of the courier
+     * @param html rendered HTML body, null for a text body
+     * @param inlines images of the courier
+     * @return the message ready to be sent to every recipient, blind copies included
+     */
+    private MimeMessage writeMessage(CourierDetail courierDetail, CourierAddresses addresses, String html, Map<String, String> inlines) throws MessagingException {
+        ByteBuffer wire = wireWriter.write(courierDetail, addresses, html, embeddedImages(html, inlines));
+        List<Address> envelope = new ArrayList<>(addresses.to().length + addresses.cc().length + addresses.bcc().length);
+        Collections.addAll(envelope, addresses.to());
+        Collections.addAll(envelope, addresses.cc());
+        Collections.addAll(envelope, addresses.bcc());
+        return new EnvelopeMessage(mailSender().getSession(), wire, envelope.toArray(Address[]::new));
+    }
+
+    /**
+     * Signs the message with DKIM, on the thread which built it
+     * @param message message ready to be sent
+     * @return the signed message, or the message itself when DKIM is not enabled
+     */
+    private MimeMessage sign(MimeMessage message) throws MessagingException {
+        if (dkimSigner == null) {
+            return message;
+        }
+        long start = System.nanoTime();
+        CourierStageEvent event = CourierStageEvent.start();
+        MimeMessage signed = dkimSigner.sign(message, mailSender().getSession());
+        event.finish(CourierMetrics.Stage.SIGNATURE);
+        metrics.record(CourierMetrics.Stage.SIGNATURE, System.nanoTime() - start);
+        return signed;
+    }
+
+    /**
+     * @implNote runs the task of every item on the bulk executor, at most {@code courier.bulk.max-in-flight} at a time.
+     * Items are pulled from the iterator only when a slot is free.
+     * A slot is held until the transport gives the message up, but no worker waits while the transport retries.
+     * @param items items to send
+     * @param courierOf courier of one item, identifying it as a duplicate or not
+     * @param factory builds the message of one item
+     * @return the outcome of every item, in the order of the iterator
+     */
+    private <T> CourierReport dispatch(Iterator<T> items, Function<T, CourierDetail> courierOf, MessageFactory<T> factory) {
+        long start = System.nanoTime();
+        List<CourierResult> results = Collections.synchronizedList(new ArrayList<>());
+        pump(items, courierOf, factory, results::add);
+        results.sort(Comparator.comparingInt(CourierResult::getIndex));
+        CourierReport report = new CourierReport(results, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        log.info("... bulk send done: {} sent, {} failed ...", report.getSentCount(), report.getFailedCount());
+        return report;
+    }
+
+    /**
+     * Pulls the items one at a time, when a slot of {@code courier.bulk.max-in-flight} is free, and builds and sends
+     * each on the bulk executor. No reference to an item is kept once its result is published,
+     * returns when every courier is done. A courier with more recipients than {@code courier.chunk.size}
+     * is sent in chunks when chunking is enabled, as {@link #sendCourier(CourierDetail)} does.
+     * With deduplication, a duplicate item is reported at once as a {@link CourierResult#duplicate(int)} without being built.
+     */
+    private <T> void pump(Iterator<T> items, Function<T, CourierDetail> courierOf, MessageFactory<T> factory,
+                          Consumer<CourierResult> onResult) {
+        int maxInFlight = Math.max(1, properties.getBulk().getMaxInFlight());
+        Semaphore inFlight = new Semaphore(maxInFlight);
+
+        int index = 0;
+        while (items.hasNext()) {
+            acquire(inFlight);
+            T item = items.next();
+            int position = index++;
+            String dedupKey = deduplicator != null ? claim(courierOf.apply(item)) : null;
+            if (deduplicator != null && dedupKey == null) {
+                publish(CourierResult.duplicate(position), onResult);
+                inFlight.release();
+                continue;
+            }
+            long itemStart = System.nanoTime();
+            CompletableFuture.supplyAsync(() -> build(item, factory), bulkExecutor)
+                    .thenCompose(message -> sendOrChunk(message, itemStart))
+                    .handle((sent, failure) -> {
+                        if (failure != null && !isPartiallySent(failure)) {
+                            release(dedupKey);
+                        }
+                        return result(position, itemStart, failure);
+                    })
+                    .thenAccept(onResult)
+                    .whenComplete((result, throwable) -> {
+                        if (throwable != null) {
+                            log.warn("... bulk result listener failed: {} ...", throwable.getMessage());
+                        }
+                        inFlight.release();
+                    });
+        }
+        // every slot is back once the last courier is done
+        acquire(inFlight, maxInFlight);
+    }
+
+    private static void publish(CourierResult result, Consumer<CourierResult> onResult) {
+        try {
+            onResult.accept(result);
+        } catch (RuntimeException runtimeException) {
+            log.warn("... bulk result listener failed: {} ...", runtimeException.getMessage());
+        }
+    }
+
+    /**
+     * @return true when the failure is that of a chunked courier some recipients got, it must still be taken for a duplicate
+     */
+    private static boolean isPartiallySent(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        return cause instanceof ChunkedCourierException chunkedCourierException && chunkedCourierException.isPartiallySent();
+    }
+
+    private <T> MimeMessage build(T item, MessageFactory<T> factory) {
+        try {
+            return factory.create(item);
+        } catch (Exception exception) {
+            throw translate(exception);
+        }
+    }
+
+    /**
+     * @return the send of the message, in chunks when it has more recipients than a chunk and chunking is enabled,
+     * failing with a {@link ChunkedCourierException} when a chunk was not accepted
+     */
+    private CompletableFuture<Void> sendOrChunk(MimeMessage message, long start) {
+        if (!properties.getChunk().isEnabled()) {
+            return sendAsync(message);
+        }
+        try {
+            Address[] recipients = message.getAllRecipients();
+            if (recipients == null || recipients.length <= properties.getChunk().getSize()) {
+                return sendAsync(message);
+            }
+            return sendChunks(message, recipients, start).thenCompose(report -> report.isAllAccepted()
+                    ? CompletableFuture.<Void>completedFuture(null)
+                    : CompletableFuture.failedFuture(new ChunkedCourierException(report)));
+        } catch (Exception exception) {
+            return CompletableFuture.failedFuture(translate(exception));
+        }
+    }
+
+    /**
+     * @return the transport send, failing with the {@link CourierException} of the failure
+     */
+    private CompletableFuture<Void> sendAsync(MimeMessage message) {
+        return transport.sendAsync(message)
+                .exceptionallyCompose(failure -> CompletableFuture.failedFuture(toCourierException(failure)));
+    }
+
+    private CourierResult result(int index, long start, Throwable failure) {
+        long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (failure == null) {
+            return CourierResult.success(index, durationMillis);
+        }
+        return CourierResult.failure(index, toCourierException(failure), durationMillis);
+    }
+
+    private CourierException toCourierException(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        if (cause instanceof CourierException courierException) {
+            return courierException;
+        }
+        return cause instanceof Exception exception ? translate(exception) : new CourierException(cause.getMessage(), 905);
+    }
+
+    private static void acquire(Semaphore semaphore) {
+        acquire(semaphore, 1);
+    }
+
+    private static void acquire(Semaphore semaphore, int permits) {
+        try {
+            semaphore.acquire(permits);
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            throw new CourierException("bulk send interrupted", 901);
+        }
+    }
+
+    /**
+     * Maps a failure of the send pipeline to its {@link CourierException} status, and counts it
+     * @param exception failure to map
+     * @return the courier exception to throw
+     */
+    private CourierException translate(Exception exception) {
+        CourierException courierException = toStatus(exception);
+        metrics.failed(courierException.getStatus());
+        return courierException;
+    }
+
+    private static CourierException toStatus(Exception exception) {
+        if (exception instanceof MessagingException messagingException) {
+            return new CourierException(messagingException.getMessage(), 901);
+        }
+        if (exception instanceof MailSendException mailSendException) {
+            if (!Objects.requireNonNull(mailSendException.getMessage()).contains("Invalid Addresses")) {
+                return new CourierException("mail not send", 902);
+            }
+            return new CourierException("invalid email address", 903);
+        }
+        if (exception instanceof UnsupportedEncodingException unsupportedEncodingException) {
+            return new CourierException(unsupportedEncodingException.getMessage(), 904);
+        }
+        if (exception instanceof IOException ioException) {
+            return new CourierException(ioException.getMessage(), 901);
+        }
+        return new CourierException(exception.getMessage(), 905);
     }
 
 
@@ -117,21 +1110,45 @@ public class CourierServiceImpl implements CourierService {
      * @return The HTML generated from the template
      */
     private String processTemplate(CourierDetail courierDetail) {
+        return processTemplate(courierDetail.getTemplateName(), courierDetail.getVariables(), Map.of());
+    }
+
+    /**
+     * @implNote Processes a template model with shared variables overridden by specific ones
+     * @param templateName template to process
+     * @param variables shared variables
+     * @param specificVariables variables of one courier, taking precedence over the shared ones
+     * @return The HTML generated from the template
+     */
+    private String processTemplate(String templateName, Map<String, Object> variables, Map<String, Object> specificVariables) {
+        long start = System.nanoTime();
+        CourierStageEvent event = CourierStageEvent.start();
         Context context = new Context(Locale.getDefault());
-        context.setVariables(courierDetail.getVariables());
-        return templateEngine.process(courierDetail.getTemplateName(), context);
+        context.setVariables(variables);
+        context.setVariables(specificVariables);
+        String html = templateEngine.process(templateName, context);
+        event.finish(CourierMetrics.Stage.TEMPLATE, templateName, null);
+        metrics.record(CourierMetrics.Stage.TEMPLATE, System.nanoTime() - start);
+        return html;
     }
 
     /**
-     * Check if email address is valid
-     * @param fieldName name of field to check
-     * @param email e-mail to check
-     * @throws CourierException when email is invalid
+     * builds the message of one item of a bulk send
      */
-    private void isValidEmail(String fieldName, String email) {
-        boolean isValid =  email != null && email.matches("^[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,}$");
-        if (!isValid) {
-            throw new CourierException(fieldName + " email is invalid");
-        }
+    @FunctionalInterface
+    private interface MessageFactory<T> {
+        MimeMessage create(T item) throws Exception;
+    }
+
+    /**
+     * addresses shared by all the couriers of a merge, parsed once
+     */
+    private record Envelope(InternetAddress from, InternetAddress[] cc, InternetAddress[] bcc, InternetAddress replyTo) {
+    }
+
+    /**
+     * headers and attachments shared by all the couriers of a merge, formatted and encoded once
+     */
+    private record MergeParts(Map<String, String> headers, List<SharedBodyPart> attachments, AttachmentEncodingCache cache) {
     }
 }
@@ -0,0 +1,122 @@
+package dev.kkm.template;
+
+import org.thymeleaf.cache.ICache;
+import org.thymeleaf.cache.ICacheEntryValidityChecker;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @implNote LRU cache of bounded size whose entries expire after a time to live, with hit/miss statistics
+ * @param <K> key type
+ * @param <V> value type
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public class BoundedTemplateCache<K, V> implements ICache<K, V> {
+
+    private final int maxSize;
+    private final long timeToLiveMillis;
+    private final ICacheEntryValidityChecker<? super K, ? super V> validityChecker;
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize maximum number of entries, the least recently used one is evicted above it
+     * @param timeToLive entries older than this are discarded, null or zero to keep them until evicted
+     * @param validityChecker additional validity check, may be null
+     */
+    public BoundedTemplateCache(int maxSize, Duration timeToLive, ICacheEntryValidityChecker<? super K, ? super V> validityChecker) {
+        this.maxSize = Math.max(1, maxSize);
+        this.timeToLiveMillis = timeToLive == null ? 0 : timeToLive.toMillis();
+        this.validityChecker = validityChecker;
+    }
+
+    @Override
+    public synchronized void put(K key, V value) {
+        entries.put(key, new Entry<>(value, System.currentTimeMillis()));
+        if (entries.size() > maxSize) {
+            K eldest = entries.keySet().iterator().next();
+            entries.remove(eldest);
+            evictions.increment();
+        }
+    }
+
+    @Override
+    public V get(K key) {
+        return get(key, validityChecker);
+    }
+
+    @Override
+    public synchronized V get(K key, ICacheEntryValidityChecker<? super K, ? super V> checker) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        boolean expired = timeToLiveMillis > 0 && System.currentTimeMillis() - entry.created > timeToLiveMillis;
+        if (expired || (checker != null && !checker.checkIsValueStillValid(key, entry.value, entry.created))) {
+            entries.remove(key);
+            evictions.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public synchronized void clearKey(K key) {
+        entries.remove(key);
+    }
+
+    @Override
+    public synchronized Set<K> keySet() {
+        return Set.copyOf(entries.keySet());
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return hits over lookups, 0 when the cache was never read
+     */
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * @return snapshot of the cache content and statistics, for logs
+     */
+    @Override
+    public String toString() {
+        return "size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount();
+    }
+
+    private record Entry<V>(V value, long created) {
+    }
+}
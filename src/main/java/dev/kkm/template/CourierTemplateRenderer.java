@@ -0,0 +1,109 @@
+package dev.kkm.template;
+
+import dev.kkm.config.CourierProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.ApplicationContext;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.cache.AbstractCacheManager;
+import org.thymeleaf.cache.ExpressionCacheKey;
+import org.thymeleaf.cache.ICache;
+import org.thymeleaf.cache.TemplateCacheKey;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.engine.TemplateModel;
+import org.thymeleaf.exceptions.TemplateInputException;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.spring6.templateresolver.SpringResourceTemplateResolver;
+import org.thymeleaf.templatemode.TemplateMode;
+
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * @implNote template engine owned by the starter, enabled with {@code courier.template.enabled}, so that courier rendering does not depend on
+ * the cache settings of the host application engine.
+ * Templates are resolved with their own always-cacheable resolver and the parsed templates are kept
+ * in a {@link BoundedTemplateCache}, the dialects of the host engine are reused.
+ * The templates listed in {@code courier.template.preload} are parsed at startup.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public class CourierTemplateRenderer implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(CourierTemplateRenderer.class);
+
+    private final CourierProperties.Template config;
+    private final SpringTemplateEngine templateEngine = new SpringTemplateEngine();
+    private final BoundedTemplateCache<TemplateCacheKey, TemplateModel> templateCache;
+
+    public CourierTemplateRenderer(ApplicationContext applicationContext, ITemplateEngine hostEngine, CourierProperties.Template config) {
+        this.config = config;
+        this.templateCache = new BoundedTemplateCache<>(config.getCacheMaxSize(), config.getCacheTtl(), null);
+
+        SpringResourceTemplateResolver resolver = new SpringResourceTemplateResolver();
+        resolver.setApplicationContext(applicationContext);
+        resolver.setPrefix(config.getPrefix());
+        resolver.setSuffix(config.getSuffix());
+        resolver.setTemplateMode(TemplateMode.HTML);
+        resolver.setCharacterEncoding(config.getEncoding());
+        resolver.setCacheable(true);
+
+        templateEngine.setTemplateResolver(resolver);
+        templateEngine.setMessageSource(applicationContext);
+        templateEngine.setCacheManager(new CourierCacheManager());
+        if (hostEngine instanceof TemplateEngine host) {
+            templateEngine.setDialects(host.getDialects());
+        }
+    }
+
+    /**
+     * @return the engine to render courier templates with
+     */
+    public TemplateEngine getTemplateEngine() {
+        return templateEngine;
+    }
+
+    /**
+     * @return the cache of parsed templates, with its hit/miss statistics
+     */
+    public BoundedTemplateCache<TemplateCacheKey, TemplateModel> getTemplateCache() {
+        return templateCache;
+    }
+
+    /**
+     * Parses the given template and keeps it in cache, so that the first courier using it does not pay the parse
+     * @param templateName name of the template to parse
+     */
+    public void preload(String templateName) {
+        try {
+            templateEngine.process(templateName, new Context(Locale.getDefault()), Writer.nullWriter());
+        } catch (TemplateInputException templateInputException) {
+            log.warn("... template {} could not be preloaded: {} ...", templateName, templateInputException.getMessage());
+        } catch (RuntimeException runtimeException) {
+            // the template is parsed and cached before being processed, only rendering without variables failed
+            log.debug("... template {} preloaded, rendering without variables failed: {} ...", templateName, runtimeException.getMessage());
+        }
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!config.getPreload().isEmpty()) {
+            config.getPreload().forEach(this::preload);
+            log.info("... {} templates preloaded, cache {} ...", config.getPreload().size(), templateCache);
+        }
+    }
+
+    private final class CourierCacheManager extends AbstractCacheManager {
+
+        @Override
+        protected ICache<TemplateCacheKey, TemplateModel> initializeTemplateCache() {
+            return templateCache;
+        }
+
+        @Override
+        protected ICache<ExpressionCacheKey, Object> initializeExpressionCache() {
+            return new BoundedTemplateCache<>(config.getExpressionCacheMaxSize(), null, null);
+        }
+    }
+}
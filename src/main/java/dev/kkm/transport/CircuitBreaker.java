@@ -0,0 +1,88 @@
+package dev.kkm.transport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+
+/**
+ * @implNote circuit breaker of the relay. It opens after {@code failureThreshold} consecutive transient failures,
+ * lets a single trial send go through once {@code openDuration} has elapsed (half-open)
+ * and closes again on the first success.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public class CircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+    private static final long TRIAL_POLL_NANOS = Duration.ofSeconds(1).toNanos();
+
+    /**
+     * state of the breaker
+     */
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = openDuration.toNanos();
+    }
+
+    /**
+     * @return 0 when a send may go to the relay now, otherwise the nanoseconds to wait before asking again
+     */
+    public synchronized long tryAcquire() {
+        return switch (state) {
+            case CLOSED -> 0;
+            case HALF_OPEN -> Math.min(openNanos, TRIAL_POLL_NANOS);
+            case OPEN -> {
+                long remaining = openedAt + openNanos - System.nanoTime();
+                if (remaining > 0) {
+                    yield remaining;
+                }
+                state = State.HALF_OPEN;
+                yield 0;
+            }
+        };
+    }
+
+    /**
+     * Records a message accepted by the relay
+     */
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            log.info("... relay is back, circuit closed ...");
+        }
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    /**
+     * Records a transient failure of the relay
+     */
+    public synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            log.warn("... relay is failing ({} transient failures), circuit open for {} ms ...", failures, openNanos / 1_000_000);
+        }
+    }
+
+    /**
+     * Records a failure not caused by the relay health (e.g. a rejected recipient), freeing a half-open trial
+     */
+    public synchronized void onIgnoredFailure() {
+        if (state == State.HALF_OPEN) {
+            onSuccess();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,34 @@
+package dev.kkm.transport;
+
+import jakarta.mail.internet.MimeMessage;
+import org.springframework.mail.MailException;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @implNote puts a prepared message on the wire
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+@FunctionalInterface
+public interface CourierTransport {
+
+    /**
+     * @param message message ready to be sent, recipients included
+     * @throws MailException when the message could not be sent
+     */
+    void send(MimeMessage message);
+
+    /**
+     * Sends the message without holding the calling thread while the transport waits, e.g. between two retries
+     * @param message message ready to be sent, recipients included
+     * @return completed once the message is sent, or exceptionally with a {@link MailException}
+     */
+    default CompletableFuture<Void> sendAsync(MimeMessage message) {
+        try {
+            send(message);
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException failure) {
+            return CompletableFuture.failedFuture(failure);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package dev.kkm.transport;
+
+import jakarta.mail.Address;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.util.SharedByteArrayInputStream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @implNote message read back from its serialized form and sent to an explicit envelope instead of its headers.
+ * The content is shared with the serialized bytes, not copied: several envelope messages built from the same bytes
+ * send one pre-built MIME body to different recipients. The message is already saved, it is not updated again.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public class EnvelopeMessage extends MimeMessage {
+
+    private final Address[] envelope;
+    private final int wireSize;
+
+    /**
+     * @param session session of the message
+     * @param wire message serialized with {@link MimeMessage#writeTo}, after {@link MimeMessage#saveChanges()}
+     * @param envelope recipients the message is sent to
+     */
+    public EnvelopeMessage(Session session, byte[] wire, Address[] envelope) throws MessagingException {
+        this(session, ByteBuffer.wrap(wire), envelope);
+    }
+
+    /**
+     * @param session session of the message
+     * @param wire message serialized with {@link MimeMessage#writeTo}, from the position to the limit of an array-backed buffer
+     * @param envelope recipients the message is sent to
+     */
+    public EnvelopeMessage(Session session, ByteBuffer wire, Address[] envelope) throws MessagingException {
+        super(session, new SharedByteArrayInputStream(wire.array(), wire.arrayOffset() + wire.position(), wire.remaining()));
+        this.envelope = envelope.clone();
+        this.wireSize = wire.remaining();
+    }
+
+    /**
+     * @return size in bytes of the serialized message, known without serializing it again
+     */
+    public int getWireSize() {
+        return wireSize;
+    }
+
+    @Override
+    public Address[] getAllRecipients() {
+        return envelope.clone();
+    }
+
+    @Override
+    public void saveChanges() {
+        // headers and content were saved before serialization
+    }
+}
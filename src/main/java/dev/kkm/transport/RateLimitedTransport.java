@@ -0,0 +1,109 @@
+package dev.kkm.transport;
+
+import dev.kkm.config.CourierProperties;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @implNote transport limited to a number of messages per second and of recipients per minute.
+ * When the relay answers with a throttling reply (421, 451, 452...) both rates are cut by {@code backoff-factor},
+ * then raised again by {@code recovery-step} every {@code recovery-interval} without throttling,
+ * up to the configured rates (additive increase, multiplicative decrease).
+ * Each relay of a {@link RelayRouter} has its own, so that a throttling relay only slows its own couriers;
+ * closing the transport closes the relay behind it.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public class RateLimitedTransport implements CourierTransport, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(RateLimitedTransport.class);
+
+    private final CourierTransport delegate;
+    private final CourierProperties.RateLimit config;
+    private final TokenBucket messages;
+    private final TokenBucket recipients;
+    private double factor = 1;
+    private long lastAdjustment = System.nanoTime();
+
+    public RateLimitedTransport(CourierTransport delegate, CourierProperties.RateLimit config) {
+        this.delegate = delegate;
+        this.config = config;
+        this.messages = new TokenBucket(config.getMessagesPerSecond(), 1, TimeUnit.SECONDS);
+        this.recipients = new TokenBucket(config.getRecipientsPerMinute(), 1, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public void send(MimeMessage message) {
+        try {
+            messages.acquire(1);
+            recipients.acquire(countRecipients(message));
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            throw new MailSendException("interrupted while waiting for the rate limit", interruptedException);
+        }
+
+        try {
+            delegate.send(message);
+        } catch (MailException mailException) {
+            if (SmtpReplies.isThrottling(mailException)) {
+                throttled();
+            }
+            throw mailException;
+        }
+        recover();
+    }
+
+    /**
+     * @return share of the configured rates currently allowed, 1 when the relay does not throttle
+     */
+    public synchronized double getRateFactor() {
+        return factor;
+    }
+
+    private synchronized void throttled() {
+        factor = Math.max(config.getMinRateFactor(), factor * config.getBackoffFactor());
+        lastAdjustment = System.nanoTime();
+        apply();
+        log.warn("... relay is throttling, rate cut to {}% ...", Math.round(factor * 100));
+    }
+
+    private void recover() {
+        synchronized (this) {
+            if (factor >= 1 || System.nanoTime() - lastAdjustment < config.getRecoveryInterval().toNanos()) {
+                return;
+            }
+            factor = Math.min(1, factor + config.getRecoveryStep());
+            lastAdjustment = System.nanoTime();
+            apply();
+        }
+        log.debug("... relay rate raised to {}% ...", Math.round(factor * 100));
+    }
+
+    /**
+     * Closes the transport behind the limit when it is closeable, such as the connection pool of a relay
+     */
+    @Override
+    public void close() throws Exception {
+        if (delegate instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    private void apply() {
+        messages.setRate(config.getMessagesPerSecond() * factor);
+        recipients.setRate(config.getRecipientsPerMinute() * factor);
+    }
+
+    private static int countRecipients(MimeMessage message) {
+        try {
+            return message.getAllRecipients() != null ? Math.max(1, message.getAllRecipients().length) : 1;
+        } catch (MessagingException messagingException) {
+            return 1;
+        }
+    }
+}
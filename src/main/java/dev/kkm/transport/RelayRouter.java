@@ -0,0 +1,289 @@
+package dev.kkm.transport;
+
+import dev.kkm.config.CourierProperties;
+import dev.kkm.metrics.CourierSendEvent;
+import dev.kkm.service.CourierExecutors;
+import jakarta.mail.Address;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.mail.MailSendException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * @implNote transport spreading the couriers over several SMTP relays.
+ * The eligible relays of a courier are the relays routing its sender domain or priority, or the relays
+ * without routing rules when none does; they are resolved once per (domain, priority) and cached.
+ * Among the healthy eligible relays, one is picked by least in flight or smooth weighted round-robin.
+ * A relay failing {@code failure-threshold} connections in a row, or its periodic connection check, is out of rotation
+ * until it passes a check; a courier whose relay cannot be reached is sent through the next eligible relay.
+ * Replies of the relay (a rejected recipient, a throttling) are not failed over and do not count against the relay.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public class RelayRouter implements CourierTransport, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(RelayRouter.class);
+    private static final int DEFAULT_PRIORITY = 3;
+
+    private final List<Relay> relays;
+    private final CourierProperties.Routing config;
+    private final Map<RouteKey, List<Relay>> routes = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService healthChecker;
+
+    /**
+     * @param relays relays to send through
+     * @param config routing settings
+     */
+    public RelayRouter(List<Relay> relays, CourierProperties.Routing config) {
+        if (relays.isEmpty()) {
+            throw new IllegalArgumentException("courier.routing requires at least one relay");
+        }
+        this.relays = List.copyOf(relays);
+        this.config = config;
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(CourierExecutors.daemonThreadFactory("courier-relay-health"));
+        long period = config.getHealthCheckInterval().toMillis();
+        this.healthChecker.scheduleWithFixedDelay(this::checkHealth, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void send(MimeMessage message) {
+        List<Relay> eligible = routes.computeIfAbsent(routeOf(message), this::resolve);
+        List<Relay> tried = new ArrayList<>(1);
+        RuntimeException lastFailure = null;
+        Relay relay;
+        while ((relay = select(eligible, tried)) != null) {
+            tried.add(relay);
+            relay.inFlight.incrementAndGet();
+            CourierSendEvent.relay(relay.name);
+            try {
+                relay.transport.send(message);
+                relay.consecutiveFailures.set(0);
+                return;
+            } catch (RuntimeException runtimeException) {
+                if (!isConnectionFailure(runtimeException)) {
+                    throw runtimeException;
+                }
+                onConnectionFailure(relay, runtimeException);
+                lastFailure = runtimeException;
+            } finally {
+                relay.inFlight.decrementAndGet();
+            }
+        }
+        throw lastFailure != null ? lastFailure : new MailSendException("no SMTP relay is available, courier not sent");
+    }
+
+    /**
+     * @return the relays, with their state
+     */
+    public List<Relay> getRelays() {
+        return relays;
+    }
+
+    @Override
+    public void close() {
+        healthChecker.shutdownNow();
+        for (Relay relay : relays) {
+            if (relay.transport instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception exception) {
+                    log.warn("... relay {} not closed: {} ...", relay.name, exception.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the healthy relay to send through, or an unhealthy one not tried yet when all are out of rotation
+     */
+    private Relay select(List<Relay> eligible, List<Relay> tried) {
+        List<Relay> candidates = new ArrayList<>(eligible.size());
+        for (Relay relay : eligible) {
+            if (relay.healthy && !tried.contains(relay)) {
+                candidates.add(relay);
+            }
+        }
+        if (candidates.isEmpty()) {
+            // better a relay that may have recovered than no courier at all
+            return tried.isEmpty() && !eligible.isEmpty() ? eligible.get(0) : null;
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        return config.getStrategy() == CourierProperties.Routing.Strategy.WEIGHTED_ROUND_ROBIN
+                ? nextRoundRobin(candidates)
+                : candidates.stream().min(Comparator.comparingDouble(relay -> (double) relay.inFlight.get() / relay.weight)).get();
+    }
+
+    /**
+     * smooth weighted round-robin: every pick raises each candidate by its weight and lowers the picked one
+     * by the total, which interleaves the relays instead of sending bursts to the heaviest
+     */
+    private synchronized Relay nextRoundRobin(List<Relay> candidates) {
+        int total = 0;
+        Relay best = null;
+        for (Relay relay : candidates) {
+            relay.currentWeight += relay.weight;
+            total += relay.weight;
+            if (best == null || relay.currentWeight > best.currentWeight) {
+                best = relay;
+            }
+        }
+        best.currentWeight -= total;
+        return best;
+    }
+
+    private List<Relay> resolve(RouteKey route) {
+        List<Relay> routed = relays.stream().filter(relay -> relay.routes(route)).toList();
+        if (!routed.isEmpty()) {
+            return routed;
+        }
+        List<Relay> general = relays.stream().filter(Relay::isGeneral).toList();
+        return general.isEmpty() ? relays : general;
+    }
+
+    /**
+     * @return true when the relay could not be reached, rather than replied with an error
+     */
+    private static boolean isConnectionFailure(Throwable failure) {
+        return SmtpReplies.replyCode(failure) < 0 && SmtpReplies.isTransient(failure) && !SmtpReplies.isThrottling(failure);
+    }
+
+    private void onConnectionFailure(Relay relay, RuntimeException failure) {
+        if (relay.consecutiveFailures.incrementAndGet() >= config.getFailureThreshold() && relay.healthy) {
+            relay.healthy = false;
+            log.warn("... relay {} out of rotation after {} connection failures: {} ...",
+                    relay.name, relay.consecutiveFailures.get(), failure.getMessage());
+        }
+    }
+
+    private void checkHealth() {
+        for (Relay relay : relays) {
+            boolean healthy;
+            try {
+                relay.healthCheck.check();
+                healthy = true;
+            } catch (Exception exception) {
+                healthy = false;
+                if (relay.healthy) {
+                    log.warn("... relay {} out of rotation, health check failed: {} ...", relay.name, exception.getMessage());
+                }
+            }
+            if (healthy && !relay.healthy) {
+                log.info("... relay {} back in rotation ...", relay.name);
+                relay.consecutiveFailures.set(0);
+            }
+            relay.healthy = healthy;
+        }
+    }
+
+    private static RouteKey routeOf(MimeMessage message) {
+        String domain = null;
+        int priority = DEFAULT_PRIORITY;
+        try {
+            Address[] from = message.getFrom();
+            if (from != null && from.length > 0 && from[0] instanceof InternetAddress address && address.getAddress() != null) {
+                String email = address.getAddress();
+                domain = email.substring(email.lastIndexOf('@') + 1).toLowerCase(Locale.ROOT);
+            }
+            String header = message.getHeader("X-Priority", null);
+            if (header != null && !header.isEmpty() && Character.isDigit(header.charAt(0))) {
+                priority = Character.digit(header.charAt(0), 10);
+            }
+        } catch (MessagingException messagingException) {
+            log.debug("... courier route not read, sent through the general relays: {} ...", messagingException.getMessage());
+        }
+        return new RouteKey(domain, priority);
+    }
+
+    private record RouteKey(String domain, int priority) {
+    }
+
+    /**
+     * connection check of a relay, failing with an exception
+     */
+    @FunctionalInterface
+    public interface HealthCheck {
+        void check() throws Exception;
+    }
+
+    /**
+     * one relay of the router, with its routing rules and state
+     */
+    public static final class Relay {
+        private final String name;
+        private final int weight;
+        private final Set<String> senderDomains;
+        private final Set<Integer> priorities;
+        private final CourierTransport transport;
+        private final HealthCheck healthCheck;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile boolean healthy = true;
+        private int currentWeight;
+
+        /**
+         * @param name name of the relay in logs
+         * @param weight share of the couriers sent through the relay
+         * @param senderDomains sender domains routed to the relay, empty for any
+         * @param priorities priorities routed to the relay, empty for any
+         * @param transport transport of the relay, closed with the router when closeable
+         * @param healthCheck connection check of the relay
+         */
+        public Relay(String name, int weight, List<String> senderDomains, List<Integer> priorities,
+                     CourierTransport transport, HealthCheck healthCheck) {
+            this.name = name;
+            this.weight = Math.max(1, weight);
+            this.senderDomains = senderDomains.stream().map(domain -> domain.toLowerCase(Locale.ROOT)).collect(Collectors.toUnmodifiableSet());
+            this.priorities = Set.copyOf(priorities);
+            this.transport = transport;
+            this.healthCheck = healthCheck;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        /**
+         * @return transport of the relay, behind its rate limit when enabled
+         */
+        public CourierTransport getTransport() {
+            return transport;
+        }
+
+        /**
+         * @return number of couriers currently sent through the relay
+         */
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        private boolean isGeneral() {
+            return senderDomains.isEmpty() && priorities.isEmpty();
+        }
+
+        private boolean routes(RouteKey route) {
+            return !isGeneral()
+                    && (senderDomains.isEmpty() || senderDomains.contains(route.domain()))
+                    && (priorities.isEmpty() || priorities.contains(route.priority()));
+        }
+    }
+}
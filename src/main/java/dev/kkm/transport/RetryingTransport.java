@@ -0,0 +1,211 @@
+package dev.kkm.transport;
+
+import dev.kkm.config.CourierProperties;
+import dev.kkm.service.CourierExecutors;
+import jakarta.mail.Address;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.mail.MailSendException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @implNote transport retrying the transient failures of the relay (4xx replies, lost connections, timeouts)
+ * with an exponential backoff and jitter, permanent failures are thrown at once.
+ * When the relay tells the recipients apart (some sent to, some refused), only the recipients not sent to and refused
+ * with a 4xx reply are retried, so that no recipient gets the message twice; the recipients refused for good fail
+ * the send once the others are done.
+ * The waits are scheduled, no thread is held between two attempts: {@link #sendAsync(MimeMessage)} completes
+ * once the message is sent or given up. While the {@link CircuitBreaker} is open, sends are queued until the
+ * relay is tried again, up to {@code max-queued} of them, the others fail fast.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public class RetryingTransport implements CourierTransport, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(RetryingTransport.class);
+
+    private final CourierTransport delegate;
+    private final CourierProperties.Retry config;
+    private final CircuitBreaker circuitBreaker;
+    private final ExecutorService executor;
+    private final Set<CompletableFuture<Void>> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger queued = new AtomicInteger();
+    private volatile boolean closed;
+
+    /**
+     * @param delegate transport of a single attempt
+     * @param config retry settings
+     * @param platformThreads threads running the retries when virtual threads are not available
+     */
+    public RetryingTransport(CourierTransport delegate, CourierProperties.Retry config, int platformThreads) {
+        this.delegate = delegate;
+        this.config = config;
+        this.circuitBreaker = new CircuitBreaker(config.getFailureThreshold(), config.getOpenDuration());
+        this.executor = CourierExecutors.newWorkerExecutor("courier-retry", platformThreads);
+    }
+
+    @Override
+    public void send(MimeMessage message) {
+        try {
+            sendAsync(message).join();
+        } catch (CompletionException completionException) {
+            if (completionException.getCause() instanceof RuntimeException failure) {
+                throw failure;
+            }
+            throw new MailSendException("courier not sent", completionException.getCause());
+        }
+    }
+
+    /**
+     * @implNote the first attempt runs on the calling thread, the retries on the retry executor
+     */
+    @Override
+    public CompletableFuture<Void> sendAsync(MimeMessage message) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        if (closed) {
+            result.completeExceptionally(new MailSendException("transport is closed"));
+            return result;
+        }
+        pending.add(result);
+        result.whenComplete((ignored, failure) -> pending.remove(result));
+        attempt(message, 1, result, null);
+        return result;
+    }
+
+    /**
+     * @return the circuit breaker of the relay
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @return number of sends waiting for the circuit breaker to close
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        pending.forEach(result -> result.completeExceptionally(new MailSendException("transport closed before the courier was sent")));
+        executor.shutdown();
+    }
+
+    /**
+     * @param refused failure of the recipients refused for good by a previous attempt, null when there is none
+     */
+    private void attempt(MimeMessage message, int attempt, CompletableFuture<Void> result, RuntimeException refused) {
+        if (result.isDone()) {
+            return;
+        }
+        long waitNanos = circuitBreaker.tryAcquire();
+        if (waitNanos > 0) {
+            if (queued.incrementAndGet() > config.getMaxQueued()) {
+                queued.decrementAndGet();
+                result.completeExceptionally(new MailSendException("relay is unavailable (circuit open), courier not sent"));
+                return;
+            }
+            later(jitter(waitNanos), () -> {
+                queued.decrementAndGet();
+                attempt(message, attempt, result, refused);
+            });
+            return;
+        }
+
+        try {
+            delegate.send(message);
+            circuitBreaker.onSuccess();
+            if (refused != null) {
+                result.completeExceptionally(refused);
+            } else {
+                result.complete(null);
+            }
+        } catch (RuntimeException failure) {
+            SendFailedException recipientFailure = SmtpReplies.recipientFailure(failure);
+            if (recipientFailure != null) {
+                retryRecipients(message, attempt, result, failure, recipientFailure, refused);
+                return;
+            }
+            if (!SmtpReplies.isTransient(failure)) {
+                circuitBreaker.onIgnoredFailure();
+                result.completeExceptionally(failure);
+                return;
+            }
+            circuitBreaker.onFailure();
+            if (attempt >= config.getMaxAttempts() || closed) {
+                result.completeExceptionally(failure);
+                return;
+            }
+            long delayNanos = jitter(backoff(attempt));
+            log.warn("... courier send failed (attempt {}), retrying in {} ms: {} ...", attempt,
+                    TimeUnit.NANOSECONDS.toMillis(delayNanos), failure.getMessage());
+            later(delayNanos, () -> attempt(message, attempt + 1, result, refused));
+        }
+    }
+
+    /**
+     * Retries the message to the recipients refused with a 4xx reply or not sent to, the relay itself having answered
+     */
+    private void retryRecipients(MimeMessage message, int attempt, CompletableFuture<Void> result, RuntimeException failure,
+                                 SendFailedException recipientFailure, RuntimeException refused) {
+        circuitBreaker.onIgnoredFailure();
+        Address[] retryable = SmtpReplies.retryableRecipients(recipientFailure);
+        RuntimeException refusedNow = SmtpReplies.refusedRecipients(recipientFailure).length > 0 ? failure : refused;
+        if (retryable.length == 0 || attempt >= config.getMaxAttempts() || closed) {
+            result.completeExceptionally(failure);
+            return;
+        }
+        MimeMessage remaining;
+        try {
+            ByteArrayOutputStream wire = new ByteArrayOutputStream();
+            message.writeTo(wire);
+            remaining = new EnvelopeMessage(message.getSession(), wire.toByteArray(), retryable);
+        } catch (MessagingException | IOException exception) {
+            result.completeExceptionally(new MailSendException("courier could not be prepared for a retry", exception));
+            return;
+        }
+        long delayNanos = jitter(backoff(attempt));
+        log.warn("... courier refused to {} recipients (attempt {}), retrying them in {} ms: {} ...", retryable.length, attempt,
+                TimeUnit.NANOSECONDS.toMillis(delayNanos), failure.getMessage());
+        later(delayNanos, () -> attempt(remaining, attempt + 1, result, refusedNow));
+    }
+
+    private void later(long delayNanos, Runnable task) {
+        try {
+            CompletableFuture.runAsync(task, CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS, executor));
+        } catch (RuntimeException rejected) {
+            // executor shut down, the pending result is failed by close()
+            log.debug("... courier retry not scheduled: {} ...", rejected.getMessage());
+        }
+    }
+
+    /**
+     * @param attempt number of the failed attempt, from 1
+     * @return initial-delay * multiplier^(attempt - 1), capped by max-delay
+     */
+    private long backoff(int attempt) {
+        double delay = config.getInitialDelay().toNanos() * Math.pow(config.getMultiplier(), attempt - 1);
+        return (long) Math.min(delay, config.getMaxDelay().toNanos());
+    }
+
+    /**
+     * @return the delay minus a random share of at most {@code jitter}, so that failed sends do not retry together
+     */
+    private long jitter(long delayNanos) {
+        return (long) (delayNanos * (1 - config.getJitter() * ThreadLocalRandom.current().nextDouble()));
+    }
+}
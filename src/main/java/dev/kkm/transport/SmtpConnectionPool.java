@@ -0,0 +1,233 @@
+package dev.kkm.transport;
+
+import dev.kkm.config.CourierProperties;
+import dev.kkm.metrics.CourierMetrics;
+import dev.kkm.metrics.CourierSendEvent;
+import dev.kkm.metrics.CourierStageEvent;
+import dev.kkm.service.CourierExecutors;
+import jakarta.mail.Address;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @implNote pool of connected and authenticated SMTP transports.
+ * A courier borrows a warm connection instead of paying EHLO/STARTTLS/AUTH for every message,
+ * connections are recycled after {@code max-messages-per-connection} messages, closed when idle for too long
+ * and checked with a NOOP before reuse when they have been idle for more than {@code validation-interval}.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public class SmtpConnectionPool implements CourierTransport, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(SmtpConnectionPool.class);
+
+    private final JavaMailSenderImpl mailSender;
+    private final CourierProperties.Pool config;
+    private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final ScheduledExecutorService evictor;
+    private CourierMetrics metrics = CourierMetrics.NONE;
+    private volatile boolean closed;
+
+    public SmtpConnectionPool(JavaMailSenderImpl mailSender, CourierProperties.Pool config) {
+        this.mailSender = mailSender;
+        this.config = config;
+        this.permits = new Semaphore(Math.max(1, config.getMaxSize()), true);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(CourierExecutors.daemonThreadFactory("courier-smtp-evictor"));
+        long period = config.getEvictionInterval().toMillis();
+        this.evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param metrics metrics of the connection borrowing and of the transmission
+     */
+    public void setMetrics(CourierMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void send(MimeMessage message) {
+        long start = System.nanoTime();
+        CourierStageEvent event = CourierStageEvent.start();
+        PooledConnection connection = borrow();
+        event.finish(CourierMetrics.Stage.CONNECTION, null, mailSender.getHost());
+        metrics.record(CourierMetrics.Stage.CONNECTION, System.nanoTime() - start);
+        boolean reusable = false;
+        try {
+            prepare(message);
+            Address[] recipients = message.getAllRecipients();
+            start = System.nanoTime();
+            event = CourierStageEvent.start();
+            connection.transport.sendMessage(message, recipients);
+            event.finish(CourierMetrics.Stage.TRANSMISSION, null, mailSender.getHost());
+            metrics.record(CourierMetrics.Stage.TRANSMISSION, System.nanoTime() - start);
+            if (message instanceof EnvelopeMessage envelopeMessage) {
+                CourierSendEvent.messageSize(envelopeMessage.getWireSize());
+            }
+            metrics.sent(message);
+            connection.sent++;
+            reusable = true;
+        } catch (SendFailedException sendFailedException) {
+            // the server rejected the envelope, the session itself is still usable
+            reusable = connection.transport.isConnected();
+            throw new MailSendException(sendFailedException.getMessage(), sendFailedException);
+        } catch (MessagingException messagingException) {
+            throw new MailSendException(messagingException.getMessage(), messagingException);
+        } finally {
+            release(connection, reusable);
+        }
+    }
+
+    /**
+     * @return number of connected transports waiting to be borrowed
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * @return number of transports currently borrowed
+     */
+    public int getBorrowedCount() {
+        return Math.max(0, config.getMaxSize() - permits.availablePermits());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            connection.close();
+        }
+    }
+
+    private PooledConnection borrow() {
+        if (closed) {
+            throw new MailSendException("SMTP connection pool is closed");
+        }
+        acquirePermit();
+        try {
+            PooledConnection connection;
+            while ((connection = idle.pollFirst()) != null) {
+                if (isReusable(connection)) {
+                    return connection;
+                }
+                connection.close();
+            }
+            return open();
+        } catch (RuntimeException runtimeException) {
+            permits.release();
+            throw runtimeException;
+        }
+    }
+
+    private void release(PooledConnection connection, boolean reusable) {
+        try {
+            if (reusable && !closed && connection.sent < config.getMaxMessagesPerConnection()) {
+                connection.lastUsed = System.nanoTime();
+                // most recently used first, so that surplus connections age out
+                idle.offerFirst(connection);
+            } else {
+                connection.close();
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void acquirePermit() {
+        try {
+            if (!permits.tryAcquire(config.getBorrowTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new MailSendException("no SMTP connection available after " + config.getBorrowTimeout());
+            }
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            throw new MailSendException("interrupted while waiting for an SMTP connection", interruptedException);
+        }
+    }
+
+    private boolean isReusable(PooledConnection connection) {
+        long idleNanos = System.nanoTime() - connection.lastUsed;
+        if (idleNanos > config.getIdleTimeout().toNanos()) {
+            return false;
+        }
+        // SMTPTransport.isConnected() issues a NOOP, only pay for it once the session may have timed out
+        return idleNanos <= config.getValidationInterval().toNanos() || connection.transport.isConnected();
+    }
+
+    private PooledConnection open() {
+        Session session = mailSender.getSession();
+        try {
+            String protocol = mailSender.getProtocol();
+            if (protocol == null) {
+                protocol = session.getProperty("mail.transport.protocol");
+            }
+            Transport transport = session.getTransport(protocol != null ? protocol : "smtp");
+            transport.connect(mailSender.getHost(), mailSender.getPort(), mailSender.getUsername(), mailSender.getPassword());
+            log.debug("... SMTP connection opened to {} ...", mailSender.getHost());
+            return new PooledConnection(transport);
+        } catch (MessagingException messagingException) {
+            throw new MailSendException("could not open SMTP connection: " + messagingException.getMessage(), messagingException);
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.nanoTime();
+        List<PooledConnection> expired = new ArrayList<>();
+        for (PooledConnection connection : idle) {
+            if (now - connection.lastUsed > config.getIdleTimeout().toNanos() && idle.remove(connection)) {
+                expired.add(connection);
+            }
+        }
+        expired.forEach(PooledConnection::close);
+    }
+
+    /**
+     * same preparation as {@link JavaMailSenderImpl} does before handing the message to its transport
+     */
+    private static void prepare(MimeMessage message) throws MessagingException {
+        if (message.getSentDate() == null) {
+            message.setSentDate(new Date());
+        }
+        String messageId = message.getMessageID();
+        message.saveChanges();
+        if (messageId != null) {
+            message.setHeader("Message-ID", messageId);
+        }
+    }
+
+    private static final class PooledConnection {
+        private final Transport transport;
+        private int sent;
+        private volatile long lastUsed = System.nanoTime();
+
+        private PooledConnection(Transport transport) {
+            this.transport = transport;
+        }
+
+        private void close() {
+            try {
+                transport.close();
+            } catch (MessagingException messagingException) {
+                log.debug("... SMTP connection closed with error: {} ...", messagingException.getMessage());
+            }
+        }
+    }
+}
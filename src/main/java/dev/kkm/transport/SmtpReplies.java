@@ -0,0 +1,156 @@
+package dev.kkm.transport;
+
+import jakarta.mail.Address;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import org.eclipse.angus.mail.smtp.SMTPAddressFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSenderFailedException;
+import org.eclipse.angus.mail.util.MailConnectException;
+import org.springframework.mail.MailSendException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * @implNote reads the SMTP reply behind a send failure
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public final class SmtpReplies {
+
+    private SmtpReplies() {}
+
+    /**
+     * @param failure failure of a send, with its causes
+     * @return the first SMTP reply code found in the failure, -1 when there is none
+     */
+    public static int replyCode(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = next(cause)) {
+            if (cause instanceof SMTPSendFailedException sendFailed) {
+                return sendFailed.getReturnCode();
+            }
+            if (cause instanceof SMTPAddressFailedException addressFailed) {
+                return addressFailed.getReturnCode();
+            }
+            if (cause instanceof SMTPSenderFailedException senderFailed) {
+                return senderFailed.getReturnCode();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param failure failure of a send
+     * @return true when the server refused the message because the client sends too fast
+     */
+    public static boolean isThrottling(Throwable failure) {
+        int code = replyCode(failure);
+        if (code == 421 || code == 451 || code == 452) {
+            return true;
+        }
+        for (Throwable cause = failure; cause != null; cause = next(cause)) {
+            String message = cause.getMessage() == null ? "" : cause.getMessage().toLowerCase(Locale.ROOT);
+            if (message.contains("too many") || message.contains("rate limit") || message.contains("throttl")
+                    || message.contains("try again later")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param failure failure of a send
+     * @return true when sending the same message again later may succeed: a 4xx reply, a connection
+     * that could not be opened or was lost, a timeout. A 5xx reply or an invalid message is permanent.
+     */
+    public static boolean isTransient(Throwable failure) {
+        int code = replyCode(failure);
+        if (code >= 400) {
+            return code < 500;
+        }
+        for (Throwable cause = failure; cause != null; cause = next(cause)) {
+            if (cause instanceof MailConnectException || cause instanceof IOException) {
+                return true;
+            }
+        }
+        return isThrottling(failure);
+    }
+
+    /**
+     * @param failure failure of a send
+     * @return the failure telling which recipients were sent to and which were refused, null when there is none
+     */
+    public static SendFailedException recipientFailure(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = next(cause)) {
+            if (cause instanceof SendFailedException sendFailed && (sendFailed.getValidSentAddresses() != null
+                    || sendFailed.getValidUnsentAddresses() != null || sendFailed.getInvalidAddresses() != null)) {
+                return sendFailed;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param failure failure telling the recipients apart
+     * @return the recipients the message may still be sent to: those accepted but not sent to,
+     * and those refused with a 4xx reply. The recipients already sent to are never part of them.
+     */
+    public static Address[] retryableRecipients(SendFailedException failure) {
+        List<Address> retryable = new ArrayList<>();
+        if (failure.getValidUnsentAddresses() != null) {
+            retryable.addAll(Arrays.asList(failure.getValidUnsentAddresses()));
+        }
+        Map<Address, Integer> codes = addressReplyCodes(failure);
+        if (failure.getInvalidAddresses() != null) {
+            for (Address address : failure.getInvalidAddresses()) {
+                int code = codes.getOrDefault(address, -1);
+                if (code >= 400 && code < 500) {
+                    retryable.add(address);
+                }
+            }
+        }
+        return retryable.toArray(Address[]::new);
+    }
+
+    /**
+     * @param failure failure telling the recipients apart
+     * @return the recipients refused for good: with a 5xx reply, or without a reply code
+     */
+    public static Address[] refusedRecipients(SendFailedException failure) {
+        if (failure.getInvalidAddresses() == null) {
+            return new Address[0];
+        }
+        Map<Address, Integer> codes = addressReplyCodes(failure);
+        return Arrays.stream(failure.getInvalidAddresses())
+                .filter(address -> codes.getOrDefault(address, -1) < 400 || codes.get(address) >= 500)
+                .toArray(Address[]::new);
+    }
+
+    private static Map<Address, Integer> addressReplyCodes(SendFailedException failure) {
+        Map<Address, Integer> codes = new HashMap<>();
+        for (Throwable cause = failure.getNextException(); cause != null; cause = next(cause)) {
+            if (cause instanceof SMTPAddressFailedException addressFailed) {
+                codes.put(addressFailed.getAddress(), addressFailed.getReturnCode());
+            }
+        }
+        return codes;
+    }
+
+    private static Throwable next(Throwable failure) {
+        if (failure instanceof MessagingException messagingException && messagingException.getNextException() != null
+                && messagingException.getNextException() != failure) {
+            return messagingException.getNextException();
+        }
+        if (failure.getCause() == null && failure instanceof MailSendException mailSendException
+                && mailSendException.getMessageExceptions().length > 0) {
+            // JavaMailSenderImpl keeps the failure of each message instead of a cause
+            return mailSendException.getMessageExceptions()[0];
+        }
+        return failure.getCause() != failure ? failure.getCause() : null;
+    }
+}
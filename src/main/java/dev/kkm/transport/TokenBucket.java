@@ -0,0 +1,60 @@
+package dev.kkm.transport;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @implNote token bucket refilled continuously. A caller reserves its tokens then sleeps outside of the lock
+ * until they are refilled, so callers are served in arrival order without holding each other.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+final class TokenBucket {
+
+    private final long periodNanos;
+    private double capacity;
+    private double tokensPerNano;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    /**
+     * @param permits tokens refilled per period, also the burst capacity
+     * @param period period of the refill
+     * @param unit unit of the period
+     */
+    TokenBucket(double permits, long period, TimeUnit unit) {
+        this.periodNanos = unit.toNanos(period);
+        setRate(permits);
+        this.tokens = capacity;
+    }
+
+    /**
+     * @param permits new number of tokens refilled per period
+     */
+    synchronized void setRate(double permits) {
+        refill();
+        this.capacity = Math.max(1, permits);
+        this.tokensPerNano = capacity / periodNanos;
+        this.tokens = Math.min(tokens, capacity);
+    }
+
+    /**
+     * Takes tokens, waiting until they are available
+     */
+    void acquire(double permits) throws InterruptedException {
+        long waitNanos = reserve(permits);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private synchronized long reserve(double permits) {
+        refill();
+        tokens -= permits;
+        return tokens >= 0 ? 0 : (long) (-tokens / tokensPerNano);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
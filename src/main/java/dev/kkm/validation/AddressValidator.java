@@ -0,0 +1,162 @@
+package dev.kkm.validation;
+
+import dev.kkm.config.CourierProperties;
+import dev.kkm.exception.CourierException;
+import dev.kkm.model.CourierDetail;
+import jakarta.mail.internet.InternetAddress;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * @implNote validates e-mail addresses with a hand-written scanner, no regular expression nor allocation,
+ * accepting the same addresses as {@code ^[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\.[a-zA-Z]{2,}$}.
+ * A valid address is turned into an {@link InternetAddress} without being parsed again, and kept in a bounded cache:
+ * the same address found in the next couriers is neither scanned nor allocated again.
+ * The cache is emptied when full, which keeps lookups lock-free.
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public class AddressValidator {
+
+    private static final InternetAddress[] NONE = new InternetAddress[0];
+
+    private final CourierProperties.Validation config;
+    private final ConcurrentHashMap<String, InternetAddress> cache = new ConcurrentHashMap<>();
+
+    public AddressValidator(CourierProperties.Validation config) {
+        this.config = config;
+    }
+
+    /**
+     * @param email address to check
+     * @return true when the address is valid
+     */
+    public static boolean isValid(CharSequence email) {
+        if (email == null) {
+            return false;
+        }
+        int length = email.length();
+        int at = -1;
+        for (int i = 0; i < length; i++) {
+            char c = email.charAt(i);
+            if (c == '@') {
+                at = i;
+                break;
+            }
+            if (!isLetterOrDigit(c) && c != '.' && c != '_' && c != '%' && c != '+' && c != '-') {
+                return false;
+            }
+        }
+        if (at < 1) {
+            return false;
+        }
+
+        int lastDot = -1;
+        for (int i = at + 1; i < length; i++) {
+            char c = email.charAt(i);
+            if (c == '.') {
+                lastDot = i;
+            } else if (!isLetterOrDigit(c) && c != '-') {
+                return false;
+            }
+        }
+        // at least one character before the last dot, and a top-level domain of two letters or more
+        if (lastDot < at + 2 || length - lastDot - 1 < 2) {
+            return false;
+        }
+        for (int i = lastDot + 1; i < length; i++) {
+            char c = email.charAt(i);
+            if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param fieldName name of the field, used in the error message
+     * @param email address to parse
+     * @return the parsed address
+     * @throws CourierException when the address is invalid
+     */
+    public InternetAddress parse(String fieldName, String email) {
+        InternetAddress address = email != null ? cache.get(email) : null;
+        if (address != null) {
+            return address;
+        }
+        if (!isValid(email)) {
+            throw new CourierException(fieldName + " email is invalid");
+        }
+        address = new InternetAddress();
+        address.setAddress(email);
+        if (cache.size() >= config.getCacheMaxSize()) {
+            cache.clear();
+        }
+        cache.put(email, address);
+        return address;
+    }
+
+    /**
+     * @param fieldName name of the field, used in the error message
+     * @param emails addresses to parse, may be null
+     * @return the parsed addresses, empty when there is none
+     * @throws CourierException at the first invalid address
+     */
+    public InternetAddress[] parse(String fieldName, List<String> emails) {
+        if (emails == null || emails.isEmpty()) {
+            return NONE;
+        }
+        InternetAddress[] addresses = new InternetAddress[emails.size()];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = parse(fieldName, emails.get(i));
+        }
+        return addresses;
+    }
+
+    /**
+     * Validates every address of the courier: sender, recipients, cc, bcc, then replyTo
+     * @param courierDetail courier to validate
+     * @return the parsed addresses
+     * @throws CourierException at the first invalid address
+     */
+    public CourierAddresses validate(CourierDetail courierDetail) {
+        return new CourierAddresses(
+                parse("sender", courierDetail.getSender()),
+                parse("recipient", courierDetail.getRecipients()),
+                parse("cc", courierDetail.getCc()),
+                parse("bcc", courierDetail.getBcc()),
+                courierDetail.getReplyTo() != null ? parse("replyTo", courierDetail.getReplyTo()) : null,
+                null);
+    }
+
+    /**
+     * Validates a list of couriers, in parallel above {@code courier.validation.parallel-threshold} couriers
+     * @param courierDetails couriers to validate
+     * @return the addresses of every courier in the order of the list, an invalid courier holding its error
+     */
+    public List<CourierAddresses> validateAll(List<CourierDetail> courierDetails) {
+        IntStream indexes = IntStream.range(0, courierDetails.size());
+        if (courierDetails.size() >= config.getParallelThreshold()) {
+            indexes = indexes.parallel();
+        }
+        return indexes.mapToObj(index -> {
+            try {
+                return validate(courierDetails.get(index));
+            } catch (CourierException courierException) {
+                return CourierAddresses.invalid(courierException);
+            }
+        }).toList();
+    }
+
+    /**
+     * @return number of addresses currently cached
+     */
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    private static boolean isLetterOrDigit(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+}
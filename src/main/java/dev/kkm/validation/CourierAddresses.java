@@ -0,0 +1,37 @@
+package dev.kkm.validation;
+
+import dev.kkm.exception.CourierException;
+import jakarta.mail.internet.InternetAddress;
+
+/**
+ * @implNote addresses of a courier, validated and parsed once, or the error of the first invalid one
+ * @param sender address of the sender, without personal name
+ * @param to recipients
+ * @param cc copies, empty when none
+ * @param bcc blind copies, empty when none
+ * @param replyTo reply address, null when none
+ * @param error validation error, null when every address is valid
+ * @author <a href="mailto:maximiliendenver@gmail.com">maximilien kengne kongne</a>
+ */
+public record CourierAddresses(InternetAddress sender, InternetAddress[] to, InternetAddress[] cc, InternetAddress[] bcc,
+                               InternetAddress replyTo, CourierException error) {
+
+    static CourierAddresses invalid(CourierException error) {
+        return new CourierAddresses(null, null, null, null, null, error);
+    }
+
+    public boolean isValid() {
+        return error == null;
+    }
+
+    /**
+     * @return these addresses
+     * @throws CourierException when an address of the courier is invalid
+     */
+    public CourierAddresses orThrow() {
+        if (error != null) {
+            throw error;
+        }
+        return this;
+    }
+}
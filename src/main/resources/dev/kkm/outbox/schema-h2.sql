@@ -0,0 +1,14 @@
+-- outbox table of courier.outbox.store=jdbc, H2 and HSQLDB
+CREATE TABLE courier_outbox (
+    id           BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    payload      BLOB          NOT NULL,
+    recipients   CLOB          NOT NULL, -- envelope recipients, blind copies included
+    status       VARCHAR(16)   NOT NULL, -- PENDING, SENT or FAILED
+    attempts     INT           NOT NULL,
+    available_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    lease_owner  VARCHAR(128),
+    lease_until  TIMESTAMP WITH TIME ZONE,
+    last_error   VARCHAR(1000),
+    created_at   TIMESTAMP WITH TIME ZONE NOT NULL
+);
+CREATE INDEX courier_outbox_pending ON courier_outbox (status, available_at);
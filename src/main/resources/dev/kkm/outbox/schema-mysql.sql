@@ -0,0 +1,14 @@
+-- outbox table of courier.outbox.store=jdbc, MySQL 8 and MariaDB 10.6
+CREATE TABLE courier_outbox (
+    id           BIGINT        NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    payload      LONGBLOB      NOT NULL,
+    recipients   LONGTEXT      NOT NULL, -- envelope recipients, blind copies included
+    status       VARCHAR(16)   NOT NULL, -- PENDING, SENT or FAILED
+    attempts     INT           NOT NULL,
+    available_at DATETIME(3)   NOT NULL, -- UTC, as every time of the table
+    lease_owner  VARCHAR(128),
+    lease_until  DATETIME(3),
+    last_error   VARCHAR(1000),
+    created_at   DATETIME(3)   NOT NULL
+) ENGINE = InnoDB;
+CREATE INDEX courier_outbox_pending ON courier_outbox (status, available_at);
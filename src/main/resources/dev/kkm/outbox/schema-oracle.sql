@@ -0,0 +1,14 @@
+-- outbox table of courier.outbox.store=jdbc, Oracle 12c and later
+CREATE TABLE courier_outbox (
+    id           NUMBER(19)    GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    payload      BLOB          NOT NULL,
+    recipients   CLOB          NOT NULL, -- envelope recipients, blind copies included
+    status       VARCHAR2(16)  NOT NULL, -- PENDING, SENT or FAILED
+    attempts     NUMBER(10)    NOT NULL,
+    available_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    lease_owner  VARCHAR2(128),
+    lease_until  TIMESTAMP WITH TIME ZONE,
+    last_error   VARCHAR2(1000),
+    created_at   TIMESTAMP WITH TIME ZONE NOT NULL
+);
+CREATE INDEX courier_outbox_pending ON courier_outbox (status, available_at);
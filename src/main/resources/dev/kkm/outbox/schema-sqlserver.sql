@@ -0,0 +1,14 @@
+-- outbox table of courier.outbox.store=jdbc, SQL Server
+CREATE TABLE courier_outbox (
+    id           BIGINT         IDENTITY PRIMARY KEY,
+    payload      VARBINARY(MAX) NOT NULL,
+    recipients   VARCHAR(MAX)   NOT NULL, -- envelope recipients, blind copies included
+    status       VARCHAR(16)    NOT NULL, -- PENDING, SENT or FAILED
+    attempts     INT            NOT NULL,
+    available_at DATETIME2      NOT NULL, -- UTC, as every time of the table
+    lease_owner  VARCHAR(128),
+    lease_until  DATETIME2,
+    last_error   VARCHAR(1000),
+    created_at   DATETIME2      NOT NULL
+);
+CREATE INDEX courier_outbox_pending ON courier_outbox (status, available_at);
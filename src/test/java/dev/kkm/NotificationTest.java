@@ -1,32 +1,66 @@
 package dev.kkm;
 
+import dev.kkm.config.CourierProperties;
+import dev.kkm.dedup.CourierDeduplicator;
+import dev.kkm.dedup.InMemoryDeduplicationStore;
+import dev.kkm.exception.ChunkedCourierException;
 import dev.kkm.exception.CourierException;
+import dev.kkm.model.ChunkReport;
 import dev.kkm.model.CourierDetail;
+import dev.kkm.model.CourierReport;
+import dev.kkm.model.MergeRow;
+import dev.kkm.model.SendResult;
+import dev.kkm.model.StreamReport;
+import dev.kkm.mime.WireMessageWriter;
+import dev.kkm.outbox.CourierOutbox;
 import dev.kkm.service.CourierServiceImpl;
 import jakarta.activation.DataSource;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeBodyPart;
 import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.MimeMultipart;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.context.ApplicationContext;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSenderImpl;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.Context;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -44,13 +78,14 @@ class NotificationTest {
     @Mock
     private JavaMailSenderImpl mailSender;
 
-    @InjectMocks
     private CourierServiceImpl courierService;
 
     @BeforeEach
     void setUp() {
+        courierService = new CourierServiceImpl(applicationContext, templateEngine, new CourierProperties());
         when(applicationContext.getBean(JavaMailSenderImpl.class)).thenReturn(mailSender);
-        when(applicationContext.getBean(JavaMailSenderImpl.class).createMimeMessage()).thenReturn(mimeMessage);
+        // couriers with an invalid address are rejected before any message is created
+        lenient().when(applicationContext.getBean(JavaMailSenderImpl.class).createMimeMessage()).thenReturn(mimeMessage);
     }
 
     @Test
@@ -133,6 +168,110 @@ class NotificationTest {
         verify(applicationContext.getBean(JavaMailSenderImpl.class), times(2)).send(any(MimeMessage.class));
     }
 
+    @Test
+    void shouldReportFailuresWithoutStoppingBulkSend() {
+        // Arrange
+        CourierDetail invalid = CourierDetail.builder()
+                .withSender("invalid-email")
+                .addRecipient("client1@example.com")
+                .withSubject("Subject 1")
+                .withBody("Body 1")
+                .withOrganizationName("Organization")
+                .build();
+
+        CourierDetail valid = CourierDetail.builder()
+                .withSender("noreply@company.com")
+                .addRecipient("client2@example.com")
+                .withSubject("Subject 2")
+                .withBody("Body 2")
+                .withOrganizationName("Organization")
+                .build();
+
+        // Act
+        CourierReport report = courierService.sendCouriers(List.of(invalid, valid, valid));
+
+        // Assert
+        assertFalse(report.isAllSent());
+        assertEquals(2, report.getSentCount());
+        assertEquals(0, report.getFailures().get(0).getIndex());
+        assertEquals("sender email is invalid", report.getFailures().get(0).getError().getMessage());
+        verify(applicationContext.getBean(JavaMailSenderImpl.class), times(2)).send(any(MimeMessage.class));
+    }
+
+    @Test
+    void shouldSendLazilyPulledCouriersWithoutKeepingThem() {
+        // Arrange
+        AtomicInteger pulled = new AtomicInteger();
+        Stream<CourierDetail> couriers = IntStream.range(0, 50).mapToObj(i -> {
+            pulled.incrementAndGet();
+            return CourierDetail.builder()
+                    .withSender(i == 7 ? "invalid-email" : "noreply@company.com")
+                    .addRecipient("client" + i + "@example.com")
+                    .withSubject("Subject " + i)
+                    .withBody("Body " + i)
+                    .withOrganizationName("Organization")
+                    .build();
+        });
+        AtomicInteger notified = new AtomicInteger();
+
+        // Act
+        StreamReport report = courierService.sendStream(couriers, result -> notified.incrementAndGet());
+
+        // Assert
+        assertEquals(50, pulled.get());
+        assertEquals(50, notified.get());
+        assertEquals(49, report.getSentCount());
+        assertEquals(7, report.getFailures().get(0).getIndex());
+        verify(applicationContext.getBean(JavaMailSenderImpl.class), times(49)).send(any(MimeMessage.class));
+    }
+
+    @Test
+    void shouldSkipCourierSentTwiceWithinTheDedupWindow() {
+        // Arrange
+        CourierProperties properties = new CourierProperties();
+        courierService.setDeduplicator(new CourierDeduplicator(new InMemoryDeduplicationStore(100), properties.getDedup()));
+        CourierDetail courierDetail = CourierDetail.builder()
+                .withSender("noreply@company.com")
+                .addRecipient("client@example.com")
+                .withSubject("Your Order Confirmation")
+                .withBody("Thank you for your order!")
+                .withOrganizationName("Organization")
+                .build();
+
+        // Act
+        courierService.sendCourier(courierDetail);
+        courierService.sendCourier(courierDetail);
+
+        // Assert
+        verify(applicationContext.getBean(JavaMailSenderImpl.class), times(1)).send(any(MimeMessage.class));
+    }
+
+    @Test
+    void shouldReportDuplicatesOfBulkSendWithoutSendingThem() {
+        // Arrange
+        CourierProperties properties = new CourierProperties();
+        courierService.setDeduplicator(new CourierDeduplicator(new InMemoryDeduplicationStore(100), properties.getDedup()));
+        CourierDetail courierDetail = CourierDetail.builder()
+                .withSender("noreply@company.com")
+                .addRecipient("client@example.com")
+                .withSubject("Your Order Confirmation")
+                .withBody("Thank you for your order!")
+                .withOrganizationName("Organization")
+                .build();
+        courierService.sendCourier(courierDetail);
+
+        // Act
+        CourierReport report = courierService.sendCouriers(List.of(courierDetail, courierDetail));
+        StreamReport streamed = courierService.sendStream(Stream.of(courierDetail), result -> {});
+
+        // Assert
+        verify(applicationContext.getBean(JavaMailSenderImpl.class), times(1)).send(any(MimeMessage.class));
+        assertTrue(report.isAllSent());
+        assertEquals(2, report.getDuplicateCount());
+        assertTrue(report.getResults().get(0).isDuplicate());
+        assertEquals(1, streamed.getDuplicateCount());
+    }
+
     @Test
     void shouldSendEmailWithOrganizationNameSuccessfully() {
         // Arrange
@@ -179,6 +318,290 @@ class NotificationTest {
         verify(applicationContext.getBean(JavaMailSenderImpl.class), times(1)).send(any(MimeMessage.class));
     }
 
+    @Test
+    void shouldCompleteAsyncSendWithItsResult() throws Exception {
+        // Arrange
+        CourierDetail courierDetail = CourierDetail.builder()
+                .withSender("noreply@company.com")
+                .addRecipient("client@example.com")
+                .withSubject("Your Order Confirmation")
+                .withBody("Thank you for your order!")
+                .withOrganizationName("Organization")
+                .build();
+        when(mimeMessage.getAllRecipients()).thenReturn(InternetAddress.parse("client@example.com"));
+        when(mimeMessage.getMessageID()).thenReturn("<1@company.com>");
+
+        // Act
+        SendResult result = courierService.sendCourierAsync(courierDetail).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals("<1@company.com>", result.getMessageId());
+        assertEquals(List.of("client@example.com"), result.getAccepted());
+        assertTrue(result.getRejected().isEmpty());
+        verify(applicationContext.getBean(JavaMailSenderImpl.class), times(1)).send(any(MimeMessage.class));
+    }
+
+    @Test
+    void shouldReportLongRunOfAsyncDuplicatesWithoutGrowingTheStack() throws Exception {
+        // Arrange
+        CourierProperties properties = new CourierProperties();
+        properties.getAsync().setMaxInFlight(1);
+        CourierServiceImpl service = new CourierServiceImpl(applicationContext, templateEngine, properties);
+        service.setDeduplicator(new CourierDeduplicator(new InMemoryDeduplicationStore(100), properties.getDedup()));
+        AtomicInteger sent = new AtomicInteger();
+        service.setTransport(message -> sent.incrementAndGet());
+        CourierDetail courierDetail = CourierDetail.builder()
+                .withSender("noreply@company.com")
+                .addRecipient("client@example.com")
+                .withSubject("Your Order Confirmation")
+                .withBody("Thank you for your order!")
+                .withOrganizationName("Organization")
+                .build();
+
+        // Act
+        List<CompletableFuture<SendResult>> results = service.sendCourierAsync(Collections.nCopies(50_000, courierDetail));
+        CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+        List<SendResult> outcomes = results.stream().map(CompletableFuture::join).toList();
+
+        // Assert
+        assertEquals(1, sent.get());
+        assertEquals(SendResult.Status.SENT, outcomes.get(0).getStatus());
+        assertTrue(outcomes.stream().skip(1).allMatch(SendResult::isDuplicate));
+        service.destroy();
+    }
+
+    @Test
+    void shouldSkipAsyncCourierCancelledBeforeItsTurn() throws Exception {
+        // Arrange
+        CourierProperties properties = new CourierProperties();
+        properties.getAsync().setMaxInFlight(1);
+        CourierServiceImpl service = new CourierServiceImpl(applicationContext, templateEngine, properties);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger sent = new AtomicInteger();
+        service.setTransport(message -> {
+            try {
+                release.await();
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            sent.incrementAndGet();
+        });
+        CourierDetail courierDetail = CourierDetail.builder()
+                .withSender("noreply@company.com")
+                .addRecipient("client@example.com")
+                .withSubject("Your Order Confirmation")
+                .withBody("Thank you for your order!")
+                .withOrganizationName("Organization")
+                .build();
+
+        // Act
+        List<CompletableFuture<SendResult>> results = service.sendCourierAsync(List.of(courierDetail, courierDetail));
+        results.get(1).cancel(false);
+        release.countDown();
+        results.get(0).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertTrue(results.get(1).isCancelled());
+        assertEquals(1, sent.get());
+        service.destroy();
+    }
+
+    @Test
+    void shouldSplitLargeRecipientListsIntoChunksSharingOneMessage() throws Exception {
+        // Arrange
+        CourierDetail courierDetail = CourierDetail.builder()
+                .withSender("noreply@company.com")
+                .addRecipient("client@example.com")
+                .addBccs(IntStream.range(0, 250).mapToObj(i -> "subscriber" + i + "@example.com").toList())
+                .withSubject("Newsletter")
+                .withBody("News of the month")
+                .withOrganizationName("Organization")
+                .build();
+
+        // Act
+        ChunkReport report = courierService.sendChunked(courierDetail);
+
+        // Assert
+        ArgumentCaptor<MimeMessage> sent = ArgumentCaptor.forClass(MimeMessage.class);
+        verify(applicationContext.getBean(JavaMailSenderImpl.class), times(3)).send(sent.capture());
+        verify(applicationContext.getBean(JavaMailSenderImpl.class), times(1)).createMimeMessage();
+        assertEquals(List.of(100, 100, 51), sent.getAllValues().stream().map(message -> {
+            try {
+                return message.getAllRecipients().length;
+            } catch (Exception exception) {
+                throw new IllegalStateException(exception);
+            }
+        }).sorted(Comparator.reverseOrder()).toList());
+        assertTrue(report.isAllAccepted());
+        assertEquals(3, report.getChunks().size());
+        assertEquals(251, report.getAcceptedRecipients().size());
+    }
+
+    @Test
+    void shouldReportFailedChunksAndKeepPartiallySentCourierAsDuplicate() throws Exception {
+        // Arrange
+        CourierProperties properties = new CourierProperties();
+        properties.getChunk().setEnabled(true);
+        CourierServiceImpl service = new CourierServiceImpl(applicationContext, templateEngine, properties);
+        service.setDeduplicator(new CourierDeduplicator(new InMemoryDeduplicationStore(100), properties.getDedup()));
+        InternetAddress rejected = new InternetAddress("subscriber150@example.com");
+        doAnswer(invocation -> {
+            MimeMessage message = invocation.getArgument(0);
+            if (Arrays.asList(message.getAllRecipients()).contains(rejected)) {
+                throw new MailSendException("451 try again later");
+            }
+            return null;
+        }).when(mailSender).send(any(MimeMessage.class));
+        CourierDetail courierDetail = CourierDetail.builder()
+                .withSender("noreply@company.com")
+                .addRecipient("client@example.com")
+                .addBccs(IntStream.range(0, 250).mapToObj(i -> "subscriber" + i + "@example.com").toList())
+                .withSubject("Newsletter")
+                .withBody("News of the month")
+                .withOrganizationName("Organization")
+                .build();
+
+        // Act
+        ChunkedCourierException failure = assertThrows(ChunkedCourierException.class, () -> service.sendCourier(courierDetail));
+        service.sendCourier(courierDetail);
+
+        // Assert
+        assertTrue(failure.isPartiallySent());
+        assertEquals(151, failure.getReport().getAcceptedRecipients().size());
+        assertEquals(1, failure.getReport().getFailures().get(0).getIndex());
+        verify(mailSender, times(3)).send(any(MimeMessage.class));
+        service.destroy();
+    }
+
+    @Test
+    void shouldChunkLargeCouriersOfBulkSend() throws Exception {
+        // Arrange
+        CourierProperties properties = new CourierProperties();
+        properties.getChunk().setEnabled(true);
+        CourierServiceImpl service = new CourierServiceImpl(applicationContext, templateEngine, properties);
+        Session session = Session.getInstance(new Properties());
+        when(mailSender.createMimeMessage()).thenAnswer(invocation -> new MimeMessage(session));
+        InternetAddress rejected = new InternetAddress("subscriber150@example.com");
+        doAnswer(invocation -> {
+            MimeMessage message = invocation.getArgument(0);
+            if (Arrays.asList(message.getAllRecipients()).contains(rejected)) {
+                throw new MailSendException("451 try again later");
+            }
+            return null;
+        }).when(mailSender).send(any(MimeMessage.class));
+        CourierDetail newsletter = CourierDetail.builder()
+                .withSender("noreply@company.com")
+                .addRecipient("client@example.com")
+                .addBccs(IntStream.range(0, 250).mapToObj(i -> "subscriber" + i + "@example.com").toList())
+                .withSubject("Newsletter")
+                .withBody("News of the month")
+                .withOrganizationName("Organization")
+                .build();
+        CourierDetail receipt = CourierDetail.builder()
+                .withSender("noreply@company.com")
+                .addRecipient("client@example.com")
+                .withSubject("Receipt")
+                .withBody("Thank you")
+                .withOrganizationName("Organization")
+                .build();
+
+        // Act
+        CourierReport report = service.sendCouriers(List.of(newsletter, receipt));
+
+        // Assert
+        verify(mailSender, times(4)).send(any(MimeMessage.class));
+        assertEquals(1, report.getSentCount());
+        ChunkedCourierException failure = assertInstanceOf(ChunkedCourierException.class, report.getFailures().get(0).getError());
+        assertEquals(0, report.getFailures().get(0).getIndex());
+        assertEquals(151, failure.getReport().getAcceptedRecipients().size());
+        service.destroy();
+    }
+
+    @Test
+    void shouldSendOneTemplateEmailPerMergeRow() {
+        // Arrange
+        CourierDetail skeleton = CourierDetail.builder()
+                .withSender("noreply@company.com")
+                .withSubject("Newsletter")
+                .withOrganizationName("Organization")
+                .withTemplate("newsletter")
+                .addVariable("month", "April")
+                .buildSkeleton();
+
+        Stream<MergeRow> rows = Stream.of(
+                MergeRow.of("client1@example.com", Map.of("customerName", "John Doe")),
+                MergeRow.of("client2@example.com", Map.of("customerName", "Jane Doe")),
+                MergeRow.of("client3@example.com", Map.of("customerName", "Jim Doe")));
+
+        when(templateEngine.process(eq("newsletter"), any(Context.class)))
+                .thenReturn("<html><body>Newsletter</body></html>");
+
+        // Act
+        CourierReport report = courierService.sendMerge(skeleton, rows);
+
+        // Assert
+        assertTrue(report.isAllSent());
+        verify(templateEngine, times(3)).process(eq("newsletter"), any(Context.class));
+        verify(applicationContext.getBean(JavaMailSenderImpl.class), times(3)).send(any(MimeMessage.class));
+    }
+
+    @Test
+    void shouldEncodeMergeHeadersAndAttachmentsOnce() throws Exception {
+        // Arrange
+        Session session = Session.getInstance(new Properties());
+        when(mailSender.createMimeMessage()).thenAnswer(invocation -> new MimeMessage(session));
+        AtomicInteger reads = new AtomicInteger();
+        DataSource brochure = new DataSource() {
+            @Override
+            public InputStream getInputStream() {
+                reads.incrementAndGet();
+                return new ByteArrayInputStream("This is the brochure".getBytes());
+            }
+
+            @Override
+            public OutputStream getOutputStream() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public String getContentType() {
+                return "application/pdf";
+            }
+
+            @Override
+            public String getName() {
+                return "brochure.pdf";
+            }
+        };
+        CourierDetail skeleton = CourierDetail.builder()
+                .withSender("noreply@company.com")
+                .addCc("sales@company.com")
+                .withSubject("Nouveautés d'avril")
+                .withBody("See the brochure")
+                .withOrganizationName("Organization")
+                .addAttachment("brochure.pdf", brochure)
+                .buildSkeleton();
+        Stream<MergeRow> rows = IntStream.range(0, 3).mapToObj(i -> MergeRow.of("client" + i + "@example.com", Map.of()));
+
+        // Act
+        CourierReport report = courierService.sendMerge(skeleton, rows);
+
+        // Assert
+        assertTrue(report.isAllSent());
+        assertEquals(1, reads.get());
+        ArgumentCaptor<MimeMessage> sent = ArgumentCaptor.forClass(MimeMessage.class);
+        verify(mailSender, times(3)).send(sent.capture());
+        for (MimeMessage message : sent.getAllValues()) {
+            MimeMessage parsed = reparse(message, session);
+            assertEquals("Nouveautés d'avril", parsed.getSubject());
+            assertEquals("sales@company.com", ((InternetAddress) parsed.getRecipients(MimeMessage.RecipientType.CC)[0]).getAddress());
+            MimeMultipart mixed = (MimeMultipart) parsed.getContent();
+            MimeBodyPart attachment = (MimeBodyPart) mixed.getBodyPart(1);
+            assertEquals("brochure.pdf", attachment.getFileName());
+            assertEquals("This is the brochure", new String(attachment.getInputStream().readAllBytes()));
+        }
+    }
+
     @Test
     void shouldThrowExceptionWhenSenderEmailIsInvalid() {
         // Arrange
@@ -197,6 +620,72 @@ class NotificationTest {
         verify(applicationContext.getBean(JavaMailSenderImpl.class), never()).send(any(MimeMessage.class));
     }
 
+    @Test
+    void shouldSendWireWrittenCourierToBlindCopiesWithoutBccHeader() throws Exception {
+        // Arrange
+        CourierProperties properties = new CourierProperties();
+        WireMessageWriter wireWriter = new WireMessageWriter(new DefaultResourceLoader());
+        courierService.setWireWriter(wireWriter);
+        when(mailSender.getSession()).thenReturn(Session.getInstance(new Properties()));
+        CourierDetail courierDetail = CourierDetail.builder()
+                .withSender("noreply@company.com")
+                .addRecipient("client@example.com")
+                .addBcc("audit@company.com")
+                .withSubject("Your Order Confirmation")
+                .withBody("Thank you for your order!")
+                .withOrganizationName("Organization")
+                .build();
+
+        // Act
+        courierService.sendCourier(courierDetail);
+
+        // Assert
+        ArgumentCaptor<MimeMessage> sent = ArgumentCaptor.forClass(MimeMessage.class);
+        verify(mailSender).send(sent.capture());
+        verify(mailSender, never()).createMimeMessage();
+        MimeMessage message = sent.getValue();
+        assertEquals(2, message.getAllRecipients().length);
+        assertNull(message.getHeader("Bcc"));
+        assertEquals("Your Order Confirmation", message.getSubject());
+    }
+
+    @Test
+    void shouldSendEnqueuedWireWrittenCourierToBlindCopies(@TempDir Path directory) throws Exception {
+        // Arrange
+        courierService.setWireWriter(new WireMessageWriter(new DefaultResourceLoader()));
+        Session session = Session.getInstance(new Properties());
+        when(mailSender.getSession()).thenReturn(session);
+        CourierProperties.Outbox config = new CourierProperties().getOutbox();
+        config.setDirectory(directory.toString());
+        List<MimeMessage> dispatched = new CopyOnWriteArrayList<>();
+        CountDownLatch sent = new CountDownLatch(1);
+        CourierOutbox outbox = new CourierOutbox(config, message -> {
+            dispatched.add(message);
+            sent.countDown();
+        }, session);
+        courierService.setOutbox(outbox);
+        CourierDetail courierDetail = CourierDetail.builder()
+                .withSender("noreply@company.com")
+                .addRecipient("client@example.com")
+                .addBcc("audit@company.com")
+                .withSubject("Your Order Confirmation")
+                .withBody("Thank you for your order!")
+                .withOrganizationName("Organization")
+                .build();
+
+        // Act
+        courierService.enqueueCourier(courierDetail);
+
+        // Assert
+        assertTrue(sent.await(5, TimeUnit.SECONDS));
+        outbox.close();
+        MimeMessage message = dispatched.get(0);
+        assertEquals(List.of("client@example.com", "audit@company.com"),
+                Arrays.stream(message.getAllRecipients()).map(address -> ((InternetAddress) address).getAddress()).toList());
+        assertNull(message.getHeader("Bcc"));
+        assertEquals("Your Order Confirmation", message.getSubject());
+    }
+
     @Test
     void shouldThrowExceptionWhenTemplateProcessingFails() {
         // Arrange
@@ -227,4 +716,10 @@ class NotificationTest {
     }
 
 
+
+    private static MimeMessage reparse(MimeMessage message, Session session) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        message.writeTo(out);
+        return new MimeMessage(session, new ByteArrayInputStream(out.toByteArray()));
+    }
 }
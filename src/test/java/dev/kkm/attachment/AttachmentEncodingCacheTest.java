@@ -0,0 +1,180 @@
+package dev.kkm.attachment;
+
+import dev.kkm.config.CourierProperties;
+import jakarta.activation.DataSource;
+import jakarta.mail.internet.MimeBodyPart;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class AttachmentEncodingCacheTest {
+
+    private CourierProperties.Attachment config;
+    private AttachmentEncodingCache cache;
+
+    @BeforeEach
+    void setUp() {
+        config = new CourierProperties().getAttachment();
+        cache = new AttachmentEncodingCache(config);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.close();
+    }
+
+    @Test
+    void shouldEncodeSharedAttachmentOnce() throws Exception {
+        // Arrange
+        CountingDataSource brochure = new CountingDataSource("This is the brochure".getBytes(StandardCharsets.UTF_8));
+
+        // Act
+        MimeBodyPart first = cache.getBodyPart("brochure.pdf", brochure);
+        MimeBodyPart second = cache.getBodyPart("brochure.pdf", brochure);
+        MimeBodyPart third = cache.getBodyPart("brochure.pdf", brochure);
+
+        // Assert
+        assertEquals(1, brochure.reads.get());
+        assertSame(brochure, first.getDataHandler().getDataSource());
+        assertArrayEquals(brochure.data, decode(second));
+        assertArrayEquals(brochure.data, decode(third));
+        assertEquals(1, cache.size());
+        assertEquals("brochure.pdf", third.getFileName());
+    }
+
+    @Test
+    void shouldNotEncodeAttachmentSentOnce() throws Exception {
+        // Arrange
+        CountingDataSource invoice = new CountingDataSource("This is the invoice".getBytes(StandardCharsets.UTF_8));
+
+        // Act
+        DataSource encoded = cache.getEncoded(invoice);
+
+        // Assert
+        assertNull(encoded);
+        assertEquals(0, invoice.reads.get());
+        assertEquals(0, cache.getMemoryInUse());
+    }
+
+    @Test
+    void shouldSpillLargeAttachmentToDisk() throws Exception {
+        // Arrange
+        config.setSpillThreshold(DataSize.ofBytes(16));
+        CountingDataSource statement = new CountingDataSource(new byte[4096]);
+
+        // Act
+        DataSource encoded = cache.getEncoded(statement, true);
+
+        // Assert
+        assertArrayEquals(statement.data, decode(encoded));
+        assertEquals(0, cache.getMemoryInUse());
+    }
+
+    @Test
+    void shouldKeepSpilledAttachmentReadableAfterItsEntryIsDropped() throws Exception {
+        // Arrange
+        config.setSpillThreshold(DataSize.ofBytes(16));
+        CountingDataSource statement = new CountingDataSource(new byte[4096]);
+        DataSource encoded = cache.getEncoded(statement, true);
+
+        // Act
+        cache.close();
+
+        // Assert
+        assertArrayEquals(statement.data, decode(encoded));
+    }
+
+    @Test
+    void shouldDropEntriesNotReusedWithinTheWindowWithoutAccess() throws Exception {
+        // Arrange
+        config.setWindow(Duration.ofMillis(50));
+        AttachmentEncodingCache shortCache = new AttachmentEncodingCache(config);
+        CountingDataSource brochure = new CountingDataSource("This is the brochure".getBytes(StandardCharsets.UTF_8));
+        shortCache.getEncoded(brochure, true);
+
+        // Act
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (shortCache.size() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        shortCache.close();
+
+        // Assert
+        assertEquals(0, shortCache.size());
+        assertEquals(0, shortCache.getMemoryInUse());
+    }
+
+    @Test
+    void shouldStreamSpilledAndMappedSourcesThroughEncoder() throws Exception {
+        // Arrange
+        byte[] content = new byte[8192];
+        Arrays.fill(content, (byte) 7);
+        DataSource spilled = AttachmentSources.bytes(content, "application/pdf", "statement.pdf", 1024);
+        DataSource mapped = AttachmentSources.mapped(((FileChannelDataSource) spilled).getPath(), "application/pdf");
+
+        // Act
+        DataSource fromFile = cache.getEncoded(spilled, true);
+        DataSource fromMapping = cache.getEncoded(mapped, true);
+
+        // Assert
+        assertArrayEquals(content, decode(fromFile));
+        assertArrayEquals(content, decode(fromMapping));
+    }
+
+    private static byte[] decode(MimeBodyPart bodyPart) throws Exception {
+        return decode(bodyPart.getDataHandler().getDataSource());
+    }
+
+    private static byte[] decode(DataSource source) throws Exception {
+        try (InputStream in = source.getInputStream()) {
+            String encoded = new String(in.readAllBytes(), StandardCharsets.US_ASCII);
+            return Base64.getMimeDecoder().decode(encoded);
+        }
+    }
+
+    private static final class CountingDataSource implements DataSource {
+        private final byte[] data;
+        private final AtomicInteger reads = new AtomicInteger();
+
+        private CountingDataSource(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            reads.incrementAndGet();
+            return new ByteArrayInputStream(data);
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getContentType() {
+            return "application/pdf";
+        }
+
+        @Override
+        public String getName() {
+            return "file.pdf";
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package dev.kkm.attachment;
+
+import dev.kkm.config.CourierProperties;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeBodyPart;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.MimeMultipart;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InlineResourceCacheTest {
+
+    private final CourierProperties.Inline config = new CourierProperties().getInline();
+
+    @Test
+    void shouldLoadAndEncodeSharedImageOnce() throws Exception {
+        // Arrange
+        AtomicInteger loads = new AtomicInteger();
+        DefaultResourceLoader classpath = new DefaultResourceLoader();
+        ResourceLoader countingLoader = new DefaultResourceLoader() {
+            @Override
+            public Resource getResource(String location) {
+                loads.incrementAndGet();
+                return classpath.getResource(location);
+            }
+        };
+        InlineResourceCache cache = new InlineResourceCache(countingLoader, config);
+
+        // Act
+        MimeBodyPart first = cache.getBodyPart("logo", "classpath:images/logo.png");
+        MimeBodyPart second = cache.getBodyPart("logo", "classpath:images/logo.png");
+
+        // Assert
+        assertEquals(1, loads.get());
+        assertNotSame(first, second);
+        assertSame(first.getDataHandler().getDataSource(), second.getDataHandler().getDataSource());
+        assertEquals("<logo>", second.getContentID());
+        assertEquals("image/png", second.getDataHandler().getDataSource().getContentType());
+    }
+
+    @Test
+    void shouldEmbedTheImageUnchangedInTheRelatedPart() throws Exception {
+        // Arrange
+        InlineResourceCache cache = new InlineResourceCache(new DefaultResourceLoader(), config);
+        MimeMessage message = new MimeMessage(Session.getInstance(new Properties()));
+        MimeMultipart related = new MimeMultipart("related");
+        MimeBodyPart html = new MimeBodyPart();
+        html.setText("<img src=\"cid:logo\">", "UTF-8", "html");
+        related.addBodyPart(html);
+        related.addBodyPart(cache.getBodyPart("logo", "classpath:images/logo.png"));
+        message.setContent(related);
+        message.saveChanges();
+
+        // Act
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        message.writeTo(wire);
+        MimeMessage parsed = new MimeMessage(Session.getInstance(new Properties()), new ByteArrayInputStream(wire.toByteArray()));
+
+        // Assert
+        MimeBodyPart image = (MimeBodyPart) ((MimeMultipart) parsed.getContent()).getBodyPart(1);
+        assertEquals("<logo>", image.getContentID());
+        assertTrue(image.getHeader("Content-Transfer-Encoding")[0].equalsIgnoreCase("base64"));
+        try (InputStream expected = new DefaultResourceLoader().getResource("classpath:images/logo.png").getInputStream()) {
+            assertArrayEquals(expected.readAllBytes(), image.getInputStream().readAllBytes());
+        }
+    }
+
+    @Test
+    void shouldDropLeastRecentlyUsedImages() throws Exception {
+        // Arrange
+        config.setCacheMaxSize(1);
+        InlineResourceCache cache = new InlineResourceCache(new DefaultResourceLoader(), config);
+
+        // Act
+        cache.getBodyPart("logo", "classpath:images/logo.png");
+        cache.getBodyPart("template", "classpath:templates/order-confirmation.html");
+
+        // Assert
+        assertEquals(1, cache.size());
+    }
+}
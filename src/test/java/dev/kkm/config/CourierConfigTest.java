@@ -0,0 +1,83 @@
+package dev.kkm.config;
+
+import dev.kkm.dispatch.PriorityDispatcher;
+import dev.kkm.template.CourierTemplateRenderer;
+import dev.kkm.transport.RateLimitedTransport;
+import dev.kkm.transport.RelayRouter;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.thymeleaf.TemplateEngine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class CourierConfigTest {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(CourierConfig.class))
+            .withBean(TemplateEngine.class, TemplateEngine::new)
+            .withPropertyValues("spring.mail.host=localhost");
+
+    @Test
+    void shouldPoolMailHostConnectionsByDefault() {
+        // Act & Assert
+        contextRunner.run(context -> assertThat(context).hasBean("smtpConnectionPool"));
+    }
+
+    @Test
+    void shouldNotPoolMailHostConnectionsWhenRouting() {
+        // Act & Assert
+        contextRunner.withPropertyValues("courier.routing.enabled=true", "courier.routing.relays[0].host=smtp1.company.com",
+                        "courier.routing.health-check-interval=1h")
+                .run(context -> {
+                    assertThat(context).hasBean("relayRouter");
+                    assertThat(context).doesNotHaveBean("smtpConnectionPool");
+                });
+    }
+
+    @Test
+    void shouldLimitRateOfEachRelayWhenRouting() {
+        // Act & Assert
+        contextRunner.withPropertyValues("courier.routing.enabled=true", "courier.routing.health-check-interval=1h",
+                        "courier.routing.relays[0].host=smtp1.company.com", "courier.routing.relays[1].host=smtp2.company.com",
+                        "courier.routing.relays[1].rate-limit.enabled=false", "courier.rate-limit.enabled=true")
+                .run(context -> {
+                    RelayRouter router = context.getBean(RelayRouter.class);
+                    assertThat(context.getBean("courierTransport")).isSameAs(router);
+                    assertThat(router.getRelays().get(0).getTransport()).isInstanceOf(RateLimitedTransport.class);
+                    assertThat(router.getRelays().get(1).getTransport()).isNotInstanceOf(RateLimitedTransport.class);
+                });
+    }
+
+    @Test
+    void shouldSendThroughCustomMailSenderWithoutPool() {
+        // Act & Assert
+        contextRunner.withBean("mailSender", JavaMailSender.class, () -> mock(JavaMailSender.class))
+                .run(context -> {
+                    assertThat(context).hasNotFailed();
+                    assertThat(context).doesNotHaveBean("smtpConnectionPool");
+                    assertThat(context).hasBean("courierTransport");
+                });
+    }
+
+    @Test
+    void shouldSubmitThroughBulkExecutorByDefault() {
+        // Act & Assert
+        contextRunner.run(context -> assertThat(context).doesNotHaveBean(PriorityDispatcher.class));
+    }
+
+    @Test
+    void shouldRenderWithApplicationEngineByDefault() {
+        // Act & Assert
+        contextRunner.run(context -> assertThat(context).doesNotHaveBean(CourierTemplateRenderer.class));
+    }
+
+    @Test
+    void shouldRenderWithStarterEngineWhenEnabled() {
+        // Act & Assert
+        contextRunner.withPropertyValues("courier.template.enabled=true")
+                .run(context -> assertThat(context).hasSingleBean(CourierTemplateRenderer.class));
+    }
+}
@@ -0,0 +1,94 @@
+package dev.kkm.dedup;
+
+import dev.kkm.config.CourierProperties;
+import dev.kkm.model.CourierDetail;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CourierDeduplicatorTest {
+
+    private final CourierProperties.Dedup config = new CourierProperties().getDedup();
+
+    @Test
+    void shouldHashTheContentOfTheCourier() {
+        // Arrange
+        CourierDeduplicator deduplicator = new CourierDeduplicator(new InMemoryDeduplicationStore(10), config);
+
+        // Act
+        String key = deduplicator.keyOf(courier("Thank you!", "invoice", "client1@example.com", "client2@example.com"));
+        String reordered = deduplicator.keyOf(courier("Thank you!", "invoice", "client2@example.com", "client1@example.com"));
+        String otherBody = deduplicator.keyOf(courier("Thank you!!", "invoice", "client1@example.com", "client2@example.com"));
+        String otherAttachment = deduplicator.keyOf(courier("Thank you!", "receipt", "client1@example.com", "client2@example.com"));
+
+        // Assert
+        assertEquals(key, reordered);
+        assertNotEquals(key, otherBody);
+        assertNotEquals(key, otherAttachment);
+    }
+
+    @Test
+    void shouldSkipDuplicatesUntilReleased() {
+        // Arrange
+        CourierDeduplicator deduplicator = new CourierDeduplicator(new InMemoryDeduplicationStore(10), config);
+        CourierDetail courier = CourierDetail.builder()
+                .withSender("noreply@company.com")
+                .addRecipient("client@example.com")
+                .withSubject("Your Order Confirmation")
+                .withBody("Thank you for your order!")
+                .withOrganizationName("Organization")
+                .withIdempotencyKey("order-42")
+                .build();
+
+        // Act
+        String first = deduplicator.claim(courier);
+        String duplicate = deduplicator.claim(courier);
+        deduplicator.release(first);
+        String afterRelease = deduplicator.claim(courier);
+
+        // Assert
+        assertEquals("key:order-42", first);
+        assertNull(duplicate);
+        assertNotNull(afterRelease);
+    }
+
+    @Test
+    void shouldForgetExpiredAndOldestKeys() throws Exception {
+        // Arrange
+        InMemoryDeduplicationStore store = new InMemoryDeduplicationStore(2);
+
+        // Act
+        store.putIfAbsent("a", Duration.ofHours(1));
+        store.putIfAbsent("b", Duration.ofHours(1));
+        store.putIfAbsent("c", Duration.ofHours(1));
+        store.putIfAbsent("short", Duration.ofMillis(1));
+        Thread.sleep(5);
+
+        // Assert
+        assertTrue(store.putIfAbsent("a", Duration.ofHours(1)));
+        assertTrue(store.putIfAbsent("short", Duration.ofHours(1)));
+        assertFalse(store.putIfAbsent("short", Duration.ofHours(1)));
+        assertEquals(2, store.size());
+    }
+
+    private static CourierDetail courier(String body, String attachment, String... recipients) {
+        CourierDetail.Builder builder = CourierDetail.builder()
+                .withSender("noreply@company.com")
+                .withSubject("Your Order Confirmation")
+                .withBody(body)
+                .withOrganizationName("Organization")
+                .addAttachment("document.txt", attachment.getBytes(StandardCharsets.UTF_8), "text/plain");
+        for (String recipient : recipients) {
+            builder.addRecipient(recipient);
+        }
+        return builder.build();
+    }
+}
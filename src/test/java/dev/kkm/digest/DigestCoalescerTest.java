@@ -0,0 +1,120 @@
+package dev.kkm.digest;
+
+import dev.kkm.config.CourierProperties;
+import dev.kkm.model.CourierDetail;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DigestCoalescerTest {
+
+    private final List<CourierDetail> sent = new CopyOnWriteArrayList<>();
+    private DigestCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        CourierProperties.Digest config = new CourierProperties().getDigest();
+        config.setWindow(Duration.ofHours(1));
+        config.setMaxCount(3);
+        coalescer = new DigestCoalescer(config);
+    }
+
+    @AfterEach
+    void tearDown() {
+        coalescer.close();
+    }
+
+    @Test
+    void shouldRenderCouriersOfTheSameRecipientAndKeyAsOneDigest() {
+        // Arrange
+        CourierDetail other = alert("ops@example.com", "disk full");
+
+        // Act
+        CompletableFuture<Void> first = coalescer.add(alert("oncall@example.com", "cpu high"), this::send);
+        coalescer.add(alert("oncall@example.com", "memory high"), this::send);
+        CompletableFuture<Void> alone = coalescer.add(other, this::send);
+        assertFalse(first.isDone());
+        coalescer.flush();
+
+        // Assert
+        assertTrue(first.isDone());
+        assertTrue(alone.isDone());
+        assertEquals(2, sent.size());
+        CourierDetail digest = sent.stream().filter(courier -> courier.getRecipients().contains("oncall@example.com")).findFirst().orElseThrow();
+        assertEquals("courier-digest", digest.getTemplateName());
+        assertEquals("Alert (+1 more)", digest.getSubject());
+        List<?> notifications = (List<?>) digest.getVariables().get("notifications");
+        assertEquals("memory high", ((Map<?, ?>) notifications.get(1)).get("metric"));
+        assertSame(other, sent.stream().filter(courier -> courier.getRecipients().contains("ops@example.com")).findFirst().orElseThrow());
+    }
+
+    @Test
+    void shouldGroupRecipientsInAnyOrderButKeepReplyToApart() {
+        // Act
+        coalescer.add(team(List.of("oncall@example.com", "ops@example.com"), null), this::send);
+        coalescer.add(team(List.of("ops@example.com", "oncall@example.com"), null), this::send);
+        coalescer.add(team(List.of("oncall@example.com", "ops@example.com"), "noc@company.com"), this::send);
+        coalescer.flush();
+
+        // Assert
+        assertEquals(2, sent.size());
+        assertEquals(1, sent.stream().filter(courier -> "courier-digest".equals(courier.getTemplateName())).count());
+        assertEquals(1, sent.stream().filter(courier -> "noc@company.com".equals(courier.getReplyTo())).count());
+    }
+
+    @Test
+    void shouldSendDigestAsSoonAsItIsFull() {
+        // Act
+        for (int i = 0; i < 4; i++) {
+            coalescer.add(alert("oncall@example.com", "check " + i), this::send);
+        }
+
+        // Assert
+        assertEquals(1, sent.size());
+        assertEquals(3, ((List<?>) sent.get(0).getVariables().get("notifications")).size());
+        assertEquals(1, coalescer.getOpenCount());
+    }
+
+    private CompletableFuture<Void> send(CourierDetail courierDetail) {
+        sent.add(courierDetail);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private static CourierDetail alert(String recipient, String metric) {
+        return CourierDetail.builder()
+                .withSender("alerts@company.com")
+                .addRecipient(recipient)
+                .withSubject("Alert")
+                .withTemplate("alert")
+                .addVariable("metric", metric)
+                .withOrganizationName("Organization")
+                .withCoalescingKey("monitoring")
+                .build();
+    }
+
+    private static CourierDetail team(List<String> recipients, String replyTo) {
+        CourierDetail.Builder builder = CourierDetail.builder()
+                .withSender("alerts@company.com")
+                .addRecipients(recipients)
+                .withSubject("Alert")
+                .withTemplate("alert")
+                .addVariable("metric", "cpu high")
+                .withOrganizationName("Organization")
+                .withCoalescingKey("monitoring");
+        if (replyTo != null) {
+            builder.withReplyTo(replyTo);
+        }
+        return builder.build();
+    }
+}
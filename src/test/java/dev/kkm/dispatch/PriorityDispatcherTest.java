@@ -0,0 +1,149 @@
+package dev.kkm.dispatch;
+
+import dev.kkm.config.CourierProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PriorityDispatcherTest {
+
+    private PriorityDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        CourierProperties.Priority config = new CourierProperties().getPriority();
+        config.setWorkers(1);
+        dispatcher = new PriorityDispatcher(config);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.close();
+    }
+
+    @Test
+    void shouldServeHighPriorityBeforeBacklogOfLowPriority() throws Exception {
+        // Arrange
+        CountDownLatch blocked = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+        dispatcher.submit(5, () -> await(blocked));
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(dispatcher.submit(5, () -> order.add("low")));
+        }
+        futures.add(dispatcher.submit(1, () -> order.add("high")));
+
+        // Act
+        blocked.countDown();
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+        // Assert
+        assertTrue(order.indexOf("high") <= 1);
+        LaneStatistics low = dispatcher.getStatistics().get(2);
+        assertEquals(5, low.priority());
+        assertEquals(0, low.depth());
+        assertEquals(11, low.dispatched());
+    }
+
+    @Test
+    void shouldRejectTaskSubmittedToFullLane() {
+        // Arrange
+        CourierProperties.Priority config = new CourierProperties().getPriority();
+        config.setWorkers(1);
+        config.setLaneCapacity(1);
+        PriorityDispatcher bounded = new PriorityDispatcher(config);
+        CountDownLatch blocked = new CountDownLatch(1);
+        bounded.submit(5, () -> await(blocked));
+        awaitDepth(bounded, 0);
+        bounded.submit(5, () -> true);
+
+        // Act
+        CompletableFuture<Boolean> rejected = bounded.submit(5, () -> true);
+
+        // Assert
+        ExecutionException failure = assertThrows(ExecutionException.class, rejected::get);
+        assertInstanceOf(RejectedExecutionException.class, failure.getCause());
+        blocked.countDown();
+        bounded.close();
+    }
+
+    @Test
+    void shouldRunOutQueuedTasksOnCloseWithoutInterruptingThem() {
+        // Arrange
+        CountDownLatch blocked = new CountDownLatch(1);
+        CompletableFuture<Boolean> running = dispatcher.submit(5, () -> {
+            await(blocked, 200);
+            return !Thread.currentThread().isInterrupted();
+        });
+        CompletableFuture<Boolean> queued = dispatcher.submit(1, () -> true);
+
+        // Act
+        dispatcher.close();
+
+        // Assert
+        assertTrue(running.join());
+        assertTrue(queued.join());
+        assertTrue(dispatcher.submit(1, () -> true).isCompletedExceptionally());
+    }
+
+    @Test
+    void shouldFailTasksStillQueuedAfterShutdownTimeout() throws Exception {
+        // Arrange
+        CourierProperties.Priority config = new CourierProperties().getPriority();
+        config.setWorkers(1);
+        config.setShutdownTimeout(Duration.ofMillis(100));
+        PriorityDispatcher closing = new PriorityDispatcher(config);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CompletableFuture<Boolean> running = closing.submit(5, () -> await(blocked));
+        CompletableFuture<Boolean> queued = closing.submit(5, () -> true);
+
+        // Act
+        closing.close();
+
+        // Assert
+        ExecutionException failure = assertThrows(ExecutionException.class, queued::get);
+        assertInstanceOf(RejectedExecutionException.class, failure.getCause());
+        blocked.countDown();
+        assertTrue(running.get(5, TimeUnit.SECONDS));
+    }
+
+    private static void awaitDepth(PriorityDispatcher dispatcher, int depth) {
+        while (dispatcher.getStatistics().get(2).depth() != depth) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static boolean await(CountDownLatch latch, long millis) {
+        try {
+            return latch.await(millis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            latch.await();
+            return true;
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package dev.kkm.metrics;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class CourierEventsTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldRecordTheSendAndItsStages() throws Exception {
+        // Arrange
+        Path dump = directory.resolve("courier.jfr");
+
+        // Act
+        try (Recording recording = new Recording()) {
+            recording.enable(CourierSendEvent.class).withoutThreshold();
+            recording.enable(CourierStageEvent.class).withoutThreshold();
+            recording.start();
+            CourierSendEvent send = CourierSendEvent.start("invoice", 2);
+            CourierStageEvent.start().finish(CourierMetrics.Stage.TEMPLATE, "invoice", null);
+            CourierSendEvent.relay("relay-a");
+            CourierSendEvent.messageSize(1_234);
+            send.finish(0);
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        // Assert
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        RecordedEvent send = events.stream().filter(event -> event.getEventType().getName().equals("dev.kkm.courier.Send")).findFirst().orElseThrow();
+        assertEquals("invoice", send.getString("templateName"));
+        assertEquals(2, send.getInt("recipientCount"));
+        assertEquals("relay-a", send.getString("relay"));
+        assertEquals(0, send.getInt("status"));
+        assertEquals(1_234, send.getLong("messageSize"));
+        RecordedEvent stage = events.stream().filter(event -> event.getEventType().getName().equals("dev.kkm.courier.Stage")).findFirst().orElseThrow();
+        assertEquals("TEMPLATE", stage.getString("stage"));
+        assertEquals("invoice", stage.getString("templateName"));
+    }
+
+    @Test
+    void shouldDoNothingWhenNotRecorded() throws Exception {
+        // Act
+        CourierSendEvent send = CourierSendEvent.start("invoice", 1);
+        CourierSendEvent.relay("relay-a");
+        CourierSendEvent.messageSize(1_234);
+        send.finish(902);
+
+        // Assert
+        assertFalse(send.isEnabled());
+    }
+}
@@ -0,0 +1,68 @@
+package dev.kkm.metrics;
+
+import dev.kkm.config.CourierProperties;
+import dev.kkm.transport.EnvelopeMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MicrometerCourierMetricsTest {
+
+    @Test
+    void shouldRecordStagesFailuresAndMessageShape() throws Exception {
+        // Arrange
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CourierProperties.Metrics config = new CourierProperties().getMetrics();
+        config.setMessageSize(true);
+        CourierMetrics metrics = new MicrometerCourierMetrics(registry, config);
+        MimeMessage message = new MimeMessage(Session.getInstance(new Properties()));
+        message.setRecipients(MimeMessage.RecipientType.TO, InternetAddress.parse("john@doe.com, jane@doe.com"));
+        message.setText("Hello");
+
+        // Act
+        metrics.record(CourierMetrics.Stage.TEMPLATE, TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.failed(902);
+        metrics.failed(902);
+        metrics.sent(message);
+
+        // Assert
+        assertEquals(5, registry.get("courier.stage").tag("stage", "template").timer().totalTime(TimeUnit.MILLISECONDS));
+        assertEquals(2, registry.get("courier.failed").tag("status", "902").counter().count());
+        assertEquals(0, registry.get("courier.failed").tag("status", "905").counter().count());
+        assertEquals(1, registry.get("courier.sent").counter().count());
+        assertEquals(2, registry.get("courier.message.recipients").summary().totalAmount());
+        assertTrue(registry.get("courier.message.size").summary().totalAmount() > 5);
+    }
+
+    @Test
+    void shouldTakeSizeOfWireMessageWithoutSerializingIt() throws Exception {
+        // Arrange
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CourierProperties.Metrics config = new CourierProperties().getMetrics();
+        config.setMessageSize(true);
+        CourierMetrics metrics = new MicrometerCourierMetrics(registry, config);
+        byte[] wire = "Subject: Hello\r\n\r\nBody\r\n".getBytes(StandardCharsets.US_ASCII);
+        MimeMessage message = new EnvelopeMessage(Session.getInstance(new Properties()), wire, InternetAddress.parse("john@doe.com")) {
+            @Override
+            public void writeTo(OutputStream out, String[] ignoreList) {
+                throw new AssertionError("wire message serialized again");
+            }
+        };
+
+        // Act
+        metrics.sent(message);
+
+        // Assert
+        assertEquals(wire.length, registry.get("courier.message.size").summary().totalAmount());
+    }
+}
@@ -0,0 +1,131 @@
+package dev.kkm.mime;
+
+import dev.kkm.attachment.AttachmentEncodingCache;
+import dev.kkm.attachment.InlineResourceCache;
+import dev.kkm.config.CourierProperties;
+import dev.kkm.model.CourierDetail;
+import dev.kkm.validation.CourierAddresses;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeBodyPart;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.MimeMultipart;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WireMessageWriterTest {
+
+    private final Session session = Session.getInstance(new Properties());
+    private final CourierProperties properties = new CourierProperties();
+
+    @Test
+    void shouldWriteHtmlCourierWithImagesAndAttachmentsJavaMailCanRead() throws Exception {
+        // Arrange
+        WireMessageWriter writer = new WireMessageWriter(new DefaultResourceLoader());
+        writer.setAttachmentCache(new AttachmentEncodingCache(properties.getAttachment()));
+        writer.setInlineCache(new InlineResourceCache(new DefaultResourceLoader(), properties.getInline()));
+        byte[] document = "Invoice n°42".getBytes(StandardCharsets.UTF_8);
+        CourierDetail courier = CourierDetail.builder()
+                .withSender("noreply@company.com")
+                .addRecipient("client@example.com")
+                .addBcc("audit@company.com")
+                .withSubject("Votre facture été")
+                .withBody("unused")
+                .withOrganizationName("Société")
+                .withPriority(1)
+                .addAttachment("facture.txt", document, "text/plain")
+                .build();
+
+        // Act
+        ByteBuffer wire = writer.write(courier, addresses(courier), "<p>Merci à vous</p><img src=\"cid:logo\">",
+                Map.of("logo", "classpath:images/logo.png"));
+        MimeMessage parsed = new MimeMessage(session, new ByteArrayInputStream(wire.array(), 0, wire.limit()));
+
+        // Assert
+        assertEquals("Votre facture été", parsed.getSubject());
+        assertEquals("Société", ((InternetAddress) parsed.getFrom()[0]).getPersonal());
+        assertEquals("client@example.com", ((InternetAddress) parsed.getRecipients(MimeMessage.RecipientType.TO)[0]).getAddress());
+        assertNull(parsed.getHeader("Bcc"));
+        assertEquals("1", parsed.getHeader("X-Priority")[0]);
+        MimeMultipart mixed = (MimeMultipart) parsed.getContent();
+        MimeMultipart related = (MimeMultipart) mixed.getBodyPart(0).getContent();
+        assertEquals("<p>Merci à vous</p><img src=\"cid:logo\">", related.getBodyPart(0).getContent());
+        MimeBodyPart image = (MimeBodyPart) related.getBodyPart(1);
+        assertEquals("<logo>", image.getContentID());
+        try (InputStream expected = new DefaultResourceLoader().getResource("classpath:images/logo.png").getInputStream()) {
+            assertArrayEquals(expected.readAllBytes(), image.getInputStream().readAllBytes());
+        }
+        MimeBodyPart attachment = (MimeBodyPart) mixed.getBodyPart(1);
+        assertEquals("facture.txt", attachment.getFileName());
+        assertArrayEquals(document, attachment.getInputStream().readAllBytes());
+    }
+
+    @Test
+    void shouldWritePlainTextCourierAsSinglePart() throws Exception {
+        // Arrange
+        WireMessageWriter writer = new WireMessageWriter(new DefaultResourceLoader());
+        CourierDetail courier = CourierDetail.builder()
+                .withSender("noreply@company.com")
+                .addRecipient("client@example.com")
+                .withSubject("Your Order Confirmation")
+                .withBody("Thank you for your order!")
+                .withOrganizationName("Organization")
+                .build();
+
+        // Act
+        ByteBuffer first = writer.write(courier, addresses(courier), null, Map.of());
+        ByteBuffer second = writer.write(courier, addresses(courier), null, Map.of());
+        MimeMessage parsed = new MimeMessage(session, new ByteArrayInputStream(first.array(), 0, first.limit()));
+
+        // Assert
+        assertTrue(parsed.isMimeType("text/plain"));
+        assertEquals("7bit", parsed.getEncoding());
+        assertEquals("Thank you for your order!", parsed.getContent());
+        assertNotEquals(parsed.getMessageID(), new MimeMessage(session, new ByteArrayInputStream(second.array(), 0, second.limit())).getMessageID());
+    }
+
+    @Test
+    void shouldTakeAnotherBoundaryWhenTextHoldsIt() {
+        // Arrange
+        String taken = WireMessageWriter.boundary("Mixed", 42, null);
+        String text = "First line\r\n--" + taken + "--\r\nLast line";
+
+        // Act
+        String boundary = WireMessageWriter.boundary("Mixed", 42, text);
+
+        // Assert
+        assertNotEquals(taken, boundary);
+        assertFalse(text.contains(boundary));
+        assertEquals(boundary, WireMessageWriter.boundary("Mixed", 42, text));
+    }
+
+    private static CourierAddresses addresses(CourierDetail courier) throws Exception {
+        return new CourierAddresses(new InternetAddress(courier.getSender()),
+                courier.getRecipients().stream().map(WireMessageWriterTest::address).toArray(InternetAddress[]::new),
+                new InternetAddress[0],
+                courier.getBcc() != null ? courier.getBcc().stream().map(WireMessageWriterTest::address).toArray(InternetAddress[]::new) : new InternetAddress[0],
+                null, null);
+    }
+
+    private static InternetAddress address(String email) {
+        try {
+            return new InternetAddress(email);
+        } catch (Exception exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package dev.kkm.outbox;
+
+import dev.kkm.config.CourierProperties;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CourierOutboxTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldReplayOnlyUnacknowledgedMessagesAfterRestart() throws Exception {
+        // Arrange
+        OutboxJournal journal = new OutboxJournal(directory, 1024 * 1024, 16);
+        OutboxEntry first = journal.append("first".getBytes(StandardCharsets.UTF_8)).join();
+        journal.append("second".getBytes(StandardCharsets.UTF_8)).join();
+        journal.append("third".getBytes(StandardCharsets.UTF_8)).join();
+        journal.ack(first);
+        journal.close();
+
+        // Act
+        OutboxJournal reopened = new OutboxJournal(directory, 1024 * 1024, 16);
+        List<OutboxEntry> recovered = reopened.getRecovered();
+
+        // Assert
+        assertEquals(2, recovered.size());
+        assertArrayEquals("second".getBytes(StandardCharsets.UTF_8), reopened.read(recovered.get(0)));
+        assertArrayEquals("third".getBytes(StandardCharsets.UTF_8), reopened.read(recovered.get(1)));
+        reopened.close();
+    }
+
+    @Test
+    void shouldRecoverRecordsFollowingTornRecord() throws Exception {
+        // Arrange
+        OutboxJournal journal = new OutboxJournal(directory, 1024 * 1024, 16);
+        journal.append("first".getBytes(StandardCharsets.UTF_8)).join();
+        OutboxEntry torn = journal.append("second".getBytes(StandardCharsets.UTF_8)).join();
+        journal.append("third".getBytes(StandardCharsets.UTF_8)).join();
+        journal.close();
+        try (FileChannel channel = FileChannel.open(firstSegment(), StandardOpenOption.WRITE)) {
+            // the end of the record never reached the disk
+            channel.write(ByteBuffer.allocate(torn.length()), torn.offset() + 2);
+        }
+
+        // Act
+        OutboxJournal reopened = new OutboxJournal(directory, 1024 * 1024, 16);
+        List<OutboxEntry> recovered = reopened.getRecovered();
+
+        // Assert
+        assertEquals(2, recovered.size());
+        assertArrayEquals("first".getBytes(StandardCharsets.UTF_8), reopened.read(recovered.get(0)));
+        assertArrayEquals("third".getBytes(StandardCharsets.UTF_8), reopened.read(recovered.get(1)));
+        reopened.close();
+    }
+
+    @Test
+    void shouldRejectRecordWithCorruptHeader() throws Exception {
+        // Arrange
+        OutboxJournal journal = new OutboxJournal(directory, 1024 * 1024, 16);
+        OutboxEntry corrupt = journal.append("first".getBytes(StandardCharsets.UTF_8)).join();
+        journal.append("second".getBytes(StandardCharsets.UTF_8)).join();
+        journal.close();
+        try (FileChannel channel = FileChannel.open(firstSegment(), StandardOpenOption.WRITE)) {
+            // last byte of the id
+            channel.write(ByteBuffer.wrap(new byte[] {42}), corrupt.offset() - 1);
+        }
+
+        // Act
+        OutboxJournal reopened = new OutboxJournal(directory, 1024 * 1024, 16);
+        List<OutboxEntry> recovered = reopened.getRecovered();
+
+        // Assert
+        assertEquals(1, recovered.size());
+        assertArrayEquals("second".getBytes(StandardCharsets.UTF_8), reopened.read(recovered.get(0)));
+        reopened.close();
+    }
+
+    @Test
+    void shouldDispatchEnqueuedMessagesThroughTransport() throws Exception {
+        // Arrange
+        CourierProperties.Outbox config = new CourierProperties().getOutbox();
+        config.setDirectory(directory.toString());
+        Session session = Session.getInstance(new Properties());
+        List<String> subjects = new CopyOnWriteArrayList<>();
+        CountDownLatch sent = new CountDownLatch(2);
+        CourierOutbox outbox = new CourierOutbox(config, message -> {
+            try {
+                subjects.add(message.getSubject());
+            } catch (Exception exception) {
+                throw new IllegalStateException(exception);
+            }
+            sent.countDown();
+        }, session);
+
+        // Act
+        outbox.enqueue(message(session, "Subject 1"));
+        outbox.enqueue(message(session, "Subject 2"));
+
+        // Assert
+        assertTrue(sent.await(5, TimeUnit.SECONDS));
+        assertTrue(subjects.containsAll(List.of("Subject 1", "Subject 2")));
+        outbox.close();
+    }
+
+    @Test
+    void shouldRetryMessageWhoseSendThrewAnyRuntimeException() throws Exception {
+        // Arrange
+        CourierProperties.Outbox config = new CourierProperties().getOutbox();
+        config.setDirectory(directory.toString());
+        config.setDispatchers(1);
+        config.setRetryDelay(Duration.ofMillis(10));
+        Session session = Session.getInstance(new Properties());
+        AtomicInteger attempts = new AtomicInteger();
+        List<String> subjects = new CopyOnWriteArrayList<>();
+        CountDownLatch sent = new CountDownLatch(2);
+        CourierOutbox outbox = new CourierOutbox(config, message -> {
+            try {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new IllegalStateException("transport closed");
+                }
+                subjects.add(message.getSubject());
+            } catch (MessagingException messagingException) {
+                throw new IllegalStateException(messagingException);
+            }
+            sent.countDown();
+        }, session);
+
+        // Act
+        outbox.enqueue(message(session, "Subject 1"));
+        outbox.enqueue(message(session, "Subject 2"));
+
+        // Assert
+        assertTrue(sent.await(5, TimeUnit.SECONDS));
+        outbox.close();
+        assertTrue(subjects.containsAll(List.of("Subject 1", "Subject 2")));
+    }
+
+    @Test
+    void shouldLetSendInProgressFinishWhenClosed() throws Exception {
+        // Arrange
+        CourierProperties.Outbox config = new CourierProperties().getOutbox();
+        config.setDirectory(directory.toString());
+        Session session = Session.getInstance(new Properties());
+        CountDownLatch sending = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        List<String> subjects = new CopyOnWriteArrayList<>();
+        CourierOutbox outbox = new CourierOutbox(config, message -> {
+            sending.countDown();
+            try {
+                Thread.sleep(200);
+                subjects.add(message.getSubject());
+            } catch (InterruptedException interruptedException) {
+                interrupted.set(true);
+            } catch (MessagingException messagingException) {
+                throw new IllegalStateException(messagingException);
+            }
+        }, session);
+        outbox.enqueue(message(session, "Subject 1"));
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+
+        // Act
+        outbox.close();
+
+        // Assert
+        assertFalse(interrupted.get());
+        assertEquals(List.of("Subject 1"), subjects);
+        OutboxJournal reopened = new OutboxJournal(directory, config.getSegmentSize().toBytes(), config.getMaxBatch());
+        assertTrue(reopened.getRecovered().isEmpty());
+        reopened.close();
+    }
+
+    private Path firstSegment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".log")).sorted().findFirst().orElseThrow();
+        }
+    }
+
+    private static MimeMessage message(Session session, String subject) throws Exception {
+        MimeMessage message = new MimeMessage(session);
+        message.setFrom(new InternetAddress("noreply@company.com"));
+        message.addRecipient(MimeMessage.RecipientType.TO, new InternetAddress("client@example.com"));
+        message.setSubject(subject);
+        message.setText("Body");
+        return message;
+    }
+}
@@ -0,0 +1,315 @@
+package dev.kkm.outbox;
+
+import dev.kkm.config.CourierProperties;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.MailSendException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JdbcOutboxTest {
+
+    private final Session session = Session.getInstance(new Properties());
+    private final CourierProperties.Outbox config = new CourierProperties().getOutbox();
+    private JdbcDataSource dataSource;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("RUNSCRIPT FROM 'classpath:/dev/kkm/outbox/schema-h2.sql'");
+        }
+        config.setStore(CourierProperties.Outbox.Store.JDBC);
+        config.getJdbc().setPollInterval(Duration.ofMillis(20));
+    }
+
+    @Test
+    void shouldSendEveryRowOnceAcrossNodes() throws Exception {
+        // Arrange
+        config.getJdbc().setClaimBatch(8);
+        Map<String, AtomicInteger> sent = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(100);
+        List<MimeMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            messages.add(message("Subject " + i));
+        }
+        config.getJdbc().setNodeId("node-a");
+        JdbcOutbox nodeA = new JdbcOutbox(dataSource, config, message -> record(message, sent, done), session);
+        config.getJdbc().setNodeId("node-b");
+        JdbcOutbox nodeB = new JdbcOutbox(dataSource, config, message -> record(message, sent, done), session);
+
+        // Act
+        nodeA.appendAll(messages);
+
+        // Assert
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        nodeA.close();
+        nodeB.close();
+        assertEquals(100, sent.size());
+        assertTrue(sent.values().stream().allMatch(count -> count.get() == 1));
+        assertEquals(0, count("SELECT COUNT(*) FROM courier_outbox"));
+    }
+
+    @Test
+    void shouldReclaimRowsWhoseLeaseExpired() throws Exception {
+        // Arrange
+        insert(message("Crashed"), "crashed-node", Instant.now().minusSeconds(60));
+        insert(message("Still leased"), "busy-node", Instant.now().plusSeconds(600));
+        List<String> subjects = new CopyOnWriteArrayList<>();
+        CountDownLatch sent = new CountDownLatch(1);
+
+        // Act
+        JdbcOutbox outbox = new JdbcOutbox(dataSource, config, message -> {
+            try {
+                subjects.add(message.getSubject());
+            } catch (Exception exception) {
+                throw new IllegalStateException(exception);
+            }
+            sent.countDown();
+        }, session);
+
+        // Assert
+        assertTrue(sent.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        outbox.close();
+        assertEquals(List.of("Crashed"), subjects);
+        assertEquals(1, count("SELECT COUNT(*) FROM courier_outbox WHERE lease_owner = 'busy-node'"));
+    }
+
+    @Test
+    void shouldMarkRowFailedAfterMaxAttempts() throws Exception {
+        // Arrange
+        config.setMaxAttempts(2);
+        config.setRetryDelay(Duration.ZERO);
+        AtomicInteger attempts = new AtomicInteger();
+        JdbcOutbox outbox = new JdbcOutbox(dataSource, config, message -> {
+            attempts.incrementAndGet();
+            throw new MailSendException("550 mailbox unavailable");
+        }, session);
+
+        // Act
+        outbox.append(message("Rejected"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (count("SELECT COUNT(*) FROM courier_outbox WHERE status = 'FAILED'") == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        outbox.close();
+
+        // Assert
+        assertEquals(2, attempts.get());
+        assertEquals(1, count("SELECT COUNT(*) FROM courier_outbox WHERE status = 'FAILED' AND attempts = 2 AND lease_owner IS NULL"));
+    }
+
+    @Test
+    void shouldMarkRowsOfClaimWhoseSendThrewAnyRuntimeException() throws Exception {
+        // Arrange
+        config.setRetryDelay(Duration.ofMinutes(10));
+        config.getJdbc().setClaimBatch(8);
+        insert(message("Sent"), "crashed-node", Instant.now().minusSeconds(60));
+        insert(message("Broken"), "crashed-node", Instant.now().minusSeconds(60));
+        CountDownLatch attempted = new CountDownLatch(2);
+        JdbcOutbox outbox = new JdbcOutbox(dataSource, config, message -> {
+            attempted.countDown();
+            try {
+                if ("Broken".equals(message.getSubject())) {
+                    throw new IllegalStateException("transport bug");
+                }
+            } catch (MessagingException messagingException) {
+                throw new IllegalStateException(messagingException);
+            }
+        }, session);
+
+        // Act
+        assertTrue(attempted.await(5, TimeUnit.SECONDS));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (count("SELECT COUNT(*) FROM courier_outbox WHERE attempts = 1") == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        outbox.close();
+
+        // Assert
+        assertEquals(1, count("SELECT COUNT(*) FROM courier_outbox"));
+        assertEquals(1, count("SELECT COUNT(*) FROM courier_outbox WHERE status = 'PENDING' AND attempts = 1"
+                + " AND last_error = 'transport bug' AND lease_owner IS NULL"));
+    }
+
+    @Test
+    void shouldRenewLeaseOfRowBeingSent() throws Exception {
+        // Arrange
+        config.getJdbc().setLeaseTimeout(Duration.ofMillis(300));
+        config.getJdbc().setNodeId("slow-node");
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger sent = new AtomicInteger();
+        JdbcOutbox slowNode = new JdbcOutbox(dataSource, config, message -> {
+            sending.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            sent.incrementAndGet();
+        }, session);
+        slowNode.append(message("Slow"));
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+
+        // Act
+        config.getJdbc().setNodeId("idle-node");
+        JdbcOutbox idleNode = new JdbcOutbox(dataSource, config, message -> sent.incrementAndGet(), session);
+        Thread.sleep(1000);
+        release.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (count("SELECT COUNT(*) FROM courier_outbox") > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        slowNode.close();
+        idleNode.close();
+
+        // Assert
+        assertEquals(1, sent.get());
+        assertEquals(0, count("SELECT COUNT(*) FROM courier_outbox"));
+    }
+
+    @Test
+    void shouldClaimWithLimitSyntax() throws Exception {
+        // Arrange
+        config.getJdbc().setDialect(CourierProperties.Outbox.Jdbc.Dialect.LIMIT);
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            // the UTC clock of MySQL
+            statement.execute("CREATE ALIAS UTC_TIMESTAMP AS 'java.sql.Timestamp utc(int precision) {"
+                    + " return java.sql.Timestamp.valueOf(java.time.LocalDateTime.now(java.time.ZoneOffset.UTC)); }'");
+        }
+        CountDownLatch sent = new CountDownLatch(2);
+
+        // Act
+        JdbcOutbox outbox = new JdbcOutbox(dataSource, config, message -> sent.countDown(), session);
+        outbox.appendAll(List.of(message("First"), message("Second")));
+
+        // Assert
+        assertTrue(sent.await(5, TimeUnit.SECONDS));
+        outbox.close();
+    }
+
+    @Test
+    void shouldSendRowToItsBlindCopies() throws Exception {
+        // Arrange
+        MimeMessage message = message("Blind copy");
+        message.addRecipient(MimeMessage.RecipientType.BCC, new InternetAddress("audit@company.com"));
+        List<MimeMessage> sent = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        JdbcOutbox outbox = new JdbcOutbox(dataSource, config, sending -> {
+            sent.add(sending);
+            done.countDown();
+        }, session);
+
+        // Act
+        outbox.append(message);
+
+        // Assert
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        outbox.close();
+        assertEquals(2, sent.get(0).getAllRecipients().length);
+        assertEquals("audit@company.com", ((InternetAddress) sent.get(0).getAllRecipients()[1]).getAddress());
+        assertNull(sent.get(0).getHeader("Bcc"));
+    }
+
+    @Test
+    void shouldWriteClaimQueryOfEachDialect() {
+        // Act & Assert
+        assertTrue(JdbcOutbox.claimSql(CourierProperties.Outbox.Jdbc.Dialect.STANDARD, "courier_outbox", 32)
+                .endsWith("ORDER BY id FETCH FIRST 32 ROWS ONLY FOR UPDATE SKIP LOCKED"));
+        assertTrue(JdbcOutbox.claimSql(CourierProperties.Outbox.Jdbc.Dialect.LIMIT, "courier_outbox", 32)
+                .endsWith("ORDER BY id LIMIT 32 FOR UPDATE SKIP LOCKED"));
+        assertTrue(JdbcOutbox.claimSql(CourierProperties.Outbox.Jdbc.Dialect.ORACLE, "courier_outbox", 32)
+                .endsWith("ORDER BY id FOR UPDATE SKIP LOCKED"));
+        assertTrue(JdbcOutbox.claimSql(CourierProperties.Outbox.Jdbc.Dialect.SQL_SERVER, "courier_outbox", 32)
+                .startsWith("SELECT TOP (32) id, payload, recipients, attempts FROM courier_outbox WITH (UPDLOCK, READPAST, ROWLOCK)"));
+    }
+
+    @Test
+    void shouldComputeTimesOnClockOfDatabase() throws Exception {
+        // Arrange
+        Duration leaseTimeout = Duration.ofMinutes(5).plusMillis(250);
+
+        // Act
+        long leaseMillis = count("SELECT DATEDIFF(MILLISECOND, CURRENT_TIMESTAMP, "
+                + JdbcOutbox.clockSql(CourierProperties.Outbox.Jdbc.Dialect.STANDARD, leaseTimeout) + ")");
+
+        // Assert
+        assertEquals(leaseTimeout.toMillis(), leaseMillis);
+        assertEquals("TIMESTAMPADD(MICROSECOND, 300250000, UTC_TIMESTAMP(3))",
+                JdbcOutbox.clockSql(CourierProperties.Outbox.Jdbc.Dialect.LIMIT, leaseTimeout));
+        assertEquals("(SYSTIMESTAMP + NUMTODSINTERVAL(300.250, 'SECOND'))",
+                JdbcOutbox.clockSql(CourierProperties.Outbox.Jdbc.Dialect.ORACLE, leaseTimeout));
+        assertEquals("DATEADD(MILLISECOND, 250, DATEADD(SECOND, 300, SYSUTCDATETIME()))",
+                JdbcOutbox.clockSql(CourierProperties.Outbox.Jdbc.Dialect.SQL_SERVER, leaseTimeout));
+        assertEquals("CURRENT_TIMESTAMP", JdbcOutbox.clockSql(CourierProperties.Outbox.Jdbc.Dialect.STANDARD, Duration.ZERO));
+    }
+
+    private static void record(MimeMessage message, Map<String, AtomicInteger> sent, CountDownLatch done) {
+        try {
+            sent.computeIfAbsent(message.getSubject(), subject -> new AtomicInteger()).incrementAndGet();
+        } catch (Exception exception) {
+            throw new IllegalStateException(exception);
+        }
+        done.countDown();
+    }
+
+    private void insert(MimeMessage message, String leaseOwner, Instant leaseUntil) throws Exception {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("INSERT INTO courier_outbox (payload, recipients, status, attempts,"
+                     + " available_at, lease_owner, lease_until, created_at) VALUES (?, ?, 'PENDING', 0, ?, ?, ?, ?)")) {
+            Timestamp now = Timestamp.from(Instant.now());
+            statement.setBytes(1, OutboxMessages.wire(message));
+            statement.setString(2, OutboxMessages.recipients(message));
+            statement.setTimestamp(3, now);
+            statement.setString(4, leaseOwner);
+            statement.setTimestamp(5, Timestamp.from(leaseUntil));
+            statement.setTimestamp(6, now);
+            statement.executeUpdate();
+        }
+    }
+
+    private long count(String sql) throws Exception {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(sql)) {
+            result.next();
+            return result.getLong(1);
+        }
+    }
+
+    private MimeMessage message(String subject) throws Exception {
+        MimeMessage message = new MimeMessage(session);
+        message.setFrom(new InternetAddress("noreply@company.com"));
+        message.addRecipient(MimeMessage.RecipientType.TO, new InternetAddress("client@example.com"));
+        message.setSubject(subject);
+        message.setText("Body");
+        return message;
+    }
+}
@@ -0,0 +1,103 @@
+package dev.kkm.reactive;
+
+import dev.kkm.exception.CourierException;
+import dev.kkm.model.CourierDetail;
+import dev.kkm.model.CourierResult;
+import dev.kkm.model.SendResult;
+import dev.kkm.service.CourierService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReactiveCourierServiceTest {
+
+    private CourierService courierService;
+    private List<CompletableFuture<SendResult>> pending;
+
+    @BeforeEach
+    void setUp() {
+        courierService = mock(CourierService.class);
+        pending = new CopyOnWriteArrayList<>();
+        when(courierService.sendCourierAsync(any(CourierDetail.class))).thenAnswer(invocation -> {
+            CompletableFuture<SendResult> future = new CompletableFuture<>();
+            pending.add(future);
+            return future;
+        });
+    }
+
+    @Test
+    void shouldRequestNoMoreCouriersThanItsConcurrency() {
+        // Arrange
+        ReactiveCourierService reactiveService = new ReactiveCourierService(courierService, 3);
+        AtomicLong requested = new AtomicLong();
+        Flux<CourierDetail> couriers = Flux.range(0, 100).map(i -> courier()).doOnRequest(requested::addAndGet);
+
+        // Act
+        List<CourierResult> results = new CopyOnWriteArrayList<>();
+        reactiveService.sendCourier(couriers).subscribe(results::add);
+
+        // Assert
+        assertEquals(3, requested.get());
+        assertEquals(3, pending.size());
+        pending.get(0).complete(new SendResult("<1@company.com>", List.of("client@example.com"), List.of(), 1, 1));
+        assertEquals(1, results.size());
+        assertEquals(4, pending.size());
+    }
+
+    @Test
+    void shouldReportFailuresWithoutStoppingTheStream() {
+        // Arrange
+        ReactiveCourierService reactiveService = new ReactiveCourierService(courierService, 2);
+        when(courierService.sendCourierAsync(any(CourierDetail.class)))
+                .thenReturn(CompletableFuture.failedFuture(new CourierException("mail not send", 902)))
+                .thenReturn(CompletableFuture.completedFuture(new SendResult("<2@company.com>", List.of("client@example.com"), List.of(), 1, 1)));
+
+        // Act
+        List<CourierResult> results = reactiveService.sendCourier(Flux.just(courier(), courier()))
+                .collectSortedList(Comparator.comparingInt(CourierResult::getIndex))
+                .block(Duration.ofSeconds(5));
+
+        // Assert
+        assertFalse(results.get(0).isSuccess());
+        assertEquals(902, results.get(0).getStatus());
+        assertTrue(results.get(1).isSuccess());
+        assertEquals("<2@company.com>", results.get(1).getSendResult().getMessageId());
+    }
+
+    @Test
+    void shouldCancelCouriersInProgressWhenUnsubscribed() {
+        // Arrange
+        ReactiveCourierService reactiveService = new ReactiveCourierService(courierService, 2);
+
+        // Act
+        reactiveService.sendCourier(Flux.just(courier(), courier(), courier())).subscribe().dispose();
+
+        // Assert
+        assertEquals(2, pending.size());
+        assertTrue(pending.stream().allMatch(CompletableFuture::isCancelled));
+    }
+
+    private static CourierDetail courier() {
+        return CourierDetail.builder()
+                .withSender("noreply@company.com")
+                .addRecipient("client@example.com")
+                .withSubject("Your Order Confirmation")
+                .withBody("Thank you for your order!")
+                .withOrganizationName("Organization")
+                .build();
+    }
+}
@@ -0,0 +1,89 @@
+package dev.kkm.service;
+
+import dev.kkm.exception.CourierException;
+import dev.kkm.model.ChunkReport;
+import dev.kkm.model.CourierDetail;
+import dev.kkm.model.CourierReport;
+import dev.kkm.model.MergeRow;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CourierServiceTest {
+
+    /**
+     * an implementation written against the first version of the interface
+     */
+    private static class SubjectRecorder implements CourierService {
+        private final List<String> sent = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void sendCourier(CourierDetail courierDetail) {
+            if (courierDetail.getSubject().startsWith("Rejected")) {
+                throw new CourierException("mail not send", 902);
+            }
+            sent.add(courierDetail.getSubject());
+        }
+
+        @Override
+        public void sendCourier(List<CourierDetail> courierDetails) {
+            courierDetails.forEach(this::sendCourier);
+        }
+    }
+
+    @Test
+    void shouldFallBackOnSendCourierForBulkReport() {
+        // Arrange
+        SubjectRecorder service = new SubjectRecorder();
+
+        // Act
+        CourierReport report = service.sendCouriers(List.of(courier("First"), courier("Rejected"), courier("Third")));
+
+        // Assert
+        assertEquals(List.of("First", "Third"), service.sent);
+        assertEquals(1, report.getFailures().get(0).getIndex());
+        assertEquals(902, report.getFailures().get(0).getStatus());
+    }
+
+    @Test
+    void shouldFallBackOnSendCourierForOperationsNeedingTheStarterInfrastructure() throws Exception {
+        // Arrange
+        SubjectRecorder service = new SubjectRecorder();
+        CourierDetail skeleton = CourierDetail.builder()
+                .withSender("noreply@company.com")
+                .withSubject("Merged")
+                .withBody("Body")
+                .withOrganizationName("Organization")
+                .buildSkeleton();
+
+        // Act
+        service.enqueueCourier(courier("Queued"));
+        ChunkReport chunked = service.sendChunked(courier("Rejected chunk"));
+        CourierReport merged = service.sendMerge(skeleton, Stream.of(MergeRow.of("first@example.com", Map.of()),
+                MergeRow.of("second@example.com", Map.of())));
+        service.coalesceCourier(courier("Coalesced")).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(List.of("Queued", "Merged", "Merged", "Coalesced"), service.sent);
+        assertEquals(List.of("client@example.com"), chunked.getRejectedRecipients());
+        assertEquals(902, chunked.getFailures().get(0).getError().getStatus());
+        assertTrue(merged.getFailures().isEmpty());
+    }
+
+    private static CourierDetail courier(String subject) {
+        return CourierDetail.builder()
+                .withSender("noreply@company.com")
+                .addRecipient("client@example.com")
+                .withSubject(subject)
+                .withBody("Body")
+                .withOrganizationName("Organization")
+                .build();
+    }
+}
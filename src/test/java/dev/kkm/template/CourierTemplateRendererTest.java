@@ -0,0 +1,59 @@
+package dev.kkm.template;
+
+import dev.kkm.config.CourierProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.StaticApplicationContext;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.context.Context;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CourierTemplateRendererTest {
+
+    private CourierProperties.Template config;
+    private StaticApplicationContext applicationContext;
+
+    @BeforeEach
+    void setUp() {
+        config = new CourierProperties().getTemplate();
+        applicationContext = new StaticApplicationContext();
+        applicationContext.refresh();
+    }
+
+    @Test
+    void shouldParseTemplateOnceAndServeNextRendersFromCache() {
+        // Arrange
+        CourierTemplateRenderer renderer = new CourierTemplateRenderer(applicationContext, new SpringTemplateEngine(), config);
+        Context context = new Context(Locale.getDefault());
+        context.setVariables(Map.of("customerName", "John Doe", "orderNumber", "12345"));
+
+        // Act
+        String first = renderer.getTemplateEngine().process("order-confirmation", context);
+        String second = renderer.getTemplateEngine().process("order-confirmation", context);
+
+        // Assert
+        assertTrue(first.contains("John Doe"));
+        assertEquals(first, second);
+        assertEquals(1, renderer.getTemplateCache().getMissCount());
+        assertEquals(1, renderer.getTemplateCache().getHitCount());
+    }
+
+    @Test
+    void shouldPreloadConfiguredTemplatesAtStartup() {
+        // Arrange
+        config.setPreload(List.of("order-confirmation", "missing-template"));
+        CourierTemplateRenderer renderer = new CourierTemplateRenderer(applicationContext, new SpringTemplateEngine(), config);
+
+        // Act
+        renderer.afterSingletonsInstantiated();
+
+        // Assert
+        assertEquals(1, renderer.getTemplateCache().size());
+    }
+}
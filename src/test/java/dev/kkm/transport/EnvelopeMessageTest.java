@@ -0,0 +1,48 @@
+package dev.kkm.transport;
+
+import jakarta.mail.Address;
+import jakarta.mail.Message;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EnvelopeMessageTest {
+
+    @Test
+    void shouldSendTheSameBodyToItsOwnEnvelope() throws Exception {
+        // Arrange
+        Session session = Session.getInstance(new Properties());
+        MimeMessage message = new MimeMessage(session);
+        message.setFrom(new InternetAddress("noreply@company.com"));
+        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse("client@example.com"));
+        message.setRecipients(Message.RecipientType.BCC, InternetAddress.parse("a@example.com, b@example.com"));
+        message.setSubject("Newsletter");
+        message.setText("News of the month");
+        message.saveChanges();
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        message.writeTo(wire, new String[]{"Bcc"});
+        Address[] chunk = InternetAddress.parse("b@example.com");
+
+        // Act
+        EnvelopeMessage envelopeMessage = new EnvelopeMessage(session, wire.toByteArray(), chunk);
+        envelopeMessage.saveChanges();
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        envelopeMessage.writeTo(sent);
+
+        // Assert
+        assertArrayEquals(chunk, envelopeMessage.getAllRecipients());
+        assertEquals(message.getMessageID(), envelopeMessage.getMessageID());
+        assertEquals("News of the month", envelopeMessage.getContent().toString().trim());
+        assertTrue(sent.toString().contains("To: client@example.com"));
+        assertFalse(sent.toString().contains("Bcc"));
+    }
+}
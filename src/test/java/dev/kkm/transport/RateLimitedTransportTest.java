@@ -0,0 +1,71 @@
+package dev.kkm.transport;
+
+import dev.kkm.config.CourierProperties;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.MailSendException;
+
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimitedTransportTest {
+
+    @Test
+    void shouldBackOffOnThrottlingAndRampBackUp() throws Exception {
+        // Arrange
+        CourierProperties.RateLimit config = new CourierProperties().getRateLimit();
+        config.setMessagesPerSecond(1000);
+        config.setRecoveryStep(0.5);
+        config.setRecoveryInterval(Duration.ZERO);
+        AtomicInteger calls = new AtomicInteger();
+        RateLimitedTransport transport = new RateLimitedTransport(message -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new MailSendException("send failed", new SMTPSendFailedException("DATA", 421,
+                        "421 4.7.0 Too many messages, try again later", null, null, null, null));
+            }
+        }, config);
+        MimeMessage message = new MimeMessage(Session.getInstance(new Properties()));
+        message.setRecipient(MimeMessage.RecipientType.TO, new InternetAddress("john@doe.com"));
+
+        // Act & Assert
+        assertThrows(MailSendException.class, () -> transport.send(message));
+        assertEquals(0.5, transport.getRateFactor());
+        transport.send(message);
+        assertEquals(1, transport.getRateFactor());
+    }
+
+    @Test
+    void shouldLimitMessagesPerSecond() throws Exception {
+        // Arrange
+        CourierProperties.RateLimit config = new CourierProperties().getRateLimit();
+        config.setMessagesPerSecond(20);
+        RateLimitedTransport transport = new RateLimitedTransport(message -> {}, config);
+        MimeMessage message = new MimeMessage(Session.getInstance(new Properties()));
+
+        // Act
+        long start = System.nanoTime();
+        for (int i = 0; i < 30; i++) {
+            transport.send(message);
+        }
+        long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        // Assert: a burst of 20, then 10 more at 20 per second
+        assertTrue(elapsedMillis >= 400, "sent 30 messages in " + elapsedMillis + " ms");
+    }
+
+    @Test
+    void shouldNotTreatPermanentFailureAsThrottling() {
+        assertTrue(SmtpReplies.isThrottling(new SMTPSendFailedException("RCPT", 451, "451 try later", null, null, null, null)));
+        assertEquals(550, SmtpReplies.replyCode(new MailSendException("failed",
+                new SMTPSendFailedException("RCPT", 550, "550 mailbox unavailable", null, null, null, null))));
+        assertTrue(!SmtpReplies.isThrottling(new SMTPSendFailedException("RCPT", 550, "550 mailbox unavailable", null, null, null, null)));
+    }
+}
@@ -0,0 +1,100 @@
+package dev.kkm.transport;
+
+import dev.kkm.config.CourierProperties;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.MailSendException;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class RelayRouterTest {
+
+    private final List<String> sentThrough = new CopyOnWriteArrayList<>();
+    private final CourierProperties.Routing config = new CourierProperties().getRouting();
+    private RelayRouter router;
+
+    @AfterEach
+    void tearDown() {
+        router.close();
+    }
+
+    @Test
+    void shouldInterleaveRelaysByWeight() throws Exception {
+        // Arrange
+        config.setStrategy(CourierProperties.Routing.Strategy.WEIGHTED_ROUND_ROBIN);
+        router = new RelayRouter(List.of(relay("primary", 3, List.of(), List.of()), relay("secondary", 1, List.of(), List.of())), config);
+
+        // Act
+        for (int i = 0; i < 8; i++) {
+            router.send(message("noreply@company.com", null));
+        }
+
+        // Assert
+        assertEquals(6, sentThrough.stream().filter("primary"::equals).count());
+        assertEquals(List.of("primary", "primary", "secondary", "primary"), sentThrough.subList(0, 4));
+    }
+
+    @Test
+    void shouldRouteBySenderDomainAndPriority() throws Exception {
+        // Arrange
+        router = new RelayRouter(List.of(
+                relay("general", 1, List.of(), List.of()),
+                relay("marketing", 1, List.of("news.company.com"), List.of()),
+                relay("urgent", 1, List.of(), List.of(1))), config);
+
+        // Act
+        router.send(message("offers@NEWS.company.com", null));
+        router.send(message("noreply@company.com", "1 (Highest)"));
+        router.send(message("noreply@company.com", "5 (Lowest)"));
+
+        // Assert
+        assertEquals(List.of("marketing", "urgent", "general"), sentThrough);
+    }
+
+    @Test
+    void shouldFailOverAndTakeUnreachableRelayOutOfRotation() throws Exception {
+        // Arrange
+        config.setFailureThreshold(2);
+        config.setHealthCheckInterval(Duration.ofHours(1));
+        RelayRouter.Relay down = new RelayRouter.Relay("down", 10, List.of(), List.of(), message -> {
+            sentThrough.add("down");
+            throw new MailSendException("could not open SMTP connection", new MessagingException("refused", new ConnectException("Connection refused")));
+        }, () -> {});
+        router = new RelayRouter(List.of(down, relay("up", 1, List.of(), List.of())), config);
+
+        // Act
+        for (int i = 0; i < 4; i++) {
+            router.send(message("noreply@company.com", null));
+        }
+
+        // Assert
+        assertEquals(List.of("down", "up", "down", "up", "up", "up"), sentThrough);
+        assertFalse(down.isHealthy());
+    }
+
+    private RelayRouter.Relay relay(String name, int weight, List<String> senderDomains, List<Integer> priorities) {
+        return new RelayRouter.Relay(name, weight, new ArrayList<>(senderDomains), new ArrayList<>(priorities),
+                message -> sentThrough.add(name), () -> {});
+    }
+
+    private static MimeMessage message(String from, String priority) throws MessagingException {
+        MimeMessage message = new MimeMessage(Session.getInstance(new Properties()));
+        message.setFrom(new InternetAddress(from));
+        if (priority != null) {
+            message.setHeader("X-Priority", priority);
+        }
+        return message;
+    }
+}
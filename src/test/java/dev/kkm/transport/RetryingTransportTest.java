@@ -0,0 +1,136 @@
+package dev.kkm.transport;
+
+import dev.kkm.config.CourierProperties;
+import jakarta.mail.Address;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.eclipse.angus.mail.smtp.SMTPAddressFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.MailSendException;
+
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RetryingTransportTest {
+
+    private final MimeMessage message = new MimeMessage(Session.getInstance(new Properties()));
+    private final AtomicInteger calls = new AtomicInteger();
+    private CourierProperties.Retry config;
+    private RetryingTransport transport;
+
+    @BeforeEach
+    void setUp() {
+        config = new CourierProperties().getRetry();
+        config.setInitialDelay(Duration.ofMillis(10));
+        config.setMaxAttempts(3);
+        config.setFailureThreshold(2);
+        config.setOpenDuration(Duration.ofMinutes(1));
+        config.setMaxQueued(0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        transport.close();
+    }
+
+    @Test
+    void shouldRetryTransientFailureWithoutBlockingTheCaller() {
+        // Arrange
+        transport = new RetryingTransport(m -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new MailSendException("timeout", new SocketTimeoutException("Read timed out"));
+            }
+        }, config, 1);
+
+        // Act
+        CompletableFuture<Void> sent = transport.sendAsync(message);
+
+        // Assert
+        assertFalse(sent.isDone());
+        sent.join();
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void shouldNotRetryPermanentFailure() {
+        // Arrange
+        transport = new RetryingTransport(m -> {
+            calls.incrementAndGet();
+            throw new MailSendException("rejected", new SMTPSendFailedException("RCPT", 550, "550 no such user", null, null, null, null));
+        }, config, 1);
+
+        // Act & Assert
+        assertThrows(MailSendException.class, () -> transport.send(message));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void shouldRetryOnlyRecipientsRefusedWithTransientReply() throws Exception {
+        // Arrange
+        InternetAddress sent = new InternetAddress("client@example.com");
+        InternetAddress greylisted = new InternetAddress("partner@example.org");
+        InternetAddress unknown = new InternetAddress("nobody@example.com");
+        SendFailedException partial = new SendFailedException("Invalid Addresses", null,
+                new Address[]{sent}, null, new Address[]{greylisted, unknown});
+        partial.setNextException(new SMTPAddressFailedException(greylisted, "RCPT", 450, "450 greylisted, try again later"));
+        partial.setNextException(new SMTPAddressFailedException(unknown, "RCPT", 550, "550 no such user"));
+        List<List<Address>> envelopes = new CopyOnWriteArrayList<>();
+        transport = new RetryingTransport(m -> {
+            try {
+                envelopes.add(List.of(m.getAllRecipients()));
+            } catch (MessagingException messagingException) {
+                throw new IllegalStateException(messagingException);
+            }
+            if (calls.incrementAndGet() == 1) {
+                throw new MailSendException("partial", partial);
+            }
+        }, config, 1);
+        message.setText("Body");
+        message.setRecipients(MimeMessage.RecipientType.TO, new Address[]{sent, greylisted, unknown});
+        message.saveChanges();
+
+        // Act
+        CompletableFuture<Void> sending = transport.sendAsync(message);
+
+        // Assert
+        CompletionException failure = assertThrows(CompletionException.class, sending::join);
+        assertEquals("partial", failure.getCause().getMessage());
+        assertEquals(2, calls.get());
+        assertEquals(List.of(greylisted), envelopes.get(1));
+    }
+
+    @Test
+    void shouldFailFastWhileTheCircuitIsOpen() {
+        // Arrange
+        transport = new RetryingTransport(m -> {
+            calls.incrementAndGet();
+            throw new MailSendException("unavailable", new SMTPSendFailedException("MAIL", 421, "421 service not available", null, null, null, null));
+        }, config, 1);
+        assertThrows(MailSendException.class, () -> transport.send(message));
+
+        // Act
+        CompletableFuture<Void> rejected = transport.sendAsync(message);
+
+        // Assert
+        assertEquals(CircuitBreaker.State.OPEN, transport.getCircuitBreaker().getState());
+        CompletionException failure = assertThrows(CompletionException.class, rejected::join);
+        assertEquals("relay is unavailable (circuit open), courier not sent", failure.getCause().getMessage());
+        assertEquals(2, calls.get());
+    }
+}
@@ -0,0 +1,73 @@
+package dev.kkm.validation;
+
+import dev.kkm.config.CourierProperties;
+import dev.kkm.exception.CourierException;
+import dev.kkm.model.CourierDetail;
+import jakarta.mail.internet.InternetAddress;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AddressValidatorTest {
+
+    private static final Pattern PREVIOUS_RULE = Pattern.compile("^[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,}$");
+
+    private final AddressValidator validator = new AddressValidator(new CourierProperties().getValidation());
+
+    @Test
+    void shouldAcceptTheSameAddressesAsThePreviousRegularExpression() {
+        List<String> emails = List.of("john@doe.com", "john.doe+news@mail.example.org", "a@b.co", "x_y%z-1@sub-domain.io",
+                "invalid-email", "@doe.com", "john@", "john@doe", "john@doe.c", "john@.com", "john@doe.c0m", "john doe@doe.com",
+                "john@doe..com", "john@@doe.com", "jöhn@doe.com", "john@doe.com.", "", "john@-doe.com");
+
+        for (String email : emails) {
+            assertEquals(PREVIOUS_RULE.matcher(email).matches(), AddressValidator.isValid(email), email);
+        }
+        assertFalse(AddressValidator.isValid(null));
+    }
+
+    @Test
+    void shouldParseOnceAndReuseTheCachedAddress() {
+        // Act
+        InternetAddress first = validator.parse("recipient", "john@doe.com");
+        InternetAddress second = validator.parse("recipient", "john@doe.com");
+
+        // Assert
+        assertSame(first, second);
+        assertEquals("john@doe.com", first.getAddress());
+        CourierException exception = assertThrows(CourierException.class, () -> validator.parse("bcc", "invalid-email"));
+        assertEquals("bcc email is invalid", exception.getMessage());
+    }
+
+    @Test
+    void shouldValidateAListOfCouriersInParallelKeepingTheirOrder() {
+        // Arrange
+        List<CourierDetail> couriers = IntStream.range(0, 1000)
+                .mapToObj(i -> CourierDetail.builder()
+                        .withSender(i == 500 ? "invalid-email" : "noreply@company.com")
+                        .addRecipient("client" + i + "@example.com")
+                        .withSubject("Subject")
+                        .withBody("Body")
+                        .withOrganizationName("Organization")
+                        .build())
+                .toList();
+
+        // Act
+        List<CourierAddresses> addresses = validator.validateAll(couriers);
+
+        // Assert
+        assertEquals(1000, addresses.size());
+        assertEquals("client999@example.com", addresses.get(999).to()[0].getAddress());
+        assertFalse(addresses.get(500).isValid());
+        assertEquals("sender email is invalid", addresses.get(500).error().getMessage());
+        assertTrue(addresses.get(501).isValid());
+    }
+}